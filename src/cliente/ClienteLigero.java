@@ -0,0 +1,256 @@
+package cliente;
+
+import modelo.AjusteDificultad;
+import modelo.Blockchain;
+import modelo.Bloque;
+import modelo.CabeceraBloque;
+import modelo.FormatoCabecera;
+import modelo.PruebaMerkle;
+import protocolo.ProtocoloBlockchain;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Cliente ligero para terminales de farmacia.
+ *
+ * Sincroniza solo cabeceras (GET_HEADERS) desde un ServidorBlockchain y
+ * verifica localmente el génesis fijo, el enlace hashAnterior, el hash de
+ * cada cabecera binaria y la dificultad (con el mismo AjusteDificultad que
+ * los nodos). La memoria y el tráfico crecen con el número de cabeceras, no
+ * con el volumen de datos: el contenido de un bloque (GET_BLOCK) o la prueba
+ * de una transacción (GET_PROOF) se piden solo cuando hacen falta y se
+ * comprueban contra la cabecera ya verificada.
+ */
+public class ClienteLigero {
+
+    private static final int LOTE_CABECERAS = 500;
+
+    private final String host;
+    private final int puerto;
+    private final AjusteDificultad ajuste;
+    private final ArrayList<CabeceraBloque> cabeceras = new ArrayList<>();
+    private final ArrayList<Integer> bitsPorAltura = new ArrayList<>();
+    private long bytesRecibidos;
+
+    public ClienteLigero(String host, int puerto) {
+        this(host, puerto, AjusteDificultad.porDefecto(4));
+    }
+
+    public ClienteLigero(String host, int puerto, AjusteDificultad ajuste) {
+        this.host = host;
+        this.puerto = puerto;
+        this.ajuste = ajuste;
+    }
+
+    /**
+     * Descarga y verifica las cabeceras nuevas.
+     * @return cuántas cabeceras se agregaron
+     */
+    public synchronized int sincronizar() throws IOException {
+        int agregadas = 0;
+        while (true) {
+            ArrayList<CabeceraBloque> lote = pedirCabeceras(cabeceras.size(), LOTE_CABECERAS);
+            if (lote.isEmpty()) return agregadas;
+
+            // El nodo cambió de rama: se retrocede hasta que la primera cabecera enlace
+            CabeceraBloque primera = lote.get(0);
+            if (!cabeceras.isEmpty() && !primera.getHashAnterior().equals(ultima().getHash())) {
+                if (cabeceras.size() == 1) {
+                    throw new IOException("El nodo no comparte el génesis de este cliente");
+                }
+                System.out.println("🔀 La cabecera #" + primera.getIndex() + " no enlaza; retrocediendo una altura");
+                cabeceras.remove(cabeceras.size() - 1);
+                bitsPorAltura.remove(bitsPorAltura.size() - 1);
+                agregadas--;
+                continue;
+            }
+
+            for (CabeceraBloque c : lote) {
+                verificarYAgregar(c);
+                agregadas++;
+            }
+            if (lote.size() < LOTE_CABECERAS) return agregadas;
+        }
+    }
+
+    private void verificarYAgregar(CabeceraBloque c) throws IOException {
+        int altura = cabeceras.size();
+        if (c.getIndex() != altura) {
+            throw new IOException("Se esperaba la cabecera #" + altura + " y llegó la #" + c.getIndex());
+        }
+        if (altura == 0) {
+            if (!Blockchain.HASH_GENESIS.equals(c.getHash()) || !c.getHash().equals(c.calcularHash())) {
+                throw new IOException("Génesis distinto al génesis fijo");
+            }
+        } else if (!c.getHashAnterior().equals(ultima().getHash())) {
+            throw new IOException("Enlace roto en la cabecera #" + altura);
+        }
+
+        int anterior = altura > 0 ? bitsPorAltura.get(altura - 1) : ajuste.getBitsIniciales();
+        int bits = ajuste.bitsPara(altura, anterior, h -> cabeceras.get(h).getTimestamp());
+        // Misma regla que los nodos: nada legado (no verificable) ni versiones que retroceden
+        if (altura > 0) {
+            if (!FormatoCabecera.esVersionValidaSobre(c.getVersion(), ultima().getVersion())) {
+                throw new IOException("Versión " + c.getVersion() + " no admitida en la cabecera #" + altura);
+            }
+            try {
+                ajuste.verificarTimestamp(altura, c.getTimestamp(), h -> cabeceras.get(h).getTimestamp(),
+                        System.currentTimeMillis());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Cabecera #" + altura + ": " + e.getMessage());
+            }
+            if (!c.getHash().equals(c.calcularHash())) {
+                throw new IOException("Hash inválido en la cabecera #" + altura);
+            }
+            if (!c.cumpleDificultadBits(bits)) {
+                throw new IOException("Dificultad insuficiente en la cabecera #" + altura + " (se exigen " + bits + " bits)");
+            }
+        }
+        cabeceras.add(c);
+        bitsPorAltura.add(bits);
+    }
+
+    private ArrayList<CabeceraBloque> pedirCabeceras(int desde, int max) throws IOException {
+        try (Socket socket = new Socket(host, puerto);
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+
+            out.print(ProtocoloBlockchain.crearMensaje(ProtocoloBlockchain.OBTENER_CABECERAS,
+                    String.valueOf(desde), String.valueOf(max)));
+            out.flush();
+            String[] partes = ProtocoloBlockchain.parsearMensaje(leerLinea(in));
+            if (partes.length < 2 || !ProtocoloBlockchain.OK.equals(partes[0])) {
+                throw new IOException("Respuesta inesperada a GET_HEADERS: " + String.join("|", partes));
+            }
+            int n = Integer.parseInt(partes[1]);
+            ArrayList<CabeceraBloque> lote = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                lote.add(CabeceraBloque.decodificar(leerLinea(in)));
+            }
+            return lote;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Cabecera malformada: " + e.getMessage(), e);
+        }
+    }
+
+    /** Descarga un bloque completo y comprueba que corresponde a la cabecera verificada. */
+    public Bloque obtenerBloque(int altura) throws IOException {
+        CabeceraBloque cabecera = getCabecera(altura);
+        String respuesta = consultar(ProtocoloBlockchain.crearMensaje(ProtocoloBlockchain.OBTENER_BLOQUE,
+                String.valueOf(altura)));
+        String[] p = respuesta.split("\\|", -1);
+        if (p.length < 9 || !ProtocoloBlockchain.OK.equals(p[0])) {
+            throw new IOException("Respuesta inesperada a GET_BLOCK: " + respuesta);
+        }
+        try {
+            ArrayList<String> datos = new ArrayList<>();
+            if (!p[7].isEmpty()) Collections.addAll(datos, p[7].split(ProtocoloBlockchain.SEPARADOR_INTERNO));
+            ArrayList<String> hashesTx = new ArrayList<>();
+            if (p.length > 9 && !p[9].isEmpty()) Collections.addAll(hashesTx, p[9].split(ProtocoloBlockchain.SEPARADOR_INTERNO));
+            Bloque bloque = new Bloque(Integer.parseInt(p[1]), Long.parseLong(p[5]), Integer.parseInt(p[4]),
+                    p[2], p[3], datos, p[6], Integer.parseInt(p[8]), hashesTx);
+
+            if (!bloque.getHash().equals(cabecera.getHash()) || !bloque.getHash().equals(bloque.calcularHash())) {
+                throw new IOException("El contenido recibido no corresponde a la cabecera #" + altura);
+            }
+            return bloque;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Bloque malformado: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Comprueba que la transacción está en el bloque de esa altura con una prueba
+     * Merkle verificada contra la raíz de la cabecera (no contra la que envía el nodo).
+     */
+    public boolean verificarTransaccion(int altura, String hashTransaccion) throws IOException {
+        CabeceraBloque cabecera = getCabecera(altura);
+        if (cabecera.getVersion() < FormatoCabecera.VERSION_MERKLE) {
+            throw new IOException("El bloque #" + altura + " no tiene raíz Merkle (versión " + cabecera.getVersion() + ")");
+        }
+        String respuesta = consultar(ProtocoloBlockchain.crearMensaje(ProtocoloBlockchain.OBTENER_PRUEBA,
+                cabecera.getHash(), hashTransaccion));
+        String[] p = ProtocoloBlockchain.parsearMensaje(respuesta);
+        if (p.length < 4 || !ProtocoloBlockchain.OK.equals(p[0])) {
+            return false;
+        }
+        try {
+            PruebaMerkle prueba = PruebaMerkle.decodificar(p[3]);
+            return prueba.verificar(Bloque.datosHojaTransaccion(hashTransaccion), cabecera.getDigestContenido());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private String consultar(String mensaje) throws IOException {
+        try (Socket socket = new Socket(host, puerto);
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            out.print(mensaje);
+            out.flush();
+            return leerLinea(in);
+        }
+    }
+
+    private String leerLinea(BufferedReader in) throws IOException {
+        String linea = in.readLine();
+        if (linea == null) throw new IOException("Conexión cerrada por el nodo");
+        bytesRecibidos += linea.length() + 1;
+        return linea;
+    }
+
+    public synchronized CabeceraBloque getCabecera(int altura) {
+        if (altura < 0 || altura >= cabeceras.size()) {
+            throw new IndexOutOfBoundsException("Cabecera #" + altura + " no sincronizada");
+        }
+        return cabeceras.get(altura);
+    }
+
+    public synchronized int getNumeroCabeceras() {
+        return cabeceras.size();
+    }
+
+    /** Caracteres recibidos del nodo (aprox. bytes: el protocolo es ASCII). */
+    public long getBytesRecibidos() {
+        return bytesRecibidos;
+    }
+
+    private CabeceraBloque ultima() {
+        return cabeceras.get(cabeceras.size() - 1);
+    }
+
+    // Uso: ClienteLigero [host] [puerto] [altura hashTransaccion]
+    public static void main(String[] args) {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int puerto = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+
+        System.out.println("╔════════════════════════════════════════╗");
+        System.out.println("║     📱 CLIENTE LIGERO (SOLO CABECERAS) ║");
+        System.out.println("╚════════════════════════════════════════╝\n");
+
+        ClienteLigero cliente = new ClienteLigero(host, puerto);
+        try {
+            long inicio = System.nanoTime();
+            int nuevas = cliente.sincronizar();
+            System.out.printf("✅ %d cabeceras verificadas en %.1f ms (%,d bytes recibidos)%n",
+                    nuevas, (System.nanoTime() - inicio) / 1_000_000.0, cliente.getBytesRecibidos());
+            if (cliente.getNumeroCabeceras() > 0) {
+                System.out.println("   Última: " + cliente.getCabecera(cliente.getNumeroCabeceras() - 1));
+            }
+
+            if (args.length > 3) {
+                int altura = Integer.parseInt(args[2]);
+                boolean incluida = cliente.verificarTransaccion(altura, args[3]);
+                System.out.println(incluida
+                        ? "✅ Transacción incluida en el bloque #" + altura + " (prueba Merkle válida)"
+                        : "❌ No se pudo probar la inclusión en el bloque #" + altura);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("❌ Error: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package cliente;
+
+import modelo.Medicamento;
+import modelo.TransaccionInventario;
+import protocolo.ProtocoloBlockchain;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Envío de transacciones a un ServidorBlockchain por una conexión persistente,
+ * pensado para puntos de venta que empujan cientos de movimientos por segundo.
+ *
+ * - enviar: TX_NEW encadenados; se escriben hasta VENTANA sin esperar
+ *   respuesta y los acuses se leen en orden.
+ * - enviarLote: TX_BATCH (una cabecera + n líneas) por tramos de MAX_LOTE.
+ *
+ * En ambos casos hay un Acuse por transacción, en el mismo orden. Las salidas
+ * sin stock suficiente vuelven como INSUFFICIENT_STOCK; consultarSaldo
+ * (GET_BALANCE) dice cuánto queda disponible.
+ */
+public class ClienteTransacciones implements Closeable {
+
+    private static final int VENTANA = 256;
+    private static final int MAX_LOTE = 1000;
+
+    /** Respuesta del nodo a una transacción. */
+    public static final class Acuse {
+        private final boolean aceptada;
+        private final String motivo; // null si fue aceptada
+        private final String hash;
+
+        Acuse(String respuesta) {
+            String[] p = ProtocoloBlockchain.parsearMensaje(respuesta);
+            this.aceptada = p.length > 0 && ProtocoloBlockchain.OK.equals(p[0]);
+            this.motivo = aceptada ? null : (p.length > 1 ? p[1] : respuesta);
+            this.hash = aceptada ? (p.length > 1 ? p[1] : null) : (p.length > 2 ? p[2] : null);
+        }
+
+        public boolean isAceptada() { return aceptada; }
+        /** DUPLICATE, FULL, INSUFFICIENT_STOCK, BAD_TX... (ver ProtocoloBlockchain) o null. */
+        public String getMotivo() { return motivo; }
+        public String getHash() { return hash; }
+
+        @Override
+        public String toString() {
+            return aceptada ? "OK " + hash : "ERR " + motivo + (hash != null ? " " + hash : "");
+        }
+    }
+
+    /** Stock de un producto según el nodo (GET_BALANCE). */
+    public static final class Saldo {
+        private final int confirmado;
+        private final int pendiente;
+
+        Saldo(int confirmado, int pendiente) {
+            this.confirmado = confirmado;
+            this.pendiente = pendiente;
+        }
+
+        /** Lo que ya está en bloques de la cadena principal. */
+        public int getConfirmado() { return confirmado; }
+        /** Efecto neto de las transacciones aún en el mempool. */
+        public int getPendiente() { return pendiente; }
+        /** Lo que una salida nueva puede retirar. */
+        public int getDisponible() { return confirmado + pendiente; }
+
+        @Override
+        public String toString() {
+            return "confirmado=" + confirmado + " pendiente=" + pendiente + " disponible=" + getDisponible();
+        }
+    }
+
+    private final Socket socket;
+    private final Writer out;
+    private final BufferedReader in;
+
+    public ClienteTransacciones(String host, int puerto) throws IOException {
+        this.socket = new Socket(host, puerto);
+        socket.setTcpNoDelay(true);
+        this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 64 * 1024);
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    /** Una transacción (TX_NEW), esperando su acuse. */
+    public synchronized Acuse enviar(TransaccionInventario t) throws IOException {
+        escribirTxNew(t);
+        out.flush();
+        return new Acuse(leerLinea());
+    }
+
+    /** TX_NEW encadenados: como mucho VENTANA en vuelo, un solo flush por tanda. */
+    public synchronized List<Acuse> enviar(List<TransaccionInventario> transacciones) throws IOException {
+        ArrayList<Acuse> acuses = new ArrayList<>(transacciones.size());
+        int enviadas = 0;
+        while (acuses.size() < transacciones.size()) {
+            while (enviadas < transacciones.size() && enviadas - acuses.size() < VENTANA) {
+                escribirTxNew(transacciones.get(enviadas++));
+            }
+            out.flush();
+            // Se lee la mitad de la ventana antes de volver a escribir
+            int objetivo = Math.min(enviadas, acuses.size() + Math.max(1, VENTANA / 2));
+            while (acuses.size() < objetivo) acuses.add(new Acuse(leerLinea()));
+        }
+        return acuses;
+    }
+
+    /** TX_BATCH: una trama por cada MAX_LOTE transacciones. */
+    public synchronized List<Acuse> enviarLote(List<TransaccionInventario> transacciones) throws IOException {
+        ArrayList<Acuse> acuses = new ArrayList<>(transacciones.size());
+        for (int desde = 0; desde < transacciones.size(); desde += MAX_LOTE) {
+            List<TransaccionInventario> tramo = transacciones.subList(desde, Math.min(transacciones.size(), desde + MAX_LOTE));
+            StringBuilder sb = new StringBuilder(tramo.size() * 160)
+                    .append(ProtocoloBlockchain.REGISTRAR_LOTE_TRANSACCIONES).append('|').append(tramo.size()).append('\n');
+            for (TransaccionInventario t : tramo) {
+                sb.append(ProtocoloBlockchain.codificarTransaccion(t)).append('\n');
+            }
+            out.write(sb.toString());
+            out.flush();
+
+            String cabecera = leerLinea();
+            String[] p = ProtocoloBlockchain.parsearMensaje(cabecera);
+            if (p.length < 2 || !ProtocoloBlockchain.OK.equals(p[0])) {
+                throw new IOException("Respuesta inesperada a TX_BATCH: " + cabecera);
+            }
+            for (int i = 0; i < tramo.size(); i++) acuses.add(new Acuse(leerLinea()));
+        }
+        return acuses;
+    }
+
+    /** Stock confirmado y pendiente del producto en la farmacia. */
+    public synchronized Saldo consultarSaldo(String farmaciaId, String codigo) throws IOException {
+        out.write(ProtocoloBlockchain.crearMensaje(ProtocoloBlockchain.OBTENER_SALDO,
+                ProtocoloBlockchain.campo(farmaciaId), ProtocoloBlockchain.campo(codigo)));
+        out.flush();
+        String respuesta = leerLinea();
+        String[] p = ProtocoloBlockchain.parsearMensaje(respuesta);
+        if (p.length < 3 || !ProtocoloBlockchain.OK.equals(p[0])) {
+            throw new IOException("Respuesta inesperada a GET_BALANCE: " + respuesta);
+        }
+        try {
+            return new Saldo(Integer.parseInt(p[1]), Integer.parseInt(p[2]));
+        } catch (NumberFormatException e) {
+            throw new IOException("Saldo malformado: " + respuesta, e);
+        }
+    }
+
+    private void escribirTxNew(TransaccionInventario t) throws IOException {
+        out.write(ProtocoloBlockchain.REGISTRAR_TRANSACCION);
+        out.write('|');
+        out.write(ProtocoloBlockchain.codificarTransaccion(t));
+        out.write('\n');
+    }
+
+    private String leerLinea() throws IOException {
+        String linea = in.readLine();
+        if (linea == null) throw new EOFException("Conexión cerrada por el nodo");
+        return linea;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    // Uso: ClienteTransacciones [host] [puerto] [cantidad]
+    // Envía "cantidad" movimientos de prueba con TX_NEW encadenados y con TX_BATCH y mide cada modo.
+    public static void main(String[] args) {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int puerto = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int cantidad = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+        try (ClienteTransacciones cliente = new ClienteTransacciones(host, puerto)) {
+            for (String modo : new String[]{"TX_NEW encadenado", "TX_BATCH"}) {
+                ArrayList<TransaccionInventario> lote = new ArrayList<>(cantidad);
+                long base = System.currentTimeMillis();
+                for (int i = 0; i < cantidad; i++) {
+                    lote.add(new TransaccionInventario("Farmacia A",
+                            new Medicamento("Paracetamol", "PAR-" + (i % 50), 1 + i % 10, "500mg"),
+                            TransaccionInventario.ENTRADA, "pos-" + modo.length(), "L" + (i % 20), "31/12/2027", base + i));
+                }
+                long inicio = System.nanoTime();
+                List<Acuse> acuses = modo.equals("TX_BATCH") ? cliente.enviarLote(lote) : cliente.enviar(lote);
+                double segundos = (System.nanoTime() - inicio) / 1e9;
+                long aceptadas = acuses.stream().filter(Acuse::isAceptada).count();
+                System.out.printf("📨 %s: %d/%d aceptadas en %.1f ms (%.0f tx/s)%n",
+                        modo, aceptadas, cantidad, segundos * 1000, cantidad / segundos);
+            }
+            System.out.println("📊 Farmacia A / PAR-0: " + cliente.consultarSaldo("Farmacia A", "PAR-0"));
+        } catch (IOException e) {
+            System.err.println("❌ Error: " + e.getMessage());
+        }
+    }
+}
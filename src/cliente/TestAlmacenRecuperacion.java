@@ -0,0 +1,110 @@
+package cliente;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import modelo.AlmacenBloques;
+import modelo.Blockchain;
+import modelo.Bloque;
+
+/**
+ * Recuperación de AlmacenBloques tras una escritura a medias: se daña el
+ * último registro del segmento (como si se cortara la luz al escribirlo) y al
+ * reabrir el almacén debe quedarse con los bloques sanos y seguir aceptando
+ * el siguiente, con y sin instantánea.
+ */
+public class TestAlmacenRecuperacion {
+
+    private static final long CAPACIDAD = 64 * 1024;
+    private static final Verificaciones V = new Verificaciones();
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("╔════════════════════════════════════════╗");
+        System.out.println("║  🧪 TEST DE RECUPERACIÓN DEL ALMACÉN   ║");
+        System.out.println("╚════════════════════════════════════════╝\n");
+
+        List<Bloque> bloques = cadena(6);
+
+        // TEST 1: sin instantánea, se escanea todo el segmento
+        System.out.println("📡 Test 1: Último registro dañado, sin instantánea");
+        Path dir1 = Files.createTempDirectory("almacen-prueba");
+        try (AlmacenBloques almacen = abrir(dir1)) {
+            for (int i = 0; i < 5; i++) almacen.agregar(bloques.get(i));
+        }
+        danarUltimoRegistro(dir1);
+        comprobarRecuperacion(dir1, bloques);
+
+        // TEST 2: con instantánea de los primeros bloques; el daño cae en la cola escaneada
+        System.out.println("\n📡 Test 2: Último registro dañado, tras una instantánea");
+        Path dir2 = Files.createTempDirectory("almacen-prueba");
+        try (AlmacenBloques almacen = abrir(dir2)) {
+            for (int i = 0; i < 3; i++) almacen.agregar(bloques.get(i));
+            almacen.guardarInstantanea(2);
+            for (int i = 3; i < 5; i++) almacen.agregar(bloques.get(i));
+        }
+        danarUltimoRegistro(dir2);
+        comprobarRecuperacion(dir2, bloques);
+
+        borrar(dir1);
+        borrar(dir2);
+        V.terminar("ALMACÉN RECUPERADO CORRECTAMENTE");
+    }
+
+    private static void comprobarRecuperacion(Path dir, List<Bloque> bloques) throws IOException {
+        try (AlmacenBloques almacen = abrir(dir)) {
+            V.verificar("quedan 4 bloques", almacen.getCantidad() == 4);
+            V.verificar("los sanos se leen igual", mismosHashes(almacen.cargarTodos(), bloques));
+            almacen.agregar(bloques.get(4));
+            almacen.agregar(bloques.get(5));
+        }
+        try (AlmacenBloques almacen = abrir(dir)) {
+            V.verificar("tras reescribir y reabrir hay 6", almacen.getCantidad() == 6);
+            V.verificar("en orden y sin huecos", mismosHashes(almacen.cargarTodos(), bloques));
+        }
+    }
+
+    // Bloques enlazados desde el génesis; el almacén no valida la prueba de trabajo
+    private static List<Bloque> cadena(int n) {
+        ArrayList<Bloque> bloques = new ArrayList<>();
+        bloques.add(Blockchain.crearGenesis());
+        for (int i = 1; i < n; i++) {
+            Bloque b = new Bloque(bloques.get(i - 1).getHash());
+            b.setIndex(i);
+            b.setHashDirecto(b.calcularHash());
+            bloques.add(b);
+        }
+        return bloques;
+    }
+
+    private static AlmacenBloques abrir(Path dir) throws IOException {
+        return new AlmacenBloques(dir, CAPACIDAD, AlmacenBloques.PoliticaSync.POR_BLOQUE, 1, 1000);
+    }
+
+    // Invierte el último byte escrito: el CRC del último registro deja de coincidir
+    private static void danarUltimoRegistro(Path dir) throws IOException {
+        Path segmento = dir.resolve("segmento_000000.dat");
+        byte[] datos = Files.readAllBytes(segmento);
+        int ultimo = datos.length - 1;
+        while (ultimo >= 0 && datos[ultimo] == 0) ultimo--;
+        datos[ultimo] ^= (byte) 0xFF;
+        Files.write(segmento, datos);
+        System.out.println("   Byte " + ultimo + " de " + segmento.getFileName() + " alterado");
+    }
+
+    private static boolean mismosHashes(List<Bloque> leidos, List<Bloque> esperados) {
+        for (int i = 0; i < leidos.size(); i++) {
+            if (!leidos.get(i).getHash().equals(esperados.get(i).getHash())) return false;
+        }
+        return true;
+    }
+
+    private static void borrar(Path dir) throws IOException {
+        try (Stream<Path> rutas = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) rutas.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package cliente;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.crypto.SecretKey;
+import modelo.CifradorFlujo;
+import modelo.ContextoCripto;
+
+/**
+ * El flujo AES-GCM por trozos de CifradorFlujo debe rechazar un trozo
+ * alterado, un flujo cortado (en el borde de un trozo o a la mitad), trozos
+ * reordenados y datos después del trozo final.
+ */
+public class TestCifradoGcm {
+
+    private static final int TROZO = 32;       // trozos chicos: varios por mensaje
+    private static final int CABECERA = 16;    // "GCM1" + tamaño de trozo + prefijo de nonce
+    private static final Verificaciones V = new Verificaciones();
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("╔════════════════════════════════════════╗");
+        System.out.println("║    🧪 TEST DE CIFRADO AES-GCM          ║");
+        System.out.println("╚════════════════════════════════════════╝\n");
+
+        SecretKey llave = ContextoCripto.porDefecto().generadorAes().generateKey();
+        CifradorFlujo cifrador = new CifradorFlujo(TROZO, null);
+        byte[] plano = new byte[TROZO * 6 + 8];
+        for (int i = 0; i < plano.length; i++) plano[i] = (byte) i;
+        byte[] flujo = cifrar(cifrador, plano, llave);
+        List<int[]> trozos = trozos(flujo);
+        System.out.println("   " + plano.length + " bytes en " + trozos.size() + " trozos\n");
+
+        // TEST 1: ida y vuelta
+        System.out.println("📡 Test 1: Cifrar y descifrar");
+        V.verificar("el texto descifrado es el original", Arrays.equals(plano, descifrar(cifrador, flujo, llave)));
+        String entrada = cifrador.cifrarEntrada(plano, llave);
+        V.verificar("entrada de bloque con prefijo " + CifradorFlujo.PREFIJO_GCM, CifradorFlujo.esGcm(entrada));
+        V.verificar("la entrada de bloque se descifra", Arrays.equals(plano, cifrador.descifrarEntrada(entrada, llave)));
+
+        // TEST 2: un byte alterado en el texto cifrado de un trozo intermedio
+        System.out.println("\n📡 Test 2: Trozo alterado");
+        byte[] alterado = flujo.clone();
+        alterado[trozos.get(2)[0] + 5 + 3] ^= 1;
+        V.verificar("se rechaza", falla(cifrador, alterado, llave));
+
+        // TEST 3: flujo cortado
+        System.out.println("\n📡 Test 3: Flujo truncado");
+        int[] ultimo = trozos.get(trozos.size() - 1);
+        V.verificar("sin el trozo final se rechaza", falla(cifrador, Arrays.copyOf(flujo, ultimo[0]), llave));
+        V.verificar("cortado a mitad de trozo se rechaza", falla(cifrador, Arrays.copyOf(flujo, ultimo[0] + 9), llave));
+        V.verificar("sin la cabecera completa se rechaza", falla(cifrador, Arrays.copyOf(flujo, CABECERA - 1), llave));
+
+        // TEST 4: dos trozos del mismo largo intercambiados
+        System.out.println("\n📡 Test 4: Trozos reordenados");
+        int[] t1 = trozos.get(1);
+        int[] t2 = trozos.get(2);
+        byte[] reordenado = flujo.clone();
+        System.arraycopy(flujo, t2[0], reordenado, t1[0], t2[1]);
+        System.arraycopy(flujo, t1[0], reordenado, t1[0] + t2[1], t1[1]);
+        V.verificar("se rechaza", falla(cifrador, reordenado, llave));
+
+        // TEST 5: datos pegados después del trozo final
+        System.out.println("\n📡 Test 5: Datos después del final");
+        byte[] extendido = Arrays.copyOf(flujo, flujo.length + 1);
+        V.verificar("se rechaza", falla(cifrador, extendido, llave));
+
+        V.terminar("FLUJO GCM AUTENTICADO");
+    }
+
+    private static byte[] cifrar(CifradorFlujo cifrador, byte[] plano, SecretKey llave)
+            throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        cifrador.cifrar(Channels.newChannel(new ByteArrayInputStream(plano)), Channels.newChannel(salida), llave);
+        return salida.toByteArray();
+    }
+
+    private static byte[] descifrar(CifradorFlujo cifrador, byte[] flujo, SecretKey llave)
+            throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        cifrador.descifrar(Channels.newChannel(new ByteArrayInputStream(flujo)), Channels.newChannel(salida), llave);
+        return salida.toByteArray();
+    }
+
+    private static boolean falla(CifradorFlujo cifrador, byte[] flujo, SecretKey llave) {
+        try {
+            descifrar(cifrador, flujo, llave);
+            return false;
+        } catch (IOException | GeneralSecurityException e) {
+            System.out.println("   Rechazo: " + e.getClass().getSimpleName()
+                    + (e.getMessage() != null ? " (" + e.getMessage() + ")" : ""));
+            return true;
+        }
+    }
+
+    // {offset, largo} de cada trozo: int longitud | byte final | texto cifrado + etiqueta
+    private static List<int[]> trozos(byte[] flujo) {
+        ArrayList<int[]> trozos = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.wrap(flujo);
+        int pos = CABECERA;
+        while (pos < flujo.length) {
+            int largo = 5 + buf.getInt(pos);
+            trozos.add(new int[] {pos, largo});
+            pos += largo;
+        }
+        return trozos;
+    }
+}
@@ -0,0 +1,82 @@
+package cliente;
+
+import java.util.ArrayList;
+import java.util.List;
+import modelo.Blockchain;
+import modelo.Bloque;
+import modelo.CriptoUtil;
+import modelo.FormatoCabecera;
+import modelo.MinadorParalelo;
+import modelo.ProgresoMinado;
+
+/**
+ * El minador calcula el hash por nonce con un midstate (v1/v2) o con los
+ * dígitos del nonce sobre prefijo y sufijo fijos (legado). Comprueba que
+ * encuentra el mismo nonce que un recorrido secuencial con calcularHashConNonce.
+ */
+public class TestHashCabecera {
+
+    private static final int BITS = 10;
+    private static final Verificaciones V = new Verificaciones();
+
+    public static void main(String[] args) {
+        System.out.println("╔════════════════════════════════════════╗");
+        System.out.println("║   🧪 TEST DE HASH DE CABECERA (MINADO) ║");
+        System.out.println("╚════════════════════════════════════════╝\n");
+
+        MinadorParalelo minador = new MinadorParalelo(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        try {
+            System.out.println("📡 Test 1: Cabecera legado (texto)");
+            probar(minador, bloque(FormatoCabecera.VERSION_LEGADO));
+
+            System.out.println("📡 Test 2: Cabecera binaria v1");
+            probar(minador, bloque(FormatoCabecera.VERSION_BINARIA));
+
+            System.out.println("📡 Test 3: Cabecera v2 con raíz Merkle");
+            probar(minador, bloque(FormatoCabecera.VERSION_MERKLE));
+        } finally {
+            minador.cerrar();
+        }
+
+        V.terminar("MIDSTATE Y HASH LEGADO COINCIDEN");
+    }
+
+    // Contenido fijo: el hash de cabecera solo ve llave, datos cifrados (y hashes de transacción en v2)
+    private static Bloque bloque(int version) {
+        ArrayList<String> datos = new ArrayList<>(List.of("ZGF0b3MgY2lmcmFkb3M=", "bcOhcyBkYXRvcw=="));
+        ArrayList<String> hashes = version >= FormatoCabecera.VERSION_MERKLE
+                ? new ArrayList<>(List.of(CriptoUtil.aplicarSha256("tx1"), CriptoUtil.aplicarSha256("tx2"),
+                        CriptoUtil.aplicarSha256("tx3")))
+                : null;
+        return new Bloque(1, Blockchain.TIMESTAMP_GENESIS + 1000, 0, null, Blockchain.HASH_GENESIS,
+                datos, "bGxhdmU=", version, hashes);
+    }
+
+    private static void probar(MinadorParalelo minador, Bloque b) {
+        MinadorParalelo.Resultado r = minador.minarBits(b, BITS, new ProgresoMinado(BITS));
+        System.out.println("   Nonce: " + r.getNonce() + "  Hash: " + r.getHash());
+        V.verificar("el hash completo del nonce ganador cumple " + BITS + " bits",
+                bitsEnCero(b.calcularHashConNonce(r.getNonce())) >= BITS);
+
+        // Ningún nonce menor cumple: el midstate no descartó uno válido
+        int primero = -1;
+        for (int n = 0; n <= r.getNonce(); n++) {
+            if (bitsEnCero(b.calcularHashConNonce(n)) >= BITS) {
+                primero = n;
+                break;
+            }
+        }
+        V.verificar("el recorrido secuencial encuentra el mismo nonce (" + primero + ")", primero == r.getNonce());
+        System.out.println();
+    }
+
+    private static int bitsEnCero(String hex) {
+        int bits = 0;
+        for (int i = 0; i < hex.length(); i++) {
+            int nibble = Character.digit(hex.charAt(i), 16);
+            if (nibble != 0) return bits + Integer.numberOfLeadingZeros(nibble) - 28;
+            bits += 4;
+        }
+        return bits;
+    }
+}
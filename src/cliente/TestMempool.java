@@ -0,0 +1,81 @@
+package cliente;
+
+import java.util.List;
+import modelo.Medicamento;
+import modelo.Mempool;
+import modelo.TransaccionInventario;
+
+/**
+ * Contabilidad del efecto pendiente del Mempool (getDeltaPendiente) con
+ * admisión por existencias: lo pendiente y lo que está en vuelo cuenta para
+ * admitir salidas, devolver un lote no lo duplica y confirmar o quitar
+ * transacciones lo descuenta.
+ */
+public class TestMempool {
+
+    private static final Verificaciones V = new Verificaciones();
+    private static int stockConfirmado = 10;
+
+    public static void main(String[] args) {
+        System.out.println("╔════════════════════════════════════════╗");
+        System.out.println("║    🧪 TEST DE CONTABILIDAD DEL MEMPOOL ║");
+        System.out.println("╚════════════════════════════════════════╝\n");
+
+        // Sin sellador: los lotes se sellan a mano con sellarAhora
+        Mempool mempool = new Mempool(100, 1 << 20, 60_000);
+        mempool.setExistencias((farmacia, codigo) -> stockConfirmado);
+
+        // TEST 1: admisión contra confirmado + pendiente
+        System.out.println("📡 Test 1: Admisión por existencias (confirmado = 10)");
+        TransaccionInventario entrada = movimiento(TransaccionInventario.ENTRADA, 5, "e1");
+        TransaccionInventario salida = movimiento(TransaccionInventario.SALIDA, 12, "s1");
+        V.verificar("entrada de 5 aceptada", mempool.agregar(entrada) == Mempool.ResultadoAdmision.ACEPTADA);
+        V.verificar("salida de 12 aceptada (10 + 5)", mempool.agregar(salida) == Mempool.ResultadoAdmision.ACEPTADA);
+        V.verificar("delta pendiente -7", delta(mempool) == -7);
+        V.verificar("salida de 4 sin existencias (10 - 7)",
+                mempool.agregar(movimiento(TransaccionInventario.SALIDA, 4, "s2")) == Mempool.ResultadoAdmision.SIN_EXISTENCIAS);
+        V.verificar("repetida es duplicada", mempool.agregar(entrada) == Mempool.ResultadoAdmision.DUPLICADA);
+        V.verificar("delta sin cambios", delta(mempool) == -7);
+
+        // TEST 2: lote en vuelo que se devuelve
+        System.out.println("\n📡 Test 2: Sellar y devolver el lote");
+        List<TransaccionInventario> lote = mempool.sellarAhora();
+        V.verificar("lote de 2 en vuelo", lote != null && lote.size() == 2 && mempool.hayLoteEnVuelo());
+        V.verificar("en vuelo sigue contando: delta -7", delta(mempool) == -7);
+        V.verificar("en vuelo también es duplicada", mempool.agregar(salida) == Mempool.ResultadoAdmision.DUPLICADA);
+        mempool.devolverLote();
+        V.verificar("vuelven 2 pendientes", mempool.getTamano() == 2 && !mempool.hayLoteEnVuelo());
+        V.verificar("devolver no duplica: delta -7", delta(mempool) == -7);
+
+        // TEST 3: el lote entra en la cadena
+        System.out.println("\n📡 Test 3: Confirmar el lote");
+        mempool.sellarAhora();
+        stockConfirmado = 3; // lo que aplicaría IndiceInventario al agregar el bloque
+        mempool.confirmarLote();
+        V.verificar("delta 0 tras confirmar", delta(mempool) == 0);
+        V.verificar("salida de 3 aceptada (confirmado 3)",
+                mempool.agregar(movimiento(TransaccionInventario.SALIDA, 3, "s3")) == Mempool.ResultadoAdmision.ACEPTADA);
+        V.verificar("salida de 1 sin existencias (3 - 3)",
+                mempool.agregar(movimiento(TransaccionInventario.SALIDA, 1, "s4")) == Mempool.ResultadoAdmision.SIN_EXISTENCIAS);
+
+        // TEST 4: la confirma un bloque de otro nodo
+        System.out.println("\n📡 Test 4: Quitar las confirmadas por otro bloque");
+        mempool.quitarConfirmadas(List.of(mempool.getPendientes().get(0).getHashTransaccion()));
+        V.verificar("sin pendientes", mempool.getTamano() == 0);
+        V.verificar("delta 0", delta(mempool) == 0);
+
+        mempool.cerrar();
+        V.terminar("CONTABILIDAD DEL MEMPOOL CORRECTA");
+    }
+
+    private static TransaccionInventario movimiento(String tipo, int cantidad, String responsable) {
+        return new TransaccionInventario("F1", new Medicamento("Aspirina", "A1", cantidad, "500mg"),
+                tipo, responsable, "L1", "01/01/2030");
+    }
+
+    private static int delta(Mempool mempool) {
+        int d = mempool.getDeltaPendiente("F1", "A1");
+        System.out.println("   Delta pendiente: " + d);
+        return d;
+    }
+}
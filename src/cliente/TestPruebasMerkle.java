@@ -0,0 +1,76 @@
+package cliente;
+
+import java.util.Arrays;
+import modelo.Blockchain;
+import modelo.Bloque;
+import modelo.Medicamento;
+import modelo.PruebaMerkle;
+import modelo.TransaccionInventario;
+
+/**
+ * Pruebas de inclusión Merkle de un bloque v2: cada transacción verifica
+ * contra la raíz, la prueba sobrevive a codificar/decodificar y no sirve para
+ * otra transacción ni otra raíz. También que la raíz cacheada se invalida al
+ * agregar una transacción.
+ */
+public class TestPruebasMerkle {
+
+    private static final int TRANSACCIONES = 7; // impar: el último nodo de un nivel se empareja consigo
+    private static final Verificaciones V = new Verificaciones();
+
+    public static void main(String[] args) {
+        System.out.println("╔════════════════════════════════════════╗");
+        System.out.println("║      🧪 TEST DE PRUEBAS MERKLE         ║");
+        System.out.println("╚════════════════════════════════════════╝\n");
+
+        Bloque bloque = new Bloque(Blockchain.HASH_GENESIS);
+        bloque.setIndex(1);
+        for (int i = 0; i < TRANSACCIONES; i++) {
+            bloque.agregarTransaccion(new TransaccionInventario("F1", new Medicamento("Producto " + i, "P" + i, i + 1, ""),
+                    TransaccionInventario.ENTRADA, "responsable-" + i, "L" + i, "01/01/2030"));
+        }
+        byte[] raiz = bloque.construirArbolMerkle().getRaiz();
+        System.out.println("   Raíz: " + bloque.construirArbolMerkle().getRaizHex() + "\n");
+
+        // TEST 1: cada transacción con su prueba
+        System.out.println("📡 Test 1: Prueba de cada transacción");
+        boolean todas = true;
+        for (String h : bloque.getHashesTransacciones()) {
+            PruebaMerkle prueba = bloque.generarPruebaTransaccion(h);
+            todas &= prueba != null && prueba.verificar(Bloque.datosHojaTransaccion(h), raiz);
+        }
+        V.verificar(TRANSACCIONES + " pruebas verifican contra la raíz", todas);
+
+        // TEST 2: ida y vuelta por el formato de red
+        System.out.println("\n📡 Test 2: Codificar y decodificar");
+        String ultima = bloque.getHashesTransacciones().get(TRANSACCIONES - 1);
+        PruebaMerkle original = bloque.generarPruebaTransaccion(ultima);
+        PruebaMerkle decodificada = PruebaMerkle.decodificar(original.codificar());
+        System.out.println("   " + decodificada);
+        V.verificar("la prueba decodificada verifica", decodificada.verificar(Bloque.datosHojaTransaccion(ultima), raiz));
+
+        // TEST 3: la prueba no se puede reutilizar
+        System.out.println("\n📡 Test 3: Prueba ajena o raíz alterada");
+        String primera = bloque.getHashesTransacciones().get(0);
+        V.verificar("no verifica otra transacción",
+                !original.verificar(Bloque.datosHojaTransaccion(primera), raiz));
+        byte[] alterada = Arrays.copyOf(raiz, raiz.length);
+        alterada[0] ^= 1;
+        V.verificar("no verifica contra otra raíz", !original.verificar(Bloque.datosHojaTransaccion(ultima), alterada));
+        V.verificar("sin prueba para una transacción que no está",
+                bloque.generarPruebaTransaccion("00".repeat(32)) == null);
+
+        // TEST 4: caché de cabecera
+        System.out.println("\n📡 Test 4: Raíz y hash tras agregar una transacción");
+        String hashAntes = bloque.calcularHash();
+        bloque.agregarTransaccion(new TransaccionInventario("F1", new Medicamento("Extra", "PX", 1, ""),
+                TransaccionInventario.ENTRADA, "responsable-extra", "LX", "01/01/2030"));
+        byte[] raizDespues = bloque.construirArbolMerkle().getRaiz();
+        V.verificar("la raíz cambia", !Arrays.equals(raiz, raizDespues));
+        V.verificar("el hash de cabecera cambia", !hashAntes.equals(bloque.calcularHash()));
+        V.verificar("las pruebas nuevas verifican contra la raíz nueva",
+                bloque.generarPruebaTransaccion(primera).verificar(Bloque.datosHojaTransaccion(primera), raizDespues));
+
+        V.terminar("PRUEBAS MERKLE CORRECTAS");
+    }
+}
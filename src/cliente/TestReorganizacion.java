@@ -0,0 +1,97 @@
+package cliente;
+
+import java.util.ArrayList;
+import modelo.AjusteDificultad;
+import modelo.Blockchain;
+import modelo.Bloque;
+import modelo.FormatoCabecera;
+import modelo.IndiceInventario;
+import modelo.Medicamento;
+import modelo.MinadorParalelo;
+import modelo.ProgresoMinado;
+import modelo.TransaccionInventario;
+
+/**
+ * Reorganizaciones con estados derivados: al cambiar de rama el inventario se
+ * deshace con los registros de deshacer y debe quedar igual que uno
+ * reconstruido desde el génesis. Las transacciones de la rama abandonada
+ * vuelven al mempool y un bloque con cabecera legado sobre la punta se rechaza.
+ */
+public class TestReorganizacion {
+
+    private static final int BITS = 8;
+    private static final Verificaciones V = new Verificaciones();
+
+    public static void main(String[] args) {
+        System.out.println("╔════════════════════════════════════════╗");
+        System.out.println("║     🧪 TEST DE REORGANIZACIÓN          ║");
+        System.out.println("╚════════════════════════════════════════╝\n");
+
+        Blockchain cadena = new Blockchain(AjusteDificultad.fija(BITS));
+        IndiceInventario inventario = new IndiceInventario();
+        cadena.registrarEstadoDerivado(inventario);
+        long t = System.currentTimeMillis() - 60_000;
+
+        // TEST 1: rama A (génesis -> a1 -> a2)
+        System.out.println("📡 Test 1: Rama A");
+        Bloque a1 = minar(cadena.obtenerUltimoBloque(), t += 1000, movimiento(TransaccionInventario.ENTRADA, 10, "a1"));
+        Bloque a2 = minar(a1, t += 1000, movimiento(TransaccionInventario.SALIDA, 3, "a2"));
+        V.verificar("a1 agregado", cadena.recibirBloque(a1) == Blockchain.ResultadoRecepcion.AGREGADO);
+        V.verificar("a2 agregado", cadena.recibirBloque(a2) == Blockchain.ResultadoRecepcion.AGREGADO);
+        V.verificar("stock 7 (10 - 3)", inventario.getCantidad("F1", "A1") == 7);
+
+        // TEST 2: rama B desde a1 con más trabajo
+        System.out.println("\n📡 Test 2: Rama B supera a la A");
+        Bloque b2 = minar(a1, t += 1000, movimiento(TransaccionInventario.ENTRADA, 5, "b2"));
+        Bloque b3 = minar(b2, t += 1000, movimiento(TransaccionInventario.SALIDA, 1, "b3"));
+        V.verificar("b2 queda en rama lateral", cadena.recibirBloque(b2) == Blockchain.ResultadoRecepcion.RAMA_LATERAL);
+        V.verificar("b3 reorganiza", cadena.recibirBloque(b3) == Blockchain.ResultadoRecepcion.REORGANIZADO);
+        V.verificar("stock 14 (10 + 5 - 1)", inventario.getCantidad("F1", "A1") == 14);
+        V.verificar("igual que reconstruido desde el génesis", inventario.getCantidad("F1", "A1") == reconstruido(cadena));
+        V.verificar("la salida de a2 vuelve al mempool",
+                cadena.getMempool().contiene(a2.getHashesTransacciones().get(0)));
+
+        // TEST 3: la rama A vuelve a ganar
+        System.out.println("\n📡 Test 3: Rama A recupera la punta");
+        Bloque a3 = minar(a2, t += 1000, movimiento(TransaccionInventario.SALIDA, 2, "a3"));
+        Bloque a4 = minar(a3, t += 1000, movimiento(TransaccionInventario.ENTRADA, 4, "a4"));
+        cadena.recibirBloque(a3);
+        V.verificar("a4 reorganiza", cadena.recibirBloque(a4) == Blockchain.ResultadoRecepcion.REORGANIZADO);
+        V.verificar("stock 9 (10 - 3 - 2 + 4)", inventario.getCantidad("F1", "A1") == 9);
+        V.verificar("igual que reconstruido desde el génesis", inventario.getCantidad("F1", "A1") == reconstruido(cadena));
+        V.verificar("la salida de a2 ya no está pendiente",
+                !cadena.getMempool().contiene(a2.getHashesTransacciones().get(0)));
+        V.verificar("cadena válida completa", cadena.esCadenaValida(true));
+
+        // TEST 4: cabecera legado sobre una v2
+        System.out.println("\n📡 Test 4: Bloque legado sobre la punta");
+        Bloque padre = cadena.obtenerUltimoBloque();
+        Bloque legado = new Bloque(padre.getIndex() + 1, t + 1000, 0, null, padre.getHash(),
+                new ArrayList<>(), "", FormatoCabecera.VERSION_LEGADO);
+        legado.minarBloqueBits(BITS, MinadorParalelo.porDefecto(), new ProgresoMinado(BITS));
+        V.verificar("rechazado", cadena.recibirBloque(legado) == Blockchain.ResultadoRecepcion.RECHAZADO);
+
+        V.terminar("REORGANIZACIONES CONSISTENTES");
+    }
+
+    private static TransaccionInventario movimiento(String tipo, int cantidad, String responsable) {
+        return new TransaccionInventario("F1", new Medicamento("Aspirina", "A1", cantidad, "500mg"),
+                tipo, responsable, "L1", "01/01/2030");
+    }
+
+    private static Bloque minar(Bloque padre, long timestamp, TransaccionInventario t) {
+        Bloque b = new Bloque(padre.getHash());
+        b.setIndex(padre.getIndex() + 1);
+        b.setTiempoCreacion(timestamp);
+        b.agregarTransaccion(t);
+        b.minarBloqueBits(BITS, MinadorParalelo.porDefecto(), new ProgresoMinado(BITS));
+        return b;
+    }
+
+    // Un índice nuevo se registra aplicando toda la cadena desde el génesis
+    private static int reconstruido(Blockchain cadena) {
+        IndiceInventario desdeCero = new IndiceInventario();
+        cadena.registrarEstadoDerivado(desdeCero);
+        return desdeCero.getCantidad("F1", "A1");
+    }
+}
@@ -0,0 +1,28 @@
+package cliente;
+
+/**
+ * Cuenta las verificaciones de un Test* local (sin servidores) e imprime el
+ * cierre. Con alguna falla el proceso termina con código 1.
+ */
+final class Verificaciones {
+
+    private int fallas;
+
+    void verificar(String descripcion, boolean ok) {
+        if (ok) {
+            System.out.println("   ✅ " + descripcion);
+        } else {
+            System.out.println("   ❌ " + descripcion);
+            fallas++;
+        }
+    }
+
+    void terminar(String mensajeExito) {
+        System.out.println("\n╔════════════════════════════════════════╗");
+        System.out.println(fallas == 0
+                ? "  ✅ " + mensajeExito
+                : "  ❌ " + fallas + " VERIFICACIONES FALLARON");
+        System.out.println("╚════════════════════════════════════════╝");
+        if (fallas > 0) System.exit(1);
+    }
+}
@@ -0,0 +1,142 @@
+package modelo;
+
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Reajuste de dificultad hacia un intervalo objetivo entre bloques, y reglas
+ * de timestamp. Son parámetros de la cadena, no del nodo: todos los nodos de
+ * una red deben usar los mismos o no coincidirán en la dificultad exigida.
+ *
+ * La dificultad se expresa en bits cero iniciales del hash (4 bits = un cero hex),
+ * así cada paso duplica o divide a la mitad el trabajo esperado.
+ *
+ * Cada "ventana" bloques se compara el tiempo observado de la última ventana
+ * (diferencias de getTimestamp()) contra ventana * intervaloObjetivo y se suma
+ * round(log2(esperado / observado)) bits, acotado a ±maxAjusteBits y a
+ * [bitsMinimos, bitsMaximos]. La regla es determinista: cualquier nodo obtiene
+ * la misma dificultad para cada altura a partir de los timestamps de la cadena.
+ *
+ * Como la regla depende de los timestamps, estos también se acotan (ver
+ * verificarTimestamp): cada bloque debe ser posterior a la mediana de los
+ * ventanaMediana anteriores y no adelantarse más de maxAdelantoMs al reloj
+ * de quien lo recibe. Sin esto un minero podría falsear tiempos para bajar
+ * la dificultad.
+ */
+public class AjusteDificultad {
+
+    public static final long INTERVALO_OBJETIVO_MS_DEFECTO = 30_000;
+    public static final int VENTANA_DEFECTO = 10;
+    public static final int MAX_AJUSTE_BITS_DEFECTO = 2;
+    public static final int VENTANA_MEDIANA_DEFECTO = 11;
+    public static final long MAX_ADELANTO_MS_DEFECTO = 2 * 60_000L;
+
+    private final int bitsIniciales;
+    private final long intervaloObjetivoMs;
+    private final int ventana;
+    private final int bitsMinimos;
+    private final int bitsMaximos;
+    private final int maxAjusteBits;
+    private final int ventanaMediana;
+    private final long maxAdelantoMs;
+
+    public AjusteDificultad(int bitsIniciales, long intervaloObjetivoMs, int ventana,
+                            int bitsMinimos, int bitsMaximos, int maxAjusteBits) {
+        this(bitsIniciales, intervaloObjetivoMs, ventana, bitsMinimos, bitsMaximos, maxAjusteBits,
+                VENTANA_MEDIANA_DEFECTO, MAX_ADELANTO_MS_DEFECTO);
+    }
+
+    public AjusteDificultad(int bitsIniciales, long intervaloObjetivoMs, int ventana,
+                            int bitsMinimos, int bitsMaximos, int maxAjusteBits,
+                            int ventanaMediana, long maxAdelantoMs) {
+        if (bitsMinimos < 0 || bitsMaximos > 256 || bitsMinimos > bitsMaximos) {
+            throw new IllegalArgumentException("Rango de bits inválido: " + bitsMinimos + ".." + bitsMaximos);
+        }
+        if (bitsIniciales < bitsMinimos || bitsIniciales > bitsMaximos) {
+            throw new IllegalArgumentException("bitsIniciales fuera de rango: " + bitsIniciales);
+        }
+        if (ventana < 0 || intervaloObjetivoMs <= 0 || maxAjusteBits < 0) {
+            throw new IllegalArgumentException("Parámetros de reajuste inválidos");
+        }
+        if (ventanaMediana < 1 || maxAdelantoMs < 0) {
+            throw new IllegalArgumentException("Parámetros de timestamp inválidos");
+        }
+        this.bitsIniciales = bitsIniciales;
+        this.intervaloObjetivoMs = intervaloObjetivoMs;
+        this.ventana = ventana;
+        this.bitsMinimos = bitsMinimos;
+        this.bitsMaximos = bitsMaximos;
+        this.maxAjusteBits = maxAjusteBits;
+        this.ventanaMediana = ventanaMediana;
+        this.maxAdelantoMs = maxAdelantoMs;
+    }
+
+    /**
+     * Reajuste con parámetros por defecto partiendo de "cerosHex" ceros hex.
+     * Para otro intervalo objetivo se usa el constructor, igual en todos los nodos.
+     */
+    public static AjusteDificultad porDefecto(int cerosHex) {
+        int bits = cerosHex * 4;
+        return new AjusteDificultad(bits, INTERVALO_OBJETIVO_MS_DEFECTO, VENTANA_DEFECTO,
+                Math.min(bits, 4), Math.max(bits, 64), MAX_AJUSTE_BITS_DEFECTO);
+    }
+
+    /** Dificultad constante (sin reajuste). */
+    public static AjusteDificultad fija(int bits) {
+        return new AjusteDificultad(bits, INTERVALO_OBJETIVO_MS_DEFECTO, 0, bits, bits, 0);
+    }
+
+    public int getBitsIniciales() { return bitsIniciales; }
+    public long getIntervaloObjetivoMs() { return intervaloObjetivoMs; }
+    public int getVentana() { return ventana; }
+    public int getVentanaMediana() { return ventanaMediana; }
+    public long getMaxAdelantoMs() { return maxAdelantoMs; }
+
+    /** true si en "altura" se recalcula la dificultad. */
+    public boolean esAlturaDeReajuste(int altura) {
+        // La primera ventana medible empieza en el bloque 1: el génesis no refleja el ritmo de minado
+        return ventana > 0 && altura % ventana == 0 && altura - 1 - ventana >= 1;
+    }
+
+    /**
+     * Dificultad (bits) del bloque en "altura", dada la del bloque anterior y
+     * el acceso a los timestamps de alturas menores.
+     */
+    public int bitsPara(int altura, int bitsAnterior, IntToLongFunction timestampEn) {
+        if (altura <= 0) return bitsIniciales;
+        if (!esAlturaDeReajuste(altura)) return bitsAnterior;
+
+        long observado = timestampEn.applyAsLong(altura - 1) - timestampEn.applyAsLong(altura - 1 - ventana);
+        long esperado = intervaloObjetivoMs * ventana;
+        double ratio = (double) esperado / Math.max(1, observado);
+        int delta = (int) Math.round(Math.log(ratio) / Math.log(2));
+        delta = Math.max(-maxAjusteBits, Math.min(maxAjusteBits, delta));
+        return Math.max(bitsMinimos, Math.min(bitsMaximos, bitsAnterior + delta));
+    }
+
+    /** Mediana de los timestamps de los (hasta) ventanaMediana bloques anteriores a "altura". */
+    public long medianaTiempoPasado(int altura, IntToLongFunction timestampEn) {
+        int n = Math.min(ventanaMediana, altura);
+        long[] tiempos = new long[n];
+        for (int i = 0; i < n; i++) tiempos[i] = timestampEn.applyAsLong(altura - 1 - i);
+        Arrays.sort(tiempos);
+        return tiempos[n / 2];
+    }
+
+    /**
+     * Comprueba el timestamp del bloque en "altura" contra los anteriores y el reloj local.
+     * @throws IllegalArgumentException si no supera la mediana o se adelanta demasiado a "ahoraMs"
+     */
+    public void verificarTimestamp(int altura, long timestamp, IntToLongFunction timestampEn, long ahoraMs) {
+        if (altura <= 0) return;
+        long mediana = medianaTiempoPasado(altura, timestampEn);
+        if (timestamp <= mediana) {
+            throw new IllegalArgumentException("Timestamp " + timestamp + " no supera la mediana de los "
+                    + Math.min(ventanaMediana, altura) + " anteriores (" + mediana + ")");
+        }
+        if (timestamp > ahoraMs + maxAdelantoMs) {
+            throw new IllegalArgumentException("Timestamp " + (timestamp - ahoraMs) + " ms en el futuro (máximo "
+                    + maxAdelantoMs + ")");
+        }
+    }
+}
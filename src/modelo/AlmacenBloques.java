@@ -0,0 +1,588 @@
+package modelo;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Registro de bloques en disco: solo-agregar, por segmentos mapeados en memoria.
+ *
+ * Cada segmento (segmento_NNNNNN.dat) es un archivo de tamaño fijo mapeado con
+ * FileChannel.map. Los bloques se escriben uno tras otro como registros:
+ *
+ *   int MAGICO | int largo | int crc32(carga) | carga binaria (ver codificar)
+ *
+ * El mágico se escribe al final, así un registro a medio escribir queda
+ * invisible; el CRC detecta páginas que no llegaron a disco. Al abrir se
+ * recorren los segmentos hasta el primer registro inválido (los segmentos
+ * cerrados terminan en FIN_SEGMENTO) y se arma el índice
+ * altura -> (segmento, offset), que permite leer cualquier bloque sin parsear JSON.
+ *
+ * guardarInstantanea deja en instantanea.dat ese índice más la marca de agua de
+ * verificación, la dificultad de cada altura y los estados derivados que le
+ * pase Blockchain (opacos para el almacén); al reabrir se carga y solo se
+ * escanea la cola posterior.
+ *
+ * Todos los métodos públicos toman el lock de la instancia: truncar y close
+ * sueltan segmentos mapeados, así que una lectura no puede solaparse con
+ * ellos. Se puede leer desde cualquier hilo.
+ */
+public final class AlmacenBloques implements AutoCloseable {
+
+    /** Cuándo se fuerza a disco lo escrito. */
+    public enum PoliticaSync {
+        /** force() tras cada bloque: no se pierde ningún bloque confirmado. */
+        POR_BLOQUE,
+        /** force() cada "tamanoGrupo" bloques: se pueden perder los del último grupo. */
+        AGRUPADO,
+        /** force() periódico en un hilo aparte cada "intervaloSyncMs". */
+        ASINCRONO
+    }
+
+    private static final int MAGICO = 0x424C4B31; // "BLK1"
+    private static final int FIN_SEGMENTO = 0x46494E21; // "FIN!": el registro sigue en el próximo segmento
+    private static final int CABECERA = 12;       // mágico + largo + crc
+    private static final byte FORMATO_CARGA = 2;
+    private static final int MAGICO_INSTANTANEA = 0x534E5032; // "SNP2": índice, marca de agua, bits por altura y estados
+    private static final String ARCHIVO_INSTANTANEA = "instantanea.dat";
+
+    public static final long CAPACIDAD_SEGMENTO_DEFECTO = 16L * 1024 * 1024;
+
+    private final Path directorio;
+    private final long capacidadSegmento;
+    private final PoliticaSync politica;
+    private final int tamanoGrupo;
+    private final CopyOnWriteArrayList<Segmento> segmentos = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService sincronizador;
+
+    // Índice altura -> (segmento << 32 | offset)
+    private long[] posiciones = new long[1024];
+    private int cantidad;
+
+    private int posEscritura;        // offset libre en el último segmento
+    private int pendientesSync;      // bloques escritos desde el último force
+    private int primerSegmentoSucio = -1;
+    private boolean cerrado;
+    private int alturaVerificadaInstantanea; // marca de agua leída de la instantánea (0 = ninguna)
+    private int[] bitsInstantanea;           // dificultad por altura de la instantánea (null = no traía)
+    private byte[] estadosInstantanea;       // estados derivados de la instantánea (null = no traía)
+    private int cubiertosPorInstantanea;     // registros que no hubo que escanear al abrir
+
+    private static final class Segmento {
+        final int numero;
+        final Path ruta;
+        final FileChannel canal;
+        final MappedByteBuffer mapa;
+
+        Segmento(int numero, Path ruta, FileChannel canal, MappedByteBuffer mapa) {
+            this.numero = numero;
+            this.ruta = ruta;
+            this.canal = canal;
+            this.mapa = mapa;
+        }
+    }
+
+    public AlmacenBloques(Path directorio) throws IOException {
+        this(directorio, PoliticaSync.valueOf(System.getProperty("almacen.sync", PoliticaSync.POR_BLOQUE.name())));
+    }
+
+    public AlmacenBloques(Path directorio, PoliticaSync politica) throws IOException {
+        this(directorio, CAPACIDAD_SEGMENTO_DEFECTO, politica,
+             Integer.getInteger("almacen.grupoSync", 16),
+             Long.getLong("almacen.intervaloSyncMs", 1000L));
+    }
+
+    public AlmacenBloques(Path directorio, long capacidadSegmento, PoliticaSync politica,
+                          int tamanoGrupo, long intervaloSyncMs) throws IOException {
+        if (capacidadSegmento < CABECERA || capacidadSegmento > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacidad de segmento inválida: " + capacidadSegmento);
+        }
+        this.directorio = directorio;
+        this.capacidadSegmento = capacidadSegmento;
+        this.politica = politica;
+        this.tamanoGrupo = Math.max(1, tamanoGrupo);
+        Files.createDirectories(directorio);
+        abrirSegmentos();
+
+        if (politica == PoliticaSync.ASINCRONO) {
+            sincronizador = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Almacen-Sync");
+                t.setDaemon(true);
+                return t;
+            });
+            sincronizador.scheduleWithFixedDelay(() -> {
+                try {
+                    sincronizar();
+                } catch (RuntimeException e) {
+                    System.err.println("⚠️ Error sincronizando almacén: " + e.getMessage());
+                }
+            }, intervaloSyncMs, intervaloSyncMs, TimeUnit.MILLISECONDS);
+        } else {
+            sincronizador = null;
+        }
+        System.out.println("💾 Almacén de bloques en " + directorio + ": " + cantidad + " bloques ("
+                + cubiertosPorInstantanea + " desde instantánea), " + segmentos.size()
+                + " segmento(s), sync " + politica);
+    }
+
+    // ----- Apertura y recuperación -----
+
+    private void abrirSegmentos() throws IOException {
+        List<Path> archivos = new ArrayList<>();
+        try (var listado = Files.list(directorio)) {
+            listado.filter(p -> p.getFileName().toString().matches("segmento_\\d{6}\\.dat"))
+                   .sorted()
+                   .forEach(archivos::add);
+        }
+        if (archivos.isEmpty()) {
+            segmentos.add(crearSegmento(0));
+            posEscritura = 0;
+            return;
+        }
+        for (int s = 0; s < archivos.size(); s++) {
+            segmentos.add(mapear(s, archivos.get(s)));
+        }
+
+        // Con instantánea válida se arranca después de su último registro
+        int segInicio = 0;
+        int offInicio = 0;
+        if (cargarInstantanea()) {
+            long ultimo = posiciones[cantidad - 1];
+            segInicio = (int) (ultimo >>> 32);
+            offInicio = (int) ultimo + CABECERA + segmentos.get(segInicio).mapa.getInt((int) ultimo + 4);
+            cubiertosPorInstantanea = cantidad;
+        }
+
+        for (int s = segInicio; s < segmentos.size(); s++) {
+            Segmento seg = segmentos.get(s);
+            int fin = escanear(seg, s == segInicio ? offInicio : 0);
+            if (fin < 0) continue; // segmento cerrado y sano
+            // Primer registro inválido: aquí termina el registro; lo posterior se descarta
+            posEscritura = fin;
+            while (segmentos.size() - 1 > s) {
+                Segmento sobrante = segmentos.remove(segmentos.size() - 1);
+                sobrante.canal.close();
+                Files.deleteIfExists(sobrante.ruta);
+            }
+            if (fin + 4 <= seg.mapa.capacity()) seg.mapa.putInt(fin, 0);
+            return;
+        }
+        posEscritura = segmentos.get(segmentos.size() - 1).mapa.capacity();
+    }
+
+    /**
+     * Carga índice y marca de agua de instantanea.dat si es coherente con los
+     * segmentos, junto con la dificultad por altura y los estados derivados.
+     *
+     * SNP2: mágico | n | verificada | n x long posición | int nBits | nBits x int |
+     *       int largo | largo x byte estados | crc32
+     */
+    private boolean cargarInstantanea() {
+        Path ruta = directorio.resolve(ARCHIVO_INSTANTANEA);
+        if (!Files.exists(ruta)) return false;
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(ruta));
+            if (buf.remaining() < 16) return false;
+            int magico = buf.getInt();
+            if (magico != MAGICO_INSTANTANEA) return false;
+            int n = buf.getInt();
+            int verificada = buf.getInt();
+            if (n < 1 || buf.remaining() < n * 8L + 12) return false;
+            CRC32 crc = new CRC32();
+            crc.update(buf.array(), 0, buf.limit() - 4);
+            if ((int) crc.getValue() != buf.getInt(buf.limit() - 4)) return false;
+            buf.limit(buf.limit() - 4);
+
+            long[] pos = new long[Math.max(n * 2, 1024)];
+            for (int i = 0; i < n; i++) {
+                pos[i] = buf.getLong();
+                int seg = (int) (pos[i] >>> 32);
+                int off = (int) pos[i];
+                if (seg >= segmentos.size() || off < 0 || off + CABECERA > segmentos.get(seg).mapa.capacity()) {
+                    return false;
+                }
+            }
+            long ultimo = pos[n - 1];
+            if (segmentos.get((int) (ultimo >>> 32)).mapa.getInt((int) ultimo) != MAGICO) return false;
+
+            int[] bits = null;
+            int nBits = buf.getInt();
+            if (nBits != 0 && nBits != n) return false;
+            if (nBits > 0) {
+                bits = new int[nBits];
+                for (int i = 0; i < nBits; i++) bits[i] = buf.getInt();
+            }
+            byte[] estados = null;
+            int largo = buf.getInt();
+            if (largo != buf.remaining()) return false;
+            if (largo > 0) {
+                estados = new byte[largo];
+                buf.get(estados);
+            }
+
+            posiciones = pos;
+            cantidad = n;
+            alturaVerificadaInstantanea = Math.min(verificada, n - 1);
+            bitsInstantanea = bits;
+            estadosInstantanea = estados;
+            return true;
+        } catch (BufferUnderflowException e) {
+            return false;
+        } catch (IOException e) {
+            System.err.println("⚠️ Instantánea ilegible, se escanea todo: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /** Indexa los registros válidos del segmento; devuelve el offset libre, o -1 si el segmento está cerrado. */
+    private int escanear(Segmento seg, int desde) {
+        MappedByteBuffer m = seg.mapa;
+        int off = desde;
+        CRC32 crc = new CRC32();
+        while (off + 4 <= m.capacity()) {
+            int magico = m.getInt(off);
+            if (magico == FIN_SEGMENTO) return -1;
+            if (magico != MAGICO || off + CABECERA > m.capacity()) return off;
+            int largo = m.getInt(off + 4);
+            if (largo <= 0 || off + CABECERA + largo > m.capacity()) return off;
+            crc.reset();
+            crc.update(m.slice(off + CABECERA, largo));
+            if ((int) crc.getValue() != m.getInt(off + 8)) {
+                System.err.println("⚠️ CRC inválido en " + seg.ruta.getFileName() + "@" + off + "; se trunca ahí");
+                return off;
+            }
+            indexar(((long) seg.numero << 32) | off);
+            off += CABECERA + largo;
+        }
+        return -1;
+    }
+
+    private Segmento crearSegmento(int numero) throws IOException {
+        return mapear(numero, directorio.resolve(String.format("segmento_%06d.dat", numero)));
+    }
+
+    private Segmento mapear(int numero, Path ruta) throws IOException {
+        FileChannel canal = FileChannel.open(ruta, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long tamano = Math.max(canal.size(), capacidadSegmento);
+        return new Segmento(numero, ruta, canal, canal.map(FileChannel.MapMode.READ_WRITE, 0, tamano));
+    }
+
+    private void indexar(long posicion) {
+        long[] pos = posiciones;
+        if (cantidad == pos.length) {
+            pos = Arrays.copyOf(pos, pos.length * 2);
+            posiciones = pos;
+        }
+        pos[cantidad] = posicion;
+        cantidad = cantidad + 1;
+    }
+
+    // ----- Escritura -----
+
+    /** Agrega el bloque al final. Su altura debe ser la siguiente del registro. */
+    public synchronized void agregar(Bloque bloque) throws IOException {
+        if (cerrado) throw new IOException("Almacén cerrado");
+        if (bloque.getIndex() != cantidad) {
+            throw new IOException("Se esperaba el bloque #" + cantidad + " y llegó el #" + bloque.getIndex());
+        }
+        byte[] carga = codificar(bloque);
+        int total = CABECERA + carga.length;
+
+        Segmento seg = segmentos.get(segmentos.size() - 1);
+        if (posEscritura + total > seg.mapa.capacity()) {
+            // El segmento lleno se cierra y se fuerza entero antes de pasar al siguiente
+            if (posEscritura + 4 <= seg.mapa.capacity()) seg.mapa.putInt(posEscritura, FIN_SEGMENTO);
+            if (politica != PoliticaSync.ASINCRONO) seg.mapa.force();
+            seg = crearSegmento(seg.numero + 1);
+            if (total > seg.mapa.capacity()) {
+                throw new IOException("Bloque de " + total + " bytes no cabe en un segmento");
+            }
+            segmentos.add(seg);
+            posEscritura = 0;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(carga);
+        MappedByteBuffer m = seg.mapa;
+        int off = posEscritura;
+        m.putInt(off + 4, carga.length);
+        m.putInt(off + 8, (int) crc.getValue());
+        m.put(off + CABECERA, carga);
+        if (off + total + 4 <= m.capacity()) m.putInt(off + total, 0); // fin de registro explícito
+        m.putInt(off, MAGICO);                                            // último: hace visible el registro
+
+        posEscritura = off + total;
+        if (primerSegmentoSucio < 0) primerSegmentoSucio = seg.numero;
+        indexar(((long) seg.numero << 32) | off);
+
+        pendientesSync++;
+        if (politica == PoliticaSync.POR_BLOQUE
+                || (politica == PoliticaSync.AGRUPADO && pendientesSync >= tamanoGrupo)) {
+            sincronizar();
+        }
+    }
+
+    /** Fuerza a disco todo lo escrito desde el último sync. */
+    public synchronized void sincronizar() {
+        if (primerSegmentoSucio < 0 || cerrado) return;
+        for (int s = primerSegmentoSucio; s < segmentos.size(); s++) {
+            segmentos.get(s).mapa.force();
+        }
+        primerSegmentoSucio = -1;
+        pendientesSync = 0;
+    }
+
+    /** Instantánea solo con índice y marca de agua. */
+    public void guardarInstantanea(int alturaVerificada) throws IOException {
+        guardarInstantanea(alturaVerificada, null, null);
+    }
+
+    /**
+     * Escribe instantanea.dat de forma atómica: índice de offsets, marca de agua
+     * y, si se dan, la dificultad de cada altura (una por bloque) y los estados
+     * derivados. Antes fuerza a disco los registros que referencia.
+     */
+    public synchronized void guardarInstantanea(int alturaVerificada, int[] bitsPorAltura, byte[] estados)
+            throws IOException {
+        if (cerrado) throw new IOException("Almacén cerrado");
+        sincronizar();
+        int n = cantidad;
+        long[] pos = posiciones;
+        if (bitsPorAltura != null && bitsPorAltura.length != n) {
+            throw new IllegalArgumentException("Se esperaban " + n + " alturas con dificultad y llegaron " + bitsPorAltura.length);
+        }
+        int nBits = bitsPorAltura != null ? n : 0;
+        int largoEstados = estados != null ? estados.length : 0;
+        ByteBuffer buf = ByteBuffer.allocate(12 + n * 8 + 4 + nBits * 4 + 4 + largoEstados + 4);
+        buf.putInt(MAGICO_INSTANTANEA).putInt(n).putInt(Math.min(alturaVerificada, n - 1));
+        for (int i = 0; i < n; i++) buf.putLong(pos[i]);
+        buf.putInt(nBits);
+        for (int i = 0; i < nBits; i++) buf.putInt(bitsPorAltura[i]);
+        buf.putInt(largoEstados);
+        if (estados != null) buf.put(estados);
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+
+        Path temporal = directorio.resolve(ARCHIVO_INSTANTANEA + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buf.flip();
+            while (buf.hasRemaining()) canal.write(buf);
+            canal.force(true);
+        }
+        Files.move(temporal, directorio.resolve(ARCHIVO_INSTANTANEA),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Descarta los bloques desde "nuevaCantidad" en adelante (p.ej. al reemplazar la cadena). */
+    public synchronized void truncar(int nuevaCantidad) throws IOException {
+        if (nuevaCantidad < 0 || nuevaCantidad > cantidad) {
+            throw new IOException("No se puede truncar a " + nuevaCantidad + " (hay " + cantidad + ")");
+        }
+        if (nuevaCantidad == cantidad) return;
+        // La instantánea podría apuntar a registros que dejan de existir
+        Files.deleteIfExists(directorio.resolve(ARCHIVO_INSTANTANEA));
+        alturaVerificadaInstantanea = 0;
+        bitsInstantanea = null;
+        estadosInstantanea = null;
+
+        int segDestino;
+        int offDestino;
+        if (nuevaCantidad == 0) {
+            segDestino = 0;
+            offDestino = 0;
+        } else {
+            long pos = posiciones[nuevaCantidad];
+            segDestino = (int) (pos >>> 32);
+            offDestino = (int) pos;
+        }
+        // Primero se invalida el registro en disco, luego se sueltan los segmentos sobrantes
+        Segmento destino = segmentos.get(segDestino);
+        destino.mapa.putInt(offDestino, 0);
+        destino.mapa.force();
+        cantidad = nuevaCantidad;
+        while (segmentos.size() - 1 > segDestino) {
+            Segmento sobrante = segmentos.remove(segmentos.size() - 1);
+            sobrante.canal.close();
+            Files.deleteIfExists(sobrante.ruta);
+        }
+        posEscritura = offDestino;
+        if (primerSegmentoSucio > segDestino) primerSegmentoSucio = segDestino;
+    }
+
+    // ----- Lectura -----
+
+    public synchronized int getCantidad() {
+        return cantidad;
+    }
+
+    /** Altura verificada según la instantánea cargada al abrir (0 si no había). */
+    public synchronized int getAlturaVerificadaInstantanea() {
+        return alturaVerificadaInstantanea;
+    }
+
+    /** Dificultad por altura guardada en la instantánea cargada al abrir, o null. */
+    public synchronized int[] getBitsInstantanea() {
+        return bitsInstantanea;
+    }
+
+    /** Estados derivados guardados en la instantánea cargada al abrir, o null. */
+    public synchronized byte[] getEstadosInstantanea() {
+        return estadosInstantanea;
+    }
+
+    /** Registros que vinieron de la instantánea, sin escanear, al abrir. */
+    public synchronized int getCubiertosPorInstantanea() {
+        return cubiertosPorInstantanea;
+    }
+
+    /** Lectura aleatoria por altura, validando el CRC del registro. */
+    public synchronized Bloque leer(int altura) throws IOException {
+        if (cerrado) throw new IOException("Almacén cerrado");
+        int n = cantidad;
+        if (altura < 0 || altura >= n) {
+            throw new IndexOutOfBoundsException("Altura " + altura + " fuera de [0, " + n + ")");
+        }
+        long pos = posiciones[altura];
+        MappedByteBuffer m = segmentos.get((int) (pos >>> 32)).mapa;
+        int off = (int) pos;
+        int largo = m.getInt(off + 4);
+        byte[] carga = new byte[largo];
+        m.get(off + CABECERA, carga);
+        CRC32 crc = new CRC32();
+        crc.update(carga);
+        if ((int) crc.getValue() != m.getInt(off + 8)) {
+            throw new IOException("Registro corrupto en la altura " + altura);
+        }
+        return decodificar(carga);
+    }
+
+    /** Recorrido secuencial desde "desde" hasta el último bloque (bloquea a los escritores mientras dura). */
+    public synchronized void recorrer(int desde, Consumer<Bloque> accion) throws IOException {
+        int n = cantidad;
+        for (int i = Math.max(0, desde); i < n; i++) {
+            accion.accept(leer(i));
+        }
+    }
+
+    /** Todos los bloques, en orden de altura (para reconstruir la Blockchain al iniciar). */
+    public synchronized List<Bloque> cargarTodos() throws IOException {
+        List<Bloque> bloques = new ArrayList<>(cantidad);
+        recorrer(0, bloques::add);
+        return bloques;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (cerrado) return;
+        if (sincronizador != null) sincronizador.shutdownNow();
+        sincronizar();
+        cerrado = true;
+        for (Segmento s : segmentos) {
+            try {
+                s.canal.close();
+            } catch (IOException e) {
+                System.err.println("⚠️ Error cerrando " + s.ruta.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public Path getDirectorio() { return directorio; }
+    public PoliticaSync getPolitica() { return politica; }
+
+    // ----- Formato binario de la carga -----
+
+    /**
+     * byte formato | int version | int index | long tiempo | int nonce |
+     * str hash | str hashAnterior | str llaveAes | int n | n x str datosEncriptados |
+     * int m | m x str hashesTransacciones   (str = int largo + UTF-8)
+     */
+    static byte[] codificar(Bloque b) {
+        byte[] hash = utf8(b.getHash());
+        byte[] anterior = utf8(b.getHashAnterior());
+        byte[] llave = utf8(b.getLlaveAesEncriptada());
+        List<String> datos = b.getDatosEncriptados();
+        byte[][] datosBytes = new byte[datos.size()][];
+        int total = 1 + 4 + 4 + 8 + 4 + 12 + hash.length + anterior.length + llave.length + 4;
+        for (int i = 0; i < datosBytes.length; i++) {
+            datosBytes[i] = utf8(datos.get(i));
+            total += 4 + datosBytes[i].length;
+        }
+        List<String> hashesTx = b.getHashesTransacciones();
+        byte[][] hashesBytes = new byte[hashesTx.size()][];
+        total += 4;
+        for (int i = 0; i < hashesBytes.length; i++) {
+            hashesBytes[i] = utf8(hashesTx.get(i));
+            total += 4 + hashesBytes[i].length;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(total);
+        buf.put(FORMATO_CARGA)
+           .putInt(b.getVersion())
+           .putInt(b.getIndex())
+           .putLong(b.getTimestamp())
+           .putInt(b.getNonce());
+        poner(buf, hash);
+        poner(buf, anterior);
+        poner(buf, llave);
+        buf.putInt(datosBytes.length);
+        for (byte[] d : datosBytes) poner(buf, d);
+        buf.putInt(hashesBytes.length);
+        for (byte[] h : hashesBytes) poner(buf, h);
+        return buf.array();
+    }
+
+    static Bloque decodificar(byte[] carga) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(carga);
+        byte formato = buf.get();
+        if (formato != FORMATO_CARGA) {
+            throw new IOException("Formato de registro desconocido: " + formato);
+        }
+        int version = buf.getInt();
+        int index = buf.getInt();
+        long tiempo = buf.getLong();
+        int nonce = buf.getInt();
+        String hash = tomar(buf);
+        String anterior = tomar(buf);
+        String llave = tomar(buf);
+        int n = buf.getInt();
+        ArrayList<String> datos = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) datos.add(tomar(buf));
+        int m = buf.getInt();
+        ArrayList<String> hashesTx = new ArrayList<>(m);
+        for (int i = 0; i < m; i++) hashesTx.add(tomar(buf));
+        return new Bloque(index, tiempo, nonce, hash, anterior, datos, llave, version, hashesTx);
+    }
+
+    private static byte[] utf8(String s) {
+        return (s != null ? s : "").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void poner(ByteBuffer buf, byte[] b) {
+        buf.putInt(b.length).put(b);
+    }
+
+    private static String tomar(ByteBuffer buf) {
+        byte[] b = new byte[buf.getInt()];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
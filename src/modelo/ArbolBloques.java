@@ -0,0 +1,151 @@
+package modelo;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Árbol de todos los bloques conocidos: la cadena principal y las ramas que
+ * compiten con ella. Cada nodo guarda su altura, la dificultad que le exigía
+ * su rama y el trabajo acumulado (suma de 2^bits desde el génesis), que es lo
+ * que usa Blockchain para elegir la punta.
+ *
+ * Los bloques cuyo padre aún no se conoce quedan como huérfanos hasta que
+ * llega el padre. Solo lo usa el escritor de Blockchain (bajo su lock).
+ */
+final class ArbolBloques {
+
+    private static final int MAX_HUERFANOS = 256;
+
+    static final class Nodo {
+        final Bloque bloque;
+        final Nodo padre;
+        final int altura;
+        final int bits;
+        final BigInteger trabajo; // acumulado hasta este bloque, inclusive
+
+        Nodo(Bloque bloque, Nodo padre, int bits) {
+            this.bloque = bloque;
+            this.padre = padre;
+            this.altura = padre == null ? 0 : padre.altura + 1;
+            this.bits = bits;
+            BigInteger propio = BigInteger.ONE.shiftLeft(bits);
+            this.trabajo = padre == null ? propio : padre.trabajo.add(propio);
+        }
+    }
+
+    private final AjusteDificultad ajuste;
+    private final HashMap<String, Nodo> porHash = new HashMap<>();
+    private final HashMap<String, List<Bloque>> huerfanosPorPadre = new HashMap<>();
+    private int totalHuerfanos;
+
+    ArbolBloques(AjusteDificultad ajuste) {
+        this.ajuste = ajuste;
+    }
+
+    /** Descarta todo y deja solo la cadena dada (con sus bits por altura) como rama principal. */
+    Nodo reiniciar(List<Bloque> cadena, List<Integer> bitsPorAltura) {
+        porHash.clear();
+        huerfanosPorPadre.clear();
+        totalHuerfanos = 0;
+        Nodo nodo = null;
+        for (int i = 0; i < cadena.size(); i++) {
+            nodo = new Nodo(cadena.get(i), nodo, bitsPorAltura.get(i));
+            porHash.put(nodo.bloque.getHash(), nodo);
+        }
+        return nodo;
+    }
+
+    Nodo obtener(String hash) {
+        return porHash.get(hash);
+    }
+
+    boolean contiene(String hash) {
+        return porHash.containsKey(hash);
+    }
+
+    /** Dificultad que exige la rama de "padre" al bloque siguiente. */
+    int bitsHijo(Nodo padre) {
+        return ajuste.bitsPara(padre.altura + 1, padre.bits, h -> ancestroEnAltura(padre, h).bloque.getTimestamp());
+    }
+
+    /**
+     * Cuelga el bloque de su padre tras verificar altura, versión, timestamp, hash y prueba de trabajo.
+     * @throws IllegalArgumentException si el bloque no es válido sobre ese padre
+     */
+    Nodo conectar(Nodo padre, Bloque bloque) {
+        if (bloque.getIndex() != padre.altura + 1) {
+            throw new IllegalArgumentException("Índice " + bloque.getIndex() + " sobre un padre de altura " + padre.altura);
+        }
+        // Sin esto un bloque legado sumaría 2^bits de trabajo sin haber verificado su PoW
+        if (!FormatoCabecera.esVersionValidaSobre(bloque.getVersion(), padre.bloque.getVersion())) {
+            throw new IllegalArgumentException("Versión " + bloque.getVersion() + " no admitida sobre un padre v"
+                    + padre.bloque.getVersion());
+        }
+        ajuste.verificarTimestamp(padre.altura + 1, bloque.getTimestamp(),
+                h -> ancestroEnAltura(padre, h).bloque.getTimestamp(), System.currentTimeMillis());
+        if (!bloque.getHash().equals(bloque.calcularHash())) {
+            throw new IllegalArgumentException("Hash inválido");
+        }
+        int bits = bitsHijo(padre);
+        if (!bloque.cumpleDificultadBits(bits)) {
+            throw new IllegalArgumentException("Dificultad insuficiente (se exigen " + bits + " bits)");
+        }
+        Nodo nodo = new Nodo(bloque, padre, bits);
+        porHash.put(bloque.getHash(), nodo);
+        return nodo;
+    }
+
+    /** Guarda un bloque cuyo padre no se conoce; devuelve false si el depósito está lleno. */
+    boolean guardarHuerfano(Bloque bloque) {
+        if (totalHuerfanos >= MAX_HUERFANOS) return false;
+        List<Bloque> hermanos = huerfanosPorPadre.computeIfAbsent(bloque.getHashAnterior(), k -> new ArrayList<>());
+        for (Bloque b : hermanos) {
+            if (b.getHash().equals(bloque.getHash())) return true;
+        }
+        hermanos.add(bloque);
+        totalHuerfanos++;
+        return true;
+    }
+
+    /** Retira los huérfanos que esperaban a este padre. */
+    List<Bloque> tomarHuerfanos(String hashPadre) {
+        List<Bloque> hijos = huerfanosPorPadre.remove(hashPadre);
+        if (hijos == null) return List.of();
+        totalHuerfanos -= hijos.size();
+        return hijos;
+    }
+
+    int getTotalHuerfanos() {
+        return totalHuerfanos;
+    }
+
+    static Nodo ancestroEnAltura(Nodo nodo, int altura) {
+        Nodo n = nodo;
+        while (n != null && n.altura > altura) n = n.padre;
+        if (n == null || n.altura != altura) {
+            throw new IllegalArgumentException("Sin ancestro en la altura " + altura);
+        }
+        return n;
+    }
+
+    static Nodo ancestroComun(Nodo a, Nodo b) {
+        while (a.altura > b.altura) a = a.padre;
+        while (b.altura > a.altura) b = b.padre;
+        while (a != b) {
+            a = a.padre;
+            b = b.padre;
+        }
+        return a;
+    }
+
+    /** Nodos de (desde, hasta], en orden de altura creciente. */
+    static List<Nodo> camino(Nodo desde, Nodo hasta) {
+        ArrayList<Nodo> nodos = new ArrayList<>(hasta.altura - desde.altura);
+        for (Nodo n = hasta; n != desde; n = n.padre) nodos.add(n);
+        Collections.reverse(nodos);
+        return nodos;
+    }
+}
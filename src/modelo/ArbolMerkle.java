@@ -0,0 +1,101 @@
+package modelo;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Árbol de Merkle sobre el contenido de un bloque.
+ *
+ *   hoja = SHA-256(0x00 || datos)      nodo = SHA-256(0x01 || izquierdo || derecho)
+ *
+ * Los prefijos distintos impiden hacer pasar un nodo interno por una hoja. Si
+ * un nivel tiene un número impar de nodos, el último sube tal cual (no se
+ * duplica), así dos listas de hojas distintas nunca dan la misma raíz.
+ *
+ * La raíz va en la cabecera (FormatoCabecera.VERSION_MERKLE); generarPrueba
+ * da los O(log n) hermanos necesarios para demostrar que una hoja está en el
+ * bloque sin transferir ni descifrar el resto.
+ */
+public final class ArbolMerkle {
+
+    private static final byte PREFIJO_HOJA = 0x00;
+    private static final byte PREFIJO_NODO = 0x01;
+
+    /** Raíz de un árbol sin hojas. */
+    public static final byte[] RAIZ_VACIA = CriptoUtil.sha256(new byte[0]);
+
+    // niveles.get(0) = hashes de hoja, el último nivel tiene solo la raíz
+    private final List<byte[][]> niveles;
+
+    private ArbolMerkle(List<byte[][]> niveles) {
+        this.niveles = niveles;
+    }
+
+    /** Construye el árbol a partir de los datos crudos de cada hoja. */
+    public static ArbolMerkle construir(List<byte[]> hojas) {
+        List<byte[][]> niveles = new ArrayList<>();
+        byte[][] nivel = new byte[hojas.size()][];
+        for (int i = 0; i < nivel.length; i++) {
+            nivel[i] = hashHoja(hojas.get(i));
+        }
+        niveles.add(nivel);
+        while (nivel.length > 1) {
+            byte[][] superior = new byte[(nivel.length + 1) / 2][];
+            for (int i = 0; i < superior.length; i++) {
+                int izq = 2 * i;
+                superior[i] = izq + 1 < nivel.length ? hashNodo(nivel[izq], nivel[izq + 1]) : nivel[izq];
+            }
+            niveles.add(superior);
+            nivel = superior;
+        }
+        return new ArbolMerkle(niveles);
+    }
+
+    public int getNumeroHojas() {
+        return niveles.get(0).length;
+    }
+
+    public byte[] getRaiz() {
+        byte[][] cima = niveles.get(niveles.size() - 1);
+        return cima.length == 0 ? RAIZ_VACIA.clone() : cima[0].clone();
+    }
+
+    public String getRaizHex() {
+        return CriptoUtil.aHex(getRaiz());
+    }
+
+    /** Prueba de inclusión de la hoja "indice": los hermanos desde la hoja hasta la raíz. */
+    public PruebaMerkle generarPrueba(int indice) {
+        int total = getNumeroHojas();
+        if (indice < 0 || indice >= total) {
+            throw new IndexOutOfBoundsException("Hoja " + indice + " fuera de [0, " + total + ")");
+        }
+        List<byte[]> hermanos = new ArrayList<>();
+        int i = indice;
+        for (int n = 0; n < niveles.size() - 1; n++) {
+            byte[][] nivel = niveles.get(n);
+            int hermano = (i & 1) == 0 ? i + 1 : i - 1;
+            if (hermano < nivel.length) {
+                hermanos.add(nivel[hermano]);
+            }
+            i >>>= 1;
+        }
+        return new PruebaMerkle(indice, total, hermanos);
+    }
+
+    static byte[] hashHoja(byte[] datos) {
+        MessageDigest sha = CriptoUtil.sha256();
+        sha.update(PREFIJO_HOJA);
+        sha.update(datos);
+        return sha.digest();
+    }
+
+    static byte[] hashNodo(byte[] izquierdo, byte[] derecho) {
+        MessageDigest sha = CriptoUtil.sha256();
+        sha.update(PREFIJO_NODO);
+        sha.update(izquierdo);
+        sha.update(derecho);
+        return sha.digest();
+    }
+}
@@ -1,81 +1,787 @@
 package modelo;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Cadena de bloques con un único escritor y lectores sin bloqueo.
+ *
+ * Las escrituras (agregarBloque, setCadena) se serializan con synchronized y
+ * publican un Estado inmutable nuevo en un campo volatile. Los lectores
+ * (monitor web, GET_CHAIN, validación, UI) toman el Estado vigente y trabajan
+ * sobre esa instantánea: nunca ven una cadena a medio modificar ni bloquean
+ * al escritor. getCadena() devuelve esa instantánea (lista inmutable).
+ *
+ * Con un AlmacenBloques, cada bloque se escribe en disco antes de publicarse y
+ * al iniciar la cadena se reconstruye desde el registro. La última instantánea
+ * trae la marca de agua de verificación, la dificultad de cada altura y los
+ * EstadoDerivado que se saben exportar: solo se valida la cola posterior y,
+ * al registrar cada estado, solo se le aplica esa cola. Si la cola no es
+ * válida la cadena no se abre.
+ *
+ * El génesis es fijo (timestamp y nonce precalculados): todos los nodos
+ * comparten el mismo y arrancar no requiere minar.
+ *
+ * Los bloques entran por recibirBloque: se cuelgan de su padre en un
+ * ArbolBloques (ramas en competencia incluidas) y la cadena principal es la de
+ * mayor trabajo acumulado. Si una rama lateral la supera se reorganiza
+ * revirtiendo y re-aplicando solo el sufijo divergente, tanto en disco como en
+ * los EstadoDerivado registrados (con sus registros de deshacer).
+ */
 public class Blockchain {
-    private ArrayList<Bloque> cadena;
+    private volatile Estado estado;
     private int dificultad;
-    private Bloque bloquePendiente; 
+    // Transacciones que esperan bloque (antes un "bloque pendiente" sin sincronizar)
+    private final Mempool mempool = new Mempool();
+    private final AjusteDificultad ajuste;
+    private final AlmacenBloques almacen; // null = solo en memoria
 
+    // Génesis fijo, minado una vez con 16 bits sobre la cabecera binaria v1
+    public static final long TIMESTAMP_GENESIS = 1735689600000L; // 2025-01-01T00:00:00Z
+    public static final int NONCE_GENESIS = 75296;
+    public static final String HASH_GENESIS = "0000dc65b9a544909d9208e0699b18e38ed34b10ca4036924d0b0492c81c442a";
+
+    // Cada cuántos bloques se reescribe la instantánea del almacén
+    private static final int INSTANTANEA_CADA = Integer.getInteger("almacen.instantaneaCada", 64);
+    // Bloques de la punta con registro de deshacer; una reorganización más profunda reconstruye
+    private static final int PROFUNDIDAD_DESHACER = Integer.getInteger("cadena.profundidadDeshacer", 1000);
+
+    /** Qué pasó con un bloque entregado a recibirBloque. */
+    public enum ResultadoRecepcion {
+        /** Extiende la punta de la cadena principal. */
+        AGREGADO,
+        /** Válido, pero su rama tiene menos trabajo que la principal. */
+        RAMA_LATERAL,
+        /** Su rama superó a la principal: se reorganizó la cadena. */
+        REORGANIZADO,
+        /** Aún no se conoce su padre; se conecta cuando llegue. */
+        HUERFANO,
+        /** Ya se conocía. */
+        DUPLICADO,
+        /** Hash, índice o dificultad incorrectos (o depósito de huérfanos lleno). */
+        RECHAZADO
+    }
+
+    // Árbol de bloques, punta y estados derivados: solo el escritor (synchronized) los toca
+    private final ArbolBloques arbol;
+    private ArbolBloques.Nodo punta;
+    private final ArrayList<Derivado<?>> derivados = new ArrayList<>();
+
+    // Estados derivados de la instantánea, por clase; cada uno se usa (y se quita) al registrarse
+    private final HashMap<String, EstadoGuardado> estadosGuardados = new HashMap<>();
+    private int alturaEstadosGuardados = -1;
+    private String hashEstadosGuardados;
+
+    /** Versión publicada de la cadena. Cada escritura publica una nueva. */
+    private static final class Estado {
+        final VectorPersistente<Bloque> bloques;
+        final VectorPersistente<Integer> bitsPorAltura; // dificultad (bits) que aplica a cada altura
+        // Compartidos por las versiones que extienden la misma cadena; setCadena crea otros
+        final ConcurrentHashMap<String, Integer> alturaPorHash; // hash -> altura en la cadena
+        final AtomicInteger alturaVerificada; // bloques [0..alturaVerificada] ya validados
+
+        Estado(VectorPersistente<Bloque> bloques, VectorPersistente<Integer> bitsPorAltura,
+               ConcurrentHashMap<String, Integer> alturaPorHash, AtomicInteger alturaVerificada) {
+            this.bloques = bloques;
+            this.bitsPorAltura = bitsPorAltura;
+            this.alturaPorHash = alturaPorHash;
+            this.alturaVerificada = alturaVerificada;
+        }
+    }
+
+    /** "dificultad" son los ceros hex iniciales; se reajusta con AjusteDificultad.porDefecto. */
     public Blockchain(int dificultad) {
-        this.dificultad = dificultad;
-        this.cadena = new ArrayList<>();
+        this(AjusteDificultad.porDefecto(dificultad));
+    }
+
+    public Blockchain(AjusteDificultad ajuste) {
+        this.ajuste = ajuste;
+        this.almacen = null;
+        this.arbol = new ArbolBloques(ajuste);
+        this.dificultad = (ajuste.getBitsIniciales() + 3) / 4;
         crearBloqueGenesis();
-        // ⭐ Inicializar bloque pendiente
-        this.bloquePendiente = new Bloque(obtenerUltimoBloque().getHash());
+        this.punta = arbol.reiniciar(estado.bloques, estado.bitsPorAltura);
+    }
+
+    /**
+     * Cadena respaldada en disco: si el almacén tiene bloques se reconstruye a
+     * partir de ellos, si no se crea el génesis.
+     * @throws IOException si no se puede leer o si la cola posterior a la marca
+     *         de agua de la instantánea no es válida (el almacén queda cerrado)
+     */
+    public Blockchain(AjusteDificultad ajuste, AlmacenBloques almacen) throws IOException {
+        this.ajuste = ajuste;
+        this.almacen = almacen;
+        this.arbol = new ArbolBloques(ajuste);
+        this.dificultad = (ajuste.getBitsIniciales() + 3) / 4;
+        if (almacen.getCantidad() == 0) {
+            crearBloqueGenesis();
+            almacen.agregar(obtenerUltimoBloque());
+        } else {
+            long inicio = System.nanoTime();
+            List<Bloque> bloques = almacen.cargarTodos();
+            if (!HASH_GENESIS.equals(bloques.get(0).getHash())) {
+                System.err.println("⚠️ El génesis en disco no es el génesis fijo: este nodo no podrá replicar con los demás");
+            }
+            // Lo ya verificado según la instantánea no se vuelve a validar ni a calcular; solo la cola
+            int verificada = Math.min(almacen.getAlturaVerificadaInstantanea(), bloques.size() - 1);
+            int[] bits = almacen.getBitsInstantanea();
+            if (bits != null && bits[0] != ajuste.getBitsIniciales()) bits = null; // otros parámetros de cadena
+            estado = nuevoEstado(bloques, bits, bits != null ? Math.min(bits.length, verificada + 1) : 0);
+            estado.alturaVerificada.set(verificada);
+            if (!esCadenaValida()) {
+                almacen.close();
+                throw new IOException("La cadena en disco no es válida a partir del bloque #"
+                        + (estado.alturaVerificada.get() + 1) + " (ver " + almacen.getDirectorio() + ")");
+            }
+            leerEstadosGuardados(almacen.getEstadosInstantanea());
+            System.out.printf("📂 Cadena reconstruida desde disco: %d bloques (cola validada desde #%d: OK) en %.1f ms%n",
+                    bloques.size(), verificada + 1, (System.nanoTime() - inicio) / 1_000_000.0);
+        }
+        this.punta = arbol.reiniciar(estado.bloques, estado.bitsPorAltura);
+    }
+
+    /** El génesis fijo; se comprueba que su hash siga coincidiendo con la cabecera. */
+    public static Bloque crearGenesis() {
+        Bloque genesis = new Bloque(0, TIMESTAMP_GENESIS, NONCE_GENESIS, HASH_GENESIS, "0",
+                new ArrayList<>(), "", FormatoCabecera.VERSION_BINARIA);
+        if (!HASH_GENESIS.equals(genesis.calcularHash())) {
+            throw new IllegalStateException("El hash del génesis fijo no coincide: ¿cambió el formato de cabecera?");
+        }
+        return genesis;
     }
 
     private void crearBloqueGenesis() {
-        Bloque bloqueGenesis = new Bloque("0");
-        bloqueGenesis.setIndex(0); 
-        bloqueGenesis.minarBloque(dificultad);
-        cadena.add(bloqueGenesis);
+        Bloque bloqueGenesis = crearGenesis();
+        ConcurrentHashMap<String, Integer> indice = new ConcurrentHashMap<>();
+        indice.put(bloqueGenesis.getHash(), 0);
+        estado = new Estado(VectorPersistente.<Bloque>vacio().agregar(bloqueGenesis),
+                VectorPersistente.<Integer>vacio().agregar(ajuste.getBitsIniciales()),
+                indice, new AtomicInteger(0));
         System.out.println("✅ Bloque Génesis creado: " + bloqueGenesis.getHash());
     }
     
     public Bloque obtenerUltimoBloque() {
-        return cadena.get(cadena.size() - 1);
+        VectorPersistente<Bloque> bloques = estado.bloques;
+        return bloques.get(bloques.size() - 1);
     }
 
-    public void agregarBloque(Bloque nuevoBloque) {
-        // No minar dos veces
-        nuevoBloque.setIndex(cadena.size());
-        nuevoBloque.setHashAnterior(obtenerUltimoBloque().getHash());
-        cadena.add(nuevoBloque);
+    /**
+     * Agrega un bloque minado sobre la punta actual.
+     * @throws IllegalArgumentException si no extiende la punta (p.ej. la punta
+     *         cambió mientras se minaba) o no es válido; ver recibirBloque
+     */
+    public synchronized void agregarBloque(Bloque nuevoBloque) {
+        ResultadoRecepcion r = recibirBloque(nuevoBloque);
+        if (r != ResultadoRecepcion.AGREGADO && r != ResultadoRecepcion.REORGANIZADO) {
+            throw new IllegalArgumentException("El bloque #" + nuevoBloque.getIndex() + " no extiende la punta: " + r);
+        }
+    }
+
+    /**
+     * Entrada de bloques propios y replicados. No modifica index ni hashAnterior:
+     * el bloque se cuelga del padre que declara y la regla de mayor trabajo
+     * acumulado decide si pasa a la cadena principal.
+     */
+    public synchronized ResultadoRecepcion recibirBloque(Bloque bloque) {
+        ResultadoRecepcion resultado = conectarBloque(bloque);
+        if (resultado == ResultadoRecepcion.RECHAZADO || resultado == ResultadoRecepcion.HUERFANO) {
+            return resultado;
+        }
+        // Los huérfanos que esperaban a este bloque (y a sus hijos) ya se pueden conectar
+        ArrayDeque<String> pendientes = new ArrayDeque<>();
+        pendientes.add(bloque.getHash());
+        while (!pendientes.isEmpty()) {
+            for (Bloque hijo : arbol.tomarHuerfanos(pendientes.poll())) {
+                ResultadoRecepcion r = conectarBloque(hijo);
+                if (r != ResultadoRecepcion.RECHAZADO) pendientes.add(hijo.getHash());
+            }
+        }
+        return resultado;
+    }
+
+    private ResultadoRecepcion conectarBloque(Bloque bloque) {
+        if (arbol.contiene(bloque.getHash())) {
+            return ResultadoRecepcion.DUPLICADO;
+        }
+        ArbolBloques.Nodo padre = arbol.obtener(bloque.getHashAnterior());
+        if (padre == null) {
+            if (!arbol.guardarHuerfano(bloque)) return ResultadoRecepcion.RECHAZADO;
+            System.out.println("🧩 Bloque #" + bloque.getIndex() + " huérfano (padre desconocido)");
+            return ResultadoRecepcion.HUERFANO;
+        }
+        ArbolBloques.Nodo nodo;
+        try {
+            nodo = arbol.conectar(padre, bloque);
+        } catch (IllegalArgumentException e) {
+            System.out.println("❌ Bloque #" + bloque.getIndex() + " rechazado: " + e.getMessage());
+            return ResultadoRecepcion.RECHAZADO;
+        }
+
+        if (padre == punta) {
+            extenderPunta(nodo);
+            return ResultadoRecepcion.AGREGADO;
+        }
+        // Regla de elección: gana la rama con más trabajo; a igual trabajo se queda la actual
+        if (nodo.trabajo.compareTo(punta.trabajo) > 0) {
+            reorganizar(nodo);
+            return ResultadoRecepcion.REORGANIZADO;
+        }
+        System.out.println("🌿 Bloque #" + bloque.getIndex() + " en rama lateral");
+        return ResultadoRecepcion.RAMA_LATERAL;
+    }
+
+    private void extenderPunta(ArbolBloques.Nodo nodo) {
+        Estado actual = estado;
+        Bloque nuevoBloque = nodo.bloque;
+        int altura = nodo.altura;
+        if (almacen != null) {
+            // Primero a disco: si falla, la cadena en memoria no cambia
+            try {
+                almacen.agregar(nuevoBloque);
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo guardar el bloque #" + altura, e);
+            }
+        }
+        VectorPersistente<Bloque> bloques = actual.bloques.agregar(nuevoBloque);
+        VectorPersistente<Integer> bits = actual.bitsPorAltura.agregar(nodo.bits);
+        // El índice se llena antes de publicar: quien vea la nueva versión encuentra el hash
+        actual.alturaPorHash.put(nuevoBloque.getHash(), altura);
+        // ArbolBloques.conectar ya lo validó: si lo anterior estaba verificado, esto también
+        actual.alturaVerificada.compareAndSet(altura - 1, altura);
+        estado = new Estado(bloques, bits, actual.alturaPorHash, actual.alturaVerificada);
+        punta = nodo;
+        for (Derivado<?> d : derivados) d.aplicar(nuevoBloque, altura);
+        mempool.quitarConfirmadas(nuevoBloque.getHashesTransacciones());
+        if (almacen != null && altura % INSTANTANEA_CADA == 0) {
+            guardarInstantanea();
+        }
         System.out.println("✅ Bloque #" + nuevoBloque.getIndex() + " agregado");
-        System.out.println("📊 Total bloques: " + cadena.size());
+        System.out.println("📊 Total bloques: " + bloques.size());
+    }
+
+    /** Cambia la cadena principal a la rama de "nuevaPunta" tocando solo el sufijo divergente. */
+    private void reorganizar(ArbolBloques.Nodo nuevaPunta) {
+        Estado actual = estado;
+        ArbolBloques.Nodo ancestro = ArbolBloques.ancestroComun(punta, nuevaPunta);
+        List<ArbolBloques.Nodo> entrantes = ArbolBloques.camino(ancestro, nuevaPunta);
+        int base = ancestro.altura + 1;
+        int salientes = punta.altura - ancestro.altura;
+
+        if (almacen != null) {
+            try {
+                almacen.truncar(base);
+                for (ArbolBloques.Nodo n : entrantes) almacen.agregar(n.bloque);
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo reorganizar el almacén desde #" + base, e);
+            }
+        }
+
+        // Estados derivados: deshacer los bloques que salen (de la punta hacia atrás)
+        for (Derivado<?> d : derivados) {
+            if (!d.revertirHasta(actual.bloques, base)) d.reconstruir(actual.bloques.truncar(base));
+        }
+
+        VectorPersistente<Bloque> bloques = actual.bloques.truncar(base);
+        VectorPersistente<Integer> bits = actual.bitsPorAltura.truncar(base);
+        // Índice y marca de agua nuevos: lectores con la instantánea anterior no ven alturas ajenas
+        ConcurrentHashMap<String, Integer> indice = new ConcurrentHashMap<>(actual.alturaPorHash);
+        for (int h = base; h < actual.bloques.size(); h++) {
+            indice.remove(actual.bloques.get(h).getHash());
+        }
+        for (ArbolBloques.Nodo n : entrantes) {
+            bloques = bloques.agregar(n.bloque);
+            bits = bits.agregar(n.bits);
+            indice.put(n.bloque.getHash(), n.altura);
+        }
+        // La rama entrante pasó por ArbolBloques.conectar: verificada si lo estaba hasta el ancestro
+        int verificada = actual.alturaVerificada.get() >= ancestro.altura
+                ? nuevaPunta.altura : actual.alturaVerificada.get();
+        estado = new Estado(bloques, bits, indice, new AtomicInteger(verificada));
+        punta = nuevaPunta;
+
+        for (Derivado<?> d : derivados) {
+            for (ArbolBloques.Nodo n : entrantes) d.aplicar(n.bloque, n.altura);
+        }
+
+        // Mempool: salen las confirmadas por la nueva rama y vuelven las de la rama abandonada
+        HashSet<String> confirmadas = new HashSet<>();
+        for (ArbolBloques.Nodo n : entrantes) confirmadas.addAll(n.bloque.getHashesTransacciones());
+        mempool.quitarConfirmadas(confirmadas);
+        for (int h = base; h < actual.bloques.size(); h++) {
+            for (TransaccionInventario t : actual.bloques.get(h).getTransacciones()) {
+                if (!confirmadas.contains(t.getHashTransaccion())) mempool.agregar(t);
+            }
+        }
+        System.out.println("🔀 Reorganización desde #" + base + ": salen " + salientes + " bloques, entran "
+                + entrantes.size() + ". Nueva punta #" + nuevaPunta.altura);
+    }
+
+    // ----- Estados derivados -----
+
+    /**
+     * Registra un estado derivado y le aplica la cadena actual. Si la
+     * instantánea del almacén traía uno de su clase sobre un bloque que sigue
+     * en la cadena, se importa y solo se aplican los bloques posteriores.
+     */
+    public synchronized <D> void registrarEstadoDerivado(EstadoDerivado<D> estadoDerivado) {
+        Derivado<D> d = new Derivado<>(estadoDerivado);
+        if (!importarGuardado(d)) d.reconstruir(estado.bloques);
+        derivados.add(d);
+    }
+
+    /**
+     * Menor altura que algún estado derivado aplicó sin transacciones porque el
+     * bloque seguía cifrado (ver PipelineDescifrado.necesitaDescifrado), o -1.
+     * Descifrar desde ahí y llamar a reaplicarEstadosDerivados los completa.
+     */
+    public synchronized int getAlturaMinimaIncompleta() {
+        int minima = -1;
+        for (Derivado<?> d : derivados) {
+            if (!d.incompletos.isEmpty() && (minima < 0 || d.incompletos.first() < minima)) {
+                minima = d.incompletos.first();
+            }
+        }
+        return minima;
+    }
+
+    /**
+     * Vuelve a aplicar la cadena en todos los estados derivados, p.ej. después
+     * de que PipelineDescifrado repuso las transacciones de bloques que ya se
+     * habían aplicado vacíos. Toma el lock de la instancia, igual que los demás
+     * escritores.
+     */
+    public synchronized void reconstruirEstadosDerivados() {
+        for (Derivado<?> d : derivados) d.reconstruir(estado.bloques);
+        System.out.println("🔄 Estados derivados reconstruidos (" + derivados.size() + ") sobre " + estado.bloques.size() + " bloques");
+    }
+
+    /**
+     * Como reconstruirEstadosDerivados, pero solo desde "altura": revierte hasta
+     * ahí con los registros de deshacer y vuelve a aplicar hasta la punta. Sin
+     * registros suficientes se reconstruye desde el génesis.
+     */
+    public synchronized void reaplicarEstadosDerivados(int altura) {
+        VectorPersistente<Bloque> cadena = estado.bloques;
+        if (altura >= cadena.size()) return; // una reorganización ya los sacó de la cadena
+        for (Derivado<?> d : derivados) {
+            if (d.revertirHasta(cadena, altura)) {
+                for (int h = altura; h < cadena.size(); h++) d.aplicar(cadena.get(h), h);
+            } else {
+                d.reconstruir(cadena);
+            }
+        }
+    }
+
+    // Estado derivado + registros de deshacer de los últimos bloques de la cadena principal
+    private static final class Derivado<D> {
+        final EstadoDerivado<D> estado;
+        final ArrayList<D> deshacer = new ArrayList<>();
+        int primeraAltura; // altura del bloque de deshacer.get(0)
+        final TreeSet<Integer> incompletos = new TreeSet<>(); // alturas aplicadas aún cifradas
+
+        Derivado(EstadoDerivado<D> estado) {
+            this.estado = estado;
+        }
+
+        void aplicar(Bloque bloque, int altura) {
+            if (deshacer.isEmpty()) primeraAltura = altura;
+            deshacer.add(estado.aplicar(bloque));
+            if (PipelineDescifrado.necesitaDescifrado(bloque)) incompletos.add(altura); else incompletos.remove(altura);
+            if (deshacer.size() > 2 * PROFUNDIDAD_DESHACER) {
+                deshacer.subList(0, PROFUNDIDAD_DESHACER).clear();
+                primeraAltura += PROFUNDIDAD_DESHACER;
+            }
+        }
+
+        /** Revierte de la punta hasta "base" (exclusive hacia abajo); false si no hay registros suficientes. */
+        boolean revertirHasta(List<Bloque> cadena, int base) {
+            if (base < primeraAltura) return false;
+            for (int h = cadena.size() - 1; h >= base; h--) {
+                estado.revertir(cadena.get(h), deshacer.remove(deshacer.size() - 1));
+            }
+            incompletos.tailSet(base).clear();
+            return true;
+        }
+
+        void reconstruir(List<Bloque> cadena) {
+            estado.reiniciar();
+            deshacer.clear();
+            incompletos.clear();
+            for (int h = 0; h < cadena.size(); h++) aplicar(cadena.get(h), h);
+        }
+
+        /** Tras importar el estado de la altura desde - 1: sin deshacer por debajo, aplica el resto. */
+        void continuarDesde(List<Bloque> cadena, int desde, List<Integer> incompletosImportados) {
+            deshacer.clear();
+            incompletos.clear();
+            incompletos.addAll(incompletosImportados);
+            primeraAltura = desde;
+            for (int h = desde; h < cadena.size(); h++) aplicar(cadena.get(h), h);
+        }
+    }
+
+    /** Estado exportado en la instantánea, con las alturas que había aplicado cifradas. */
+    private static final class EstadoGuardado {
+        final List<Integer> incompletos;
+        final byte[] datos;
+
+        EstadoGuardado(List<Integer> incompletos, byte[] datos) {
+            this.incompletos = incompletos;
+            this.datos = datos;
+        }
+    }
+
+    private boolean importarGuardado(Derivado<?> d) {
+        String clase = d.estado.getClass().getName();
+        EstadoGuardado g = estadosGuardados.remove(clase);
+        List<Bloque> cadena = estado.bloques;
+        int altura = alturaEstadosGuardados;
+        // Una reorganización o setCadena posteriores pueden haber sacado ese bloque
+        if (g == null || altura >= cadena.size() || !cadena.get(altura).getHash().equals(hashEstadosGuardados)) {
+            return false;
+        }
+        try {
+            d.estado.reiniciar();
+            if (!d.estado.importar(g.datos)) return false;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ Estado " + d.estado.getClass().getSimpleName()
+                    + " de la instantánea ilegible, se reconstruye: " + e.getMessage());
+            return false;
+        }
+        d.continuarDesde(cadena, altura + 1, g.incompletos);
+        System.out.println("📥 " + d.estado.getClass().getSimpleName() + " importado en #" + altura
+                + "; aplicados " + (cadena.size() - altura - 1) + " bloques posteriores");
+        return true;
+    }
+
+    /*
+     * Estados derivados de la instantánea (opacos para AlmacenBloques):
+     *   altura | hash | n { clase | nIncompletos { altura } | largo | datos }
+     */
+    private byte[] exportarEstados() {
+        List<Bloque> cadena = estado.bloques;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(cadena.size() - 1);
+            out.writeUTF(cadena.get(cadena.size() - 1).getHash());
+            ArrayList<Derivado<?>> exportables = new ArrayList<>();
+            ArrayList<byte[]> datos = new ArrayList<>();
+            for (Derivado<?> d : derivados) {
+                byte[] b = d.estado.exportar();
+                if (b == null) continue;
+                exportables.add(d);
+                datos.add(b);
+            }
+            if (exportables.isEmpty()) return null;
+            out.writeInt(exportables.size());
+            for (int i = 0; i < exportables.size(); i++) {
+                Derivado<?> d = exportables.get(i);
+                out.writeUTF(d.estado.getClass().getName());
+                out.writeInt(d.incompletos.size());
+                for (int h : d.incompletos) out.writeInt(h);
+                out.writeInt(datos.get(i).length);
+                out.write(datos.get(i));
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            System.err.println("⚠️ Instantánea sin estados derivados: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void leerEstadosGuardados(byte[] bytes) {
+        if (bytes == null) return;
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            int altura = in.readInt();
+            String hash = in.readUTF();
+            int n = in.readInt();
+            HashMap<String, EstadoGuardado> leidos = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                String clase = in.readUTF();
+                int nIncompletos = in.readInt();
+                ArrayList<Integer> incompletos = new ArrayList<>(Math.min(nIncompletos, 1024));
+                for (int k = 0; k < nIncompletos; k++) incompletos.add(in.readInt());
+                byte[] datos = new byte[in.readInt()];
+                in.readFully(datos);
+                leidos.put(clase, new EstadoGuardado(incompletos, datos));
+            }
+            estadosGuardados.putAll(leidos);
+            alturaEstadosGuardados = altura;
+            hashEstadosGuardados = hash;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ Estados derivados de la instantánea ilegibles, se reconstruirán: " + e.getMessage());
+        }
+    }
+
+    // Dificultad que corresponde a "altura" según los timestamps de los bloques previos
+    private int calcularBits(List<Bloque> bloques, List<Integer> bitsPrevios, int altura) {
+        int anterior = altura > 0 ? bitsPrevios.get(altura - 1) : ajuste.getBitsIniciales();
+        return ajuste.bitsPara(altura, anterior, h -> bloques.get(h).getTimestamp());
+    }
+
+    // Las primeras "conocidas" alturas se toman de "bitsConocidos" (instantánea) sin recalcular
+    private VectorPersistente<Integer> recalcularBitsPorAltura(List<Bloque> bloques, int[] bitsConocidos, int conocidas) {
+        ArrayList<Integer> bits = new ArrayList<>(bloques.size());
+        for (int i = 0; i < conocidas; i++) {
+            bits.add(bitsConocidos[i]);
+        }
+        for (int i = conocidas; i < bloques.size(); i++) {
+            bits.add(calcularBits(bloques, bits, i));
+        }
+        return VectorPersistente.de(bits);
     }
 
+    /**
+     * Valida solo los bloques agregados desde la última validación exitosa
+     * (marca de agua alturaVerificada). Ver esCadenaValida(true) para forzar todo.
+     */
     public boolean esCadenaValida() {
+        return esCadenaValida(false);
+    }
+
+    /**
+     * @param completa true para re-verificar desde el bloque 1 (p.ej. si se
+     *                 sospecha que se modificó un bloque ya verificado)
+     */
+    public boolean esCadenaValida(boolean completa) {
+        Estado e = estado; // instantánea: los bloques agregados después se validan la próxima vez
+        List<Bloque> cadena = e.bloques;
         Bloque bloqueActual;
         Bloque bloqueAnterior;
 
-        for (int i = 1; i < cadena.size(); i++) {
+        int desde = completa ? 1 : Math.max(1, e.alturaVerificada.get() + 1);
+        if (completa) e.alturaVerificada.set(0);
+        long ahora = System.currentTimeMillis();
+
+        for (int i = desde; i < cadena.size(); i++) {
             bloqueActual = cadena.get(i);
             bloqueAnterior = cadena.get(i - 1);
 
+            if (!FormatoCabecera.esVersionValidaSobre(bloqueActual.getVersion(), bloqueAnterior.getVersion())) {
+                System.out.println("❌ Versión " + bloqueActual.getVersion() + " no admitida en bloque #" + i);
+                e.alturaVerificada.set(i - 1);
+                return false;
+            }
+
+            try {
+                ajuste.verificarTimestamp(i, bloqueActual.getTimestamp(), h -> cadena.get(h).getTimestamp(), ahora);
+            } catch (IllegalArgumentException ex) {
+                System.out.println("❌ Bloque #" + i + ": " + ex.getMessage());
+                e.alturaVerificada.set(i - 1);
+                return false;
+            }
+
             if (!bloqueActual.getHash().equals(bloqueActual.calcularHash())) {
                 System.out.println("❌ Hash inválido en bloque #" + i);
+                e.alturaVerificada.set(i - 1);
+                return false;
+            }
+
+            int bits = e.bitsPorAltura.get(i);
+            if (!bloqueActual.cumpleDificultadBits(bits)) {
+                System.out.println("❌ Dificultad insuficiente en bloque #" + i + " (se exigen " + bits + " bits)");
+                e.alturaVerificada.set(i - 1);
                 return false;
             }
 
             if (!bloqueActual.getHashAnterior().equals(bloqueAnterior.getHash())) {
                 System.out.println("❌ Enlace roto en bloque #" + i);
+                e.alturaVerificada.set(i - 1);
                 return false;
             }
         }
+        e.alturaVerificada.accumulateAndGet(cadena.size() - 1, Math::max);
         return true;
     }
 
-  
-    public Bloque getBloquePendiente() {
-        return bloquePendiente;
+    /**
+     * Auditoría completa en paralelo: reporta todas las fallas, no solo la primera.
+     * Si la cadena resulta válida se avanza la marca de agua de verificación.
+     */
+    public ReporteValidacion auditarCadena() {
+        Estado e = estado;
+        ReporteValidacion reporte = VerificadorCadena.verificarParalelo(e.bloques, e.bitsPorAltura::get);
+        if (reporte.esValida()) e.alturaVerificada.accumulateAndGet(e.bloques.size() - 1, Math::max);
+        return reporte;
     }
-    
-    public void setBloquePendiente(Bloque bloque) {
-        this.bloquePendiente = bloque;
+
+    /** Igual que auditarCadena pero en un solo hilo (referencia para comparar tiempos). */
+    public ReporteValidacion auditarCadenaSecuencial() {
+        Estado e = estado;
+        ReporteValidacion reporte = VerificadorCadena.verificarSecuencial(e.bloques, e.bitsPorAltura::get);
+        if (reporte.esValida()) e.alturaVerificada.accumulateAndGet(e.bloques.size() - 1, Math::max);
+        return reporte;
+    }
+
+    // ----- Búsquedas O(1) por hash y por altura -----
+    /** Altura del bloque con ese hash, o -1 si no está en la cadena. */
+    public int obtenerAlturaPorHash(String hash) {
+        Estado e = estado;
+        Integer altura = hash != null ? e.alturaPorHash.get(hash) : null;
+        // El índice puede ir por delante de la instantánea: solo cuenta lo publicado
+        return altura != null && altura < e.bloques.size() ? altura : -1;
+    }
+
+    public boolean contieneBloque(String hash) {
+        return obtenerAlturaPorHash(hash) >= 0;
+    }
+
+    /**
+     * Altura del bloque que contiene la transacción, o -1. Para nodos sin
+     * IndiceTransacciones: recorre desde la punta y el FiltroBloom de cada
+     * bloque descarta casi todos sin mirar su lista de hashes.
+     */
+    public int buscarAlturaTransaccion(String hashTransaccion) {
+        List<Bloque> bloques = estado.bloques;
+        for (int h = bloques.size() - 1; h >= 0; h--) {
+            if (bloques.get(h).contieneTransaccion(hashTransaccion)) return h;
+        }
+        return -1;
+    }
+
+    /** Bloque con ese hash, o null si no está en la cadena. */
+    public Bloque obtenerBloquePorHash(String hash) {
+        Estado e = estado;
+        Integer altura = hash != null ? e.alturaPorHash.get(hash) : null;
+        return altura != null && altura < e.bloques.size() ? e.bloques.get(altura) : null;
+    }
+
+    /** Bloque en esa altura, o null si está fuera de rango. */
+    public Bloque obtenerBloquePorAltura(int altura) {
+        List<Bloque> cadena = estado.bloques;
+        return altura >= 0 && altura < cadena.size() ? cadena.get(altura) : null;
+    }
+    // -------------------------------------------------
+
+    public Mempool getMempool() {
+        return mempool;
+    }
+
+    /**
+     * Admite una transacción en el mempool bajo el lock del escritor: el stock
+     * confirmado (estados derivados) y lo pendiente se leen sin que entre un
+     * bloque a la mitad, así una salida no se cuenta dos veces ni ninguna.
+     */
+    public synchronized Mempool.ResultadoAdmision admitirTransaccion(TransaccionInventario t) {
+        return mempool.agregar(t);
     }
     
-    public ArrayList<Bloque> getCadena() {
-        return cadena;
+    /** Instantánea inmutable de la cadena; no cambia aunque se agreguen bloques después. */
+    public List<Bloque> getCadena() {
+        return estado.bloques;
     }
     
-    public void setCadena(ArrayList<Bloque> nuevaCadena) {
-    this.cadena = nuevaCadena;
-    System.out.println("🔄 Cadena reemplazada. Total bloques: " + cadena.size());
+    public synchronized void setCadena(List<Bloque> nuevaCadena) {
+    if (almacen != null) {
+        // En disco solo se reescribe a partir del primer bloque distinto
+        List<Bloque> actual = estado.bloques;
+        int comun = 0;
+        while (comun < actual.size() && comun < nuevaCadena.size()
+                && actual.get(comun).getHash().equals(nuevaCadena.get(comun).getHash())) {
+            comun++;
+        }
+        try {
+            almacen.truncar(comun);
+            for (int i = comun; i < nuevaCadena.size(); i++) {
+                almacen.agregar(nuevaCadena.get(i));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo guardar la cadena nueva", e);
+        }
+    }
+    estado = nuevoEstado(nuevaCadena, null, 0);
+    punta = arbol.reiniciar(estado.bloques, estado.bitsPorAltura);
+    for (Derivado<?> d : derivados) d.reconstruir(estado.bloques);
+    System.out.println("🔄 Cadena reemplazada. Total bloques: " + nuevaCadena.size());
 }
 
+    // Marca de agua nueva: la cadena reemplazada no se ha verificado
+    private Estado nuevoEstado(List<Bloque> bloques, int[] bitsConocidos, int conocidas) {
+        ConcurrentHashMap<String, Integer> indice = new ConcurrentHashMap<>(bloques.size() * 2);
+        for (int i = 0; i < bloques.size(); i++) {
+            indice.put(bloques.get(i).getHash(), i);
+        }
+        return new Estado(VectorPersistente.de(bloques), recalcularBitsPorAltura(bloques, bitsConocidos, conocidas),
+                indice, new AtomicInteger(0));
+    }
+
+    public AlmacenBloques getAlmacen() {
+        return almacen;
+    }
+
+    /**
+     * Guarda índice de offsets, marca de agua, dificultad por altura y estados
+     * derivados para el próximo arranque (no lanza).
+     */
+    public synchronized void guardarInstantanea() {
+        if (almacen == null) return;
+        Estado actual = estado;
+        int[] bits = new int[actual.bitsPorAltura.size()];
+        for (int i = 0; i < bits.length; i++) bits[i] = actual.bitsPorAltura.get(i);
+        try {
+            almacen.guardarInstantanea(actual.alturaVerificada.get(),
+                    bits.length == almacen.getCantidad() ? bits : null, exportarEstados());
+        } catch (IOException e) {
+            System.err.println("⚠️ No se pudo guardar la instantánea: " + e.getMessage());
+        }
+    }
+
+    /** Guarda la instantánea y cierra el almacén (si lo hay). */
+    public synchronized void cerrar() {
+        if (almacen == null) return;
+        guardarInstantanea();
+        almacen.close();
+    }
+
+    /** Altura más alta ya verificada (0 = solo el génesis). */
+    public int getAlturaVerificada() {
+        return estado.alturaVerificada.get();
+    }
+
+    /** Dificultad inicial en ceros hex (ver getDificultadBits para la vigente). */
     public int getDificultad() {
         return dificultad;
     }
+
+    /** Dificultad en bits exigida al bloque de "altura" (incluida la siguiente a minar). */
+    public int getDificultadBits(int altura) {
+        Estado e = estado;
+        if (altura >= 0 && altura < e.bitsPorAltura.size()) {
+            return e.bitsPorAltura.get(altura);
+        }
+        if (altura == e.bloques.size()) {
+            return calcularBits(e.bloques, e.bitsPorAltura, altura);
+        }
+        throw new IndexOutOfBoundsException("Altura sin dificultad conocida: " + altura);
+    }
+
+    /** Menor timestamp que admite el siguiente bloque: la mediana de los anteriores + 1 ms. */
+    public long getTimestampMinimoSiguiente() {
+        List<Bloque> bloques = estado.bloques;
+        return ajuste.medianaTiempoPasado(bloques.size(), h -> bloques.get(h).getTimestamp()) + 1;
+    }
+
+    /** Dificultad en bits que debe cumplir el próximo bloque. */
+    public int getDificultadBitsSiguiente() {
+        return getDificultadBits(estado.bloques.size());
+    }
+
+    public AjusteDificultad getAjusteDificultad() {
+        return ajuste;
+    }
 }
\ No newline at end of file
@@ -1,17 +1,26 @@
 package modelo;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 public class Bloque {
     private String hash;
     private String hashAnterior;
-    private ArrayList<TransaccionInventario> transacciones; // Lista para construir JSON cifrado
+    private volatile ArrayList<TransaccionInventario> transacciones; // Lista para construir JSON cifrado (o ya descifrada)
     private ArrayList<String> datosEncriptados; // JSON cifrado
+    private ArrayList<String> hashesTransacciones; // hojas del árbol de Merkle (viajan con el bloque)
     private String llaveAesEncriptada; 
     private long tiempoCreacion;
     private int nonce;
     private int index; 
+    private int version; // formato de cabecera (ver FormatoCabecera)
+    private volatile FiltroBloom filtroBloom; // sobre hashesTransacciones; se arma al pedirlo
+    // Caché de la cabecera: se borran al cambiar transacciones, datos cifrados o llave
+    private volatile ArbolMerkle arbolMerkle;
+    private volatile byte[] digestContenido;
 
     // Constructor existente (genera nuevo bloque con tiempo actual)
     public Bloque(String hashAnterior) {
@@ -19,8 +28,10 @@ public class Bloque {
         this.tiempoCreacion = new Date().getTime();
         this.transacciones = new ArrayList<>();
         this.datosEncriptados = new ArrayList<>();
+        this.hashesTransacciones = new ArrayList<>();
         this.llaveAesEncriptada = "";
         this.nonce = 0;
+        this.version = FormatoCabecera.VERSION_ACTUAL;
         this.hash = calcularHash();
         this.index = 0;
     }
@@ -32,6 +43,24 @@ public class Bloque {
      */
     public Bloque(int index, long tiempoCreacion, int nonce, String hash, String hashAnterior,
                   ArrayList<String> datosEncriptados, String llaveAesEncriptada) {
+        this(index, tiempoCreacion, nonce, hash, hashAnterior, datosEncriptados, llaveAesEncriptada,
+             FormatoCabecera.VERSION_LEGADO);
+    }
+
+    /** Igual que el anterior indicando el formato de cabecera con el que se minó. */
+    public Bloque(int index, long tiempoCreacion, int nonce, String hash, String hashAnterior,
+                  ArrayList<String> datosEncriptados, String llaveAesEncriptada, int version) {
+        this(index, tiempoCreacion, nonce, hash, hashAnterior, datosEncriptados, llaveAesEncriptada, version, null);
+    }
+
+    /** Igual que el anterior con los hashes de transacción (necesarios para la raíz Merkle en v2). */
+    public Bloque(int index, long tiempoCreacion, int nonce, String hash, String hashAnterior,
+                  ArrayList<String> datosEncriptados, String llaveAesEncriptada, int version,
+                  ArrayList<String> hashesTransacciones) {
+        if (!FormatoCabecera.esVersionConocida(version)) {
+            throw new IllegalArgumentException("Versión de cabecera desconocida: " + version);
+        }
+        this.version = version;
         this.index = index;
         this.tiempoCreacion = tiempoCreacion;
         this.nonce = nonce;
@@ -39,6 +68,7 @@ public class Bloque {
         this.hashAnterior = hashAnterior != null ? hashAnterior : "";
         this.transacciones = new ArrayList<>();
         this.datosEncriptados = datosEncriptados != null ? datosEncriptados : new ArrayList<>();
+        this.hashesTransacciones = hashesTransacciones != null ? hashesTransacciones : new ArrayList<>();
         this.llaveAesEncriptada = llaveAesEncriptada != null ? llaveAesEncriptada : "";
     }
     // ----------------------------------------------------------------
@@ -46,37 +76,186 @@ public class Bloque {
     // Método para agregar transacciones
     public void agregarTransaccion(TransaccionInventario t) {
         transacciones.add(t);
+        hashesTransacciones.add(t.getHashTransaccion());
+        filtroBloom = null;
+        invalidarContenido();
+    }
+
+    /**
+     * Repone las transacciones descifradas de un bloque replicado o recargado
+     * (que solo trae datosEncriptados). No cambia el hash: si el bloque trae sus
+     * hashes de transacción, las descifradas tienen que coincidir una a una.
+     * @throws IllegalArgumentException si no coinciden con los hashes del bloque
+     */
+    public void restaurarTransacciones(List<TransaccionInventario> descifradas) {
+        if (!hashesTransacciones.isEmpty()) {
+            if (descifradas.size() != hashesTransacciones.size()) {
+                throw new IllegalArgumentException("El bloque #" + index + " declara " + hashesTransacciones.size()
+                        + " transacciones y se descifraron " + descifradas.size());
+            }
+            for (int i = 0; i < descifradas.size(); i++) {
+                if (!hashesTransacciones.get(i).equals(descifradas.get(i).getHashTransaccion())) {
+                    throw new IllegalArgumentException("La transacción " + i + " del bloque #" + index
+                            + " no coincide con su hash");
+                }
+            }
+        }
+        // Lista nueva y volatile: un lector ve la vacía o la completa
+        this.transacciones = new ArrayList<>(descifradas);
     }
 
     // Método para calcular el hash 
     public String calcularHash() {
-        String datosBloque = hashAnterior + Long.toString(tiempoCreacion) + Integer.toString(nonce) + llaveAesEncriptada;
-        for (String dato : datosEncriptados) {
-            datosBloque += dato;
-        }
-        return CriptoUtil.aplicarSha256(datosBloque);
+        return calcularHashConNonce(nonce);
     }
     
     public String calcularHashConNonce(long nonceDelBD) {
-        String datos = hashAnterior + 
-                       Long.toString(tiempoCreacion) +
-                       Long.toString(nonceDelBD) + 
-                       llaveAesEncriptada;
-                       
+        if (version == FormatoCabecera.VERSION_LEGADO) {
+            StringBuilder datos = new StringBuilder(hashAnterior)
+                    .append(tiempoCreacion)
+                    .append(nonceDelBD)
+                    .append(llaveAesEncriptada);
+            for (String dato : datosEncriptados) {
+                datos.append(dato);
+            }
+            return CriptoUtil.aplicarSha256(datos.toString());
+        }
+        byte[] cabecera = FormatoCabecera.codificar(version, hashAnterior, calcularDigestContenido(),
+                tiempoCreacion, nonceDelBD);
+        return CriptoUtil.aHex(CriptoUtil.sha256(cabecera));
+    }
+
+    /** Lo que se compromete en la cabecera binaria: raíz Merkle (v2) o digest de llave + datos (v1). */
+    public byte[] calcularDigestContenido() {
+        byte[] d = digestContenido;
+        if (d == null) {
+            d = version >= FormatoCabecera.VERSION_MERKLE
+                    ? construirArbolMerkle().getRaiz()
+                    : FormatoCabecera.digestContenido(llaveAesEncriptada, datosEncriptados);
+            digestContenido = d;
+        }
+        return d.clone();
+    }
+
+    private void invalidarContenido() {
+        arbolMerkle = null;
+        digestContenido = null;
+    }
+
+    // ----- Árbol de Merkle (cabecera v2) -----
+    // Hojas: cada transacción (por su hash), cada dato cifrado y la llave AES, con un
+    // byte de tipo delante para que un dato cifrado no pueda pasar por transacción.
+    private static final byte HOJA_TRANSACCION = 'T';
+    private static final byte HOJA_DATO = 'D';
+    private static final byte HOJA_LLAVE = 'K';
+
+    /** Datos de la hoja de una transacción; la hoja i del árbol es la transacción i. */
+    public static byte[] datosHojaTransaccion(String hashTransaccion) {
+        byte[] hash = CriptoUtil.desdeHex(hashTransaccion);
+        byte[] hoja = new byte[1 + hash.length];
+        hoja[0] = HOJA_TRANSACCION;
+        System.arraycopy(hash, 0, hoja, 1, hash.length);
+        return hoja;
+    }
+
+    private static byte[] hojaTexto(byte tipo, String valor) {
+        byte[] bytes = valor.getBytes(StandardCharsets.UTF_8);
+        byte[] hoja = new byte[1 + bytes.length];
+        hoja[0] = tipo;
+        System.arraycopy(bytes, 0, hoja, 1, bytes.length);
+        return hoja;
+    }
+
+    /** Árbol de la cabecera v2; inmutable, así que se arma una vez y se reutiliza. */
+    public ArbolMerkle construirArbolMerkle() {
+        ArbolMerkle a = arbolMerkle;
+        if (a == null) {
+            a = armarArbolMerkle();
+            arbolMerkle = a;
+        }
+        return a;
+    }
+
+    private ArbolMerkle armarArbolMerkle() {
+        ArrayList<byte[]> hojas = new ArrayList<>(hashesTransacciones.size() + datosEncriptados.size() + 1);
+        for (String h : hashesTransacciones) hojas.add(datosHojaTransaccion(h));
+        for (String d : datosEncriptados) hojas.add(hojaTexto(HOJA_DATO, d));
+        hojas.add(hojaTexto(HOJA_LLAVE, llaveAesEncriptada));
+        return ArbolMerkle.construir(hojas);
+    }
+
+    /** Prueba de inclusión de la transacción con ese hash, o null si no está en el bloque. */
+    public PruebaMerkle generarPruebaTransaccion(String hashTransaccion) {
+        int i = hashesTransacciones.indexOf(hashTransaccion);
+        return i >= 0 ? construirArbolMerkle().generarPrueba(i) : null;
+    }
+
+    /**
+     * Calcula digests del bloque para distintos nonces sin reconstruir el bloque.
+     * Cada hilo del minador crea el suyo: no es thread-safe.
+     */
+    interface CalculadorNonce {
+        void digest(long nonce, byte[] salida);
+    }
+
+    CalculadorNonce crearCalculadorNonce() {
+        if (version == FormatoCabecera.VERSION_LEGADO) {
+            return crearCalculadorLegado();
+        }
+        // Midstate: el prefijo constante se procesa una sola vez y se clona por nonce
+        byte[] prefijo = FormatoCabecera.prefijo(version, hashAnterior, calcularDigestContenido(), tiempoCreacion);
+        MessageDigest base = CriptoUtil.nuevoSha256();
+        base.update(prefijo);
+        byte[] nonceBytes = new byte[8];
+        return (n, salida) -> {
+            MessageDigest sha;
+            try {
+                sha = (MessageDigest) base.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+            FormatoCabecera.escribirNonce(n, nonceBytes, 0);
+            sha.update(nonceBytes);
+            CriptoUtil.finalizar(sha, salida, 0);
+        };
+    }
+
+    // Hash legado: prefijo/sufijo constantes en UTF-8 y los dígitos del nonce en un buffer reutilizado
+    private CalculadorNonce crearCalculadorLegado() {
+        StringBuilder sufijoTexto = new StringBuilder(llaveAesEncriptada);
         for (String dato : datosEncriptados) {
-            datos += dato;
+            sufijoTexto.append(dato);
         }
-        
-        return CriptoUtil.aplicarSha256(datos); 
+        byte[] prefijo = (hashAnterior + tiempoCreacion).getBytes(StandardCharsets.UTF_8);
+        byte[] sufijo = sufijoTexto.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] digitos = new byte[20];
+        MessageDigest sha = CriptoUtil.nuevoSha256();
+        return (n, salida) -> {
+            int desde = CriptoUtil.escribirDecimal(n, digitos);
+            sha.update(prefijo);
+            sha.update(digitos, desde, digitos.length - desde);
+            sha.update(sufijo);
+            CriptoUtil.finalizar(sha, salida, 0);
+        };
     }
-    
-    // Prueba de trabajo para minar el bloque
+
+    // Prueba de trabajo para minar el bloque (reparte los nonces entre núcleos)
     public void minarBloque(int dificultad) {
-        String prefijoDificultad = new String(new char[dificultad]).replace('\0', '0');
-        while (!hash.substring(0, dificultad).equals(prefijoDificultad)) {
-            nonce++;
-            hash = calcularHash();
-        }
+        minarBloque(dificultad, MinadorParalelo.porDefecto());
+    }
+
+    public void minarBloque(int dificultad, MinadorParalelo minador) {
+        minarBloqueBits(dificultad * 4, minador, new ProgresoMinado(dificultad * 4));
+    }
+
+    /**
+     * Minado con dificultad en bits (ver AjusteDificultad), observable y cancelable:
+     * lanza CancellationException si se cancela el progreso.
+     */
+    public void minarBloqueBits(int bits, MinadorParalelo minador, ProgresoMinado progreso) {
+        MinadorParalelo.Resultado resultado = minador.minarBits(this, bits, progreso);
+        this.nonce = resultado.getNonce();
+        this.hash = resultado.getHash();
         System.out.println("Bloque minado: " + hash);
     }
 
@@ -93,14 +272,31 @@ public class Bloque {
     public ArrayList<TransaccionInventario> getTransacciones() { return transacciones; }
 
     public ArrayList<String> getDatosEncriptados() { return datosEncriptados; }
+    public ArrayList<String> getHashesTransacciones() { return hashesTransacciones; }
+
+    /** Filtro de Bloom de los hashes de transacción: descarta el bloque sin mirar la lista. */
+    public FiltroBloom getFiltroBloom() {
+        FiltroBloom f = filtroBloom;
+        if (f == null) {
+            f = FiltroBloom.de(hashesTransacciones, hashesTransacciones.size());
+            filtroBloom = f;
+        }
+        return f;
+    }
+
+    public boolean contieneTransaccion(String hashTransaccion) {
+        return getFiltroBloom().puedeContener(hashTransaccion) && hashesTransacciones.contains(hashTransaccion);
+    }
     public void setDatosEncriptados(ArrayList<String> datosEncriptados) { 
         this.datosEncriptados = datosEncriptados; 
+        invalidarContenido();
         // NOTA: no recalculamos hash automáticamente
     }
     
     public String getLlaveAesEncriptada() { return llaveAesEncriptada; }
     public void setLlaveAesEncriptada(String llaveAesEncriptada) { 
         this.llaveAesEncriptada = llaveAesEncriptada; 
+        invalidarContenido();
         // NOTA: no recalculamos hash automáticamente
     }
     
@@ -109,6 +305,16 @@ public class Bloque {
 
     public long getTimestamp() { return tiempoCreacion; }
     public int getNonce() { return nonce; }
+    public int getVersion() { return version; }
+
+    /** true si el hash almacenado empieza por al menos "bits" bits a cero. */
+    public boolean cumpleDificultadBits(int bits) {
+        try {
+            return hash.length() == 64 && CriptoUtil.cumpleDificultadBits(CriptoUtil.desdeHex(hash), bits);
+        } catch (IllegalArgumentException noHex) {
+            return false;
+        }
+    }
 
     // ----- Nuevos setters para replicación -----
     /** Forzar nonce (no recalcula hash) */
@@ -126,6 +332,7 @@ public class Bloque {
         StringBuilder sb = new StringBuilder();
         sb.append("{\n");
         sb.append("  \"index\": ").append(index).append(",\n");
+        sb.append("  \"version\": ").append(version).append(",\n");
         sb.append("  \"timestamp\": ").append(tiempoCreacion).append(",\n");
         sb.append("  \"nonce\": ").append(nonce).append(",\n");
         sb.append("  \"hashAnterior\": \"").append(hashAnterior).append("\",\n");
@@ -140,6 +347,14 @@ public class Bloque {
             }
         }
         
+        sb.append("],\n");
+        sb.append("  \"hashesTransacciones\": [");
+        for (int i = 0; i < hashesTransacciones.size(); i++) {
+            sb.append("\"").append(hashesTransacciones.get(i)).append("\"");
+            if (i < hashesTransacciones.size() - 1) {
+                sb.append(",");
+            }
+        }
         sb.append("]\n");
         sb.append("}");
         return sb.toString();
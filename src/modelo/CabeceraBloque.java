@@ -0,0 +1,91 @@
+package modelo;
+
+/**
+ * Solo la cabecera de un bloque: lo que un cliente ligero necesita para
+ * comprobar enlace y prueba de trabajo sin descargar el contenido cifrado.
+ *
+ * En versiones binarias (>= 1) el hash se recalcula con estos campos; en la
+ * versión legado el hash depende del contenido, así que solo se puede
+ * comprobar el enlace.
+ *
+ * Formato de texto (protocolo GET_HEADERS):
+ *   index,version,hash,hashAnterior,timestamp,nonce,digestContenidoHex
+ */
+public final class CabeceraBloque {
+
+    private final int index;
+    private final int version;
+    private final String hash;
+    private final String hashAnterior;
+    private final long timestamp;
+    private final int nonce;
+    private final byte[] digestContenido; // raíz Merkle en v2
+
+    public CabeceraBloque(int index, int version, String hash, String hashAnterior,
+                          long timestamp, int nonce, byte[] digestContenido) {
+        this.index = index;
+        this.version = version;
+        this.hash = hash;
+        this.hashAnterior = hashAnterior;
+        this.timestamp = timestamp;
+        this.nonce = nonce;
+        this.digestContenido = digestContenido;
+    }
+
+    public static CabeceraBloque de(Bloque b) {
+        return new CabeceraBloque(b.getIndex(), b.getVersion(), b.getHash(), b.getHashAnterior(),
+                b.getTimestamp(), b.getNonce(), b.calcularDigestContenido());
+    }
+
+    public int getIndex() { return index; }
+    public int getVersion() { return version; }
+    public String getHash() { return hash; }
+    public String getHashAnterior() { return hashAnterior; }
+    public long getTimestamp() { return timestamp; }
+    public int getNonce() { return nonce; }
+    public byte[] getDigestContenido() { return digestContenido.clone(); }
+
+    /** false en la versión legado: su hash no se puede recalcular sin el contenido. */
+    public boolean esVerificable() {
+        return version != FormatoCabecera.VERSION_LEGADO;
+    }
+
+    public String calcularHash() {
+        if (!esVerificable()) {
+            throw new IllegalStateException("La cabecera legado no permite recalcular el hash");
+        }
+        return CriptoUtil.aHex(CriptoUtil.sha256(
+                FormatoCabecera.codificar(version, hashAnterior, digestContenido, timestamp, nonce)));
+    }
+
+    public boolean cumpleDificultadBits(int bits) {
+        try {
+            return hash.length() == 64 && CriptoUtil.cumpleDificultadBits(CriptoUtil.desdeHex(hash), bits);
+        } catch (IllegalArgumentException noHex) {
+            return false;
+        }
+    }
+
+    public String codificar() {
+        return index + "," + version + "," + hash + "," + hashAnterior + "," + timestamp + ","
+                + nonce + "," + CriptoUtil.aHex(digestContenido);
+    }
+
+    public static CabeceraBloque decodificar(String texto) {
+        String[] p = texto.trim().split(",");
+        if (p.length != 7) {
+            throw new IllegalArgumentException("Cabecera malformada: " + texto);
+        }
+        int version = Integer.parseInt(p[1]);
+        if (!FormatoCabecera.esVersionConocida(version)) {
+            throw new IllegalArgumentException("Versión de cabecera desconocida: " + version);
+        }
+        return new CabeceraBloque(Integer.parseInt(p[0]), version, p[2], p[3],
+                Long.parseLong(p[4]), Integer.parseInt(p[5]), CriptoUtil.desdeHex(p[6]));
+    }
+
+    @Override
+    public String toString() {
+        return "Cabecera #" + index + " v" + version + " " + hash;
+    }
+}
@@ -0,0 +1,160 @@
+package modelo;
+
+import javax.crypto.SecretKey;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caché LRU, por hash de bloque, de la llave AES ya desenvuelta con RSA y del
+ * contenido ya descifrado. Evita repetir la contraseña, el parseo del PEM
+ * cifrado y el RSA-OAEP al volver a ver bloques recientes.
+ *
+ * Límites:
+ * - bytes: se contabilizan llave + contenido (2 bytes por carácter) + una
+ *   sobrecarga fija por entrada; al pasarse se expulsan las menos usadas.
+ * - tiempo: cada entrada vence ttl después de guardarse, aunque se siga usando,
+ *   para no retener material descifrado indefinidamente.
+ *
+ * El hash identifica el contenido, así que una reorganización no invalida
+ * nada: un bloque que sale de la cadena simplemente deja de consultarse.
+ */
+public class CacheLlaves {
+
+    public static final long MAX_BYTES_DEFECTO = Long.getLong("cache.llaves.maxBytes", 16L * 1024 * 1024);
+    public static final long TTL_MS_DEFECTO = Long.getLong("cache.llaves.ttlMs", 10 * 60 * 1000L);
+
+    private static final int SOBRECARGA_ENTRADA = 128; // nodo del mapa, hash del bloque y objetos
+
+    private static final class Entrada {
+        final SecretKey llave;
+        final String contenido; // null si solo se desenvolvió la llave
+        final long venceNanos;
+        final long bytes;
+
+        Entrada(String hash, SecretKey llave, String contenido, long venceNanos) {
+            this.llave = llave;
+            this.contenido = contenido;
+            this.venceNanos = venceNanos;
+            byte[] encoded = llave.getEncoded();
+            this.bytes = SOBRECARGA_ENTRADA + 2L * hash.length() + (encoded != null ? encoded.length : 0)
+                    + (contenido != null ? 2L * contenido.length() : 0);
+        }
+    }
+
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>(64, 0.75f, true); // orden de acceso
+    private long bytes;
+    private long aciertos;
+    private long fallos;
+    private long expulsadas;
+
+    public CacheLlaves() {
+        this(MAX_BYTES_DEFECTO, TTL_MS_DEFECTO);
+    }
+
+    public CacheLlaves(long maxBytes, long ttlMs) {
+        if (maxBytes <= 0 || ttlMs <= 0) throw new IllegalArgumentException("Límites de caché inválidos");
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttlMs * 1_000_000L;
+    }
+
+    /** Llave AES del bloque, o null si no está (o venció). */
+    public synchronized SecretKey getLlave(String hashBloque) {
+        Entrada e = vigente(hashBloque);
+        return e != null ? e.llave : null;
+    }
+
+    /** Contenido descifrado del bloque, o null si no está (o venció). */
+    public synchronized String getContenido(String hashBloque) {
+        Entrada e = vigente(hashBloque);
+        return e != null ? e.contenido : null;
+    }
+
+    /** Guarda solo la llave (p.ej. para descifrar el contenido más tarde). */
+    public void guardarLlave(String hashBloque, SecretKey llave) {
+        guardar(hashBloque, llave, null);
+    }
+
+    /** Guarda la llave y el contenido descifrado. Una entrada mayor que el límite no se guarda. */
+    public synchronized void guardar(String hashBloque, SecretKey llave, String contenido) {
+        long ahora = System.nanoTime();
+        Entrada nueva = new Entrada(hashBloque, llave, contenido, ahora + ttlNanos);
+        quitar(hashBloque);
+        if (nueva.bytes > maxBytes) return;
+        purgarVencidas(ahora);
+        entradas.put(hashBloque, nueva);
+        bytes += nueva.bytes;
+        // El primero en iteración es el usado hace más tiempo
+        Iterator<Entrada> it = entradas.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Entrada e = it.next();
+            it.remove();
+            bytes -= e.bytes;
+            expulsadas++;
+        }
+    }
+
+    public synchronized void invalidar(String hashBloque) {
+        quitar(hashBloque);
+    }
+
+    /** Descarta todo (p.ej. al rotar la llave privada o cerrar la sesión). */
+    public synchronized void limpiar() {
+        entradas.clear();
+        bytes = 0;
+    }
+
+    public synchronized int getTamano() {
+        return entradas.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getAciertos() {
+        return aciertos;
+    }
+
+    public synchronized long getFallos() {
+        return fallos;
+    }
+
+    public synchronized long getExpulsadas() {
+        return expulsadas;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("CacheLlaves[%d entradas, %,d/%,d bytes, %d aciertos, %d fallos, %d expulsadas]",
+                entradas.size(), bytes, maxBytes, aciertos, fallos, expulsadas);
+    }
+
+    private Entrada vigente(String hashBloque) {
+        Entrada e = entradas.get(hashBloque);
+        if (e != null && System.nanoTime() - e.venceNanos >= 0) {
+            quitar(hashBloque);
+            e = null;
+        }
+        if (e == null) fallos++; else aciertos++;
+        return e;
+    }
+
+    private void quitar(String hashBloque) {
+        Entrada e = entradas.remove(hashBloque);
+        if (e != null) bytes -= e.bytes;
+    }
+
+    private void purgarVencidas(long ahora) {
+        Iterator<Map.Entry<String, Entrada>> it = entradas.entrySet().iterator();
+        while (it.hasNext()) {
+            Entrada e = it.next().getValue();
+            if (ahora - e.venceNanos >= 0) {
+                it.remove();
+                bytes -= e.bytes;
+            }
+        }
+    }
+}
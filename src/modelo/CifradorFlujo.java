@@ -0,0 +1,260 @@
+package modelo;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Cifrado AES-GCM por trozos, de canal a canal, con memoria acotada.
+ *
+ * Formato del flujo:
+ *   "GCM1" | int tamanoTrozo | 8 bytes de prefijo de nonce |
+ *   trozos: int longitud | byte final | texto cifrado + etiqueta de 16 bytes
+ *
+ * Cada trozo se autentica por separado: su nonce es prefijo + índice y su AAD
+ * es índice + marca de final, así que no se pueden reordenar, duplicar ni
+ * cortar trozos (el flujo debe terminar justo en el trozo marcado como final).
+ * Como cada trozo es independiente, con un Executor se cifran/descifran varios
+ * a la vez; la salida se escribe en orden y nunca hay más de VENTANA trozos en
+ * memoria.
+ *
+ * En el bloque, cada entrada cifrada se guarda como "gcm$" + Base64 del flujo.
+ * Las entradas sin prefijo son del formato legado (AES/ECB de una pieza) y
+ * solo se descifran.
+ */
+public final class CifradorFlujo {
+
+    public static final String PREFIJO_GCM = "gcm$";
+    public static final int TAMANO_TROZO_DEFECTO = Integer.getInteger("cifrado.tamanoTrozo", 64 * 1024);
+
+    private static final byte[] MAGIA = {'G', 'C', 'M', '1'};
+    private static final int BYTES_PREFIJO = 8;
+    private static final int BYTES_ETIQUETA = 16;
+    private static final int MAX_TAMANO_TROZO = 16 * 1024 * 1024;
+    private static final SecureRandom ALEATORIO = new SecureRandom();
+
+    private static final CifradorFlujo POR_DEFECTO = new CifradorFlujo(TAMANO_TROZO_DEFECTO,
+            Runtime.getRuntime().availableProcessors() > 1 ? ForkJoinPool.commonPool() : null);
+
+    private final int tamanoTrozo;
+    private final Executor paralelo; // null = todo en el hilo llamador
+    private final int ventana;
+
+    /**
+     * @param tamanoTrozo bytes de texto plano por trozo
+     * @param paralelo    dónde cifrar los trozos en paralelo, o null para hacerlo en el llamador
+     */
+    public CifradorFlujo(int tamanoTrozo, Executor paralelo) {
+        if (tamanoTrozo <= 0 || tamanoTrozo > MAX_TAMANO_TROZO) {
+            throw new IllegalArgumentException("Tamaño de trozo fuera de rango: " + tamanoTrozo);
+        }
+        this.tamanoTrozo = tamanoTrozo;
+        this.paralelo = paralelo;
+        this.ventana = paralelo == null ? 1 : 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Trozos de 64 KB (cifrado.tamanoTrozo), en paralelo sobre el ForkJoinPool común. */
+    public static CifradorFlujo porDefecto() {
+        return POR_DEFECTO;
+    }
+
+    // ─── Entradas de bloque ("gcm$" + Base64) ───
+
+    public static boolean esGcm(String entrada) {
+        return entrada != null && entrada.startsWith(PREFIJO_GCM);
+    }
+
+    /** Cifra los datos como entrada de datosEncriptados de un bloque. */
+    public String cifrarEntrada(byte[] datos, SecretKey llave) throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(PREFIJO_GCM.length() + (datos.length + 64) * 4 / 3);
+        bos.write(PREFIJO_GCM.getBytes(StandardCharsets.US_ASCII));
+        try (OutputStream base64 = Base64.getEncoder().wrap(bos)) {
+            cifrar(Channels.newChannel(new ByteArrayInputStream(datos)), Channels.newChannel(base64), llave);
+        }
+        return bos.toString(StandardCharsets.US_ASCII);
+    }
+
+    /** Descifra una entrada de bloque: GCM por trozos o, sin prefijo, AES/ECB legado. */
+    public byte[] descifrarEntrada(String entrada, SecretKey llave) throws Exception {
+        if (!esGcm(entrada)) {
+            return Encriptador.descifrarAes(Base64.getDecoder().decode(entrada), llave);
+        }
+        byte[] ascii = entrada.getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(ascii.length * 3 / 4);
+        descifrar(Channels.newChannel(Base64.getDecoder().wrap(
+                        new ByteArrayInputStream(ascii, PREFIJO_GCM.length(), ascii.length - PREFIJO_GCM.length()))),
+                Channels.newChannel(bos), llave);
+        return bos.toByteArray();
+    }
+
+    // ─── Flujos ───
+
+    /** Lee la entrada hasta el final y escribe el flujo cifrado. No cierra los canales. */
+    public void cifrar(ReadableByteChannel entrada, WritableByteChannel salida, SecretKey llave)
+            throws IOException, GeneralSecurityException {
+        byte[] prefijo = new byte[BYTES_PREFIJO];
+        ALEATORIO.nextBytes(prefijo);
+        ByteBuffer cabecera = ByteBuffer.allocate(MAGIA.length + 4 + BYTES_PREFIJO)
+                .put(MAGIA).putInt(tamanoTrozo).put(prefijo);
+        escribir(salida, cabecera.flip());
+
+        ArrayDeque<CompletableFuture<ByteBuffer>> enCurso = new ArrayDeque<>();
+        byte[] actual = leerTrozo(entrada);
+        for (int indice = 0; ; indice++) {
+            if (indice < 0) throw new IOException("Demasiados trozos");
+            // Se lee uno por adelantado: el último trozo lleva la marca de final
+            byte[] siguiente = actual.length < tamanoTrozo ? null : leerTrozo(entrada);
+            boolean fin = siguiente == null || siguiente.length == 0;
+            procesar(enCurso, salida, trozoCifrado(llave, prefijo, indice, actual, fin), fin);
+            if (fin) break;
+            actual = siguiente;
+        }
+        vaciar(enCurso, salida, 0);
+    }
+
+    /**
+     * Descifra un flujo completo. Cada trozo se verifica antes de escribirse;
+     * si el flujo está cortado o alterado se lanza excepción, pero los trozos
+     * anteriores (ya verificados) pueden haberse escrito.
+     */
+    public void descifrar(ReadableByteChannel entrada, WritableByteChannel salida, SecretKey llave)
+            throws IOException, GeneralSecurityException {
+        ByteBuffer cabecera = ByteBuffer.allocate(MAGIA.length + 4 + BYTES_PREFIJO);
+        if (leerCompleto(entrada, cabecera) < cabecera.capacity()) throw new IOException("Cabecera GCM incompleta");
+        cabecera.flip();
+        byte[] magia = new byte[MAGIA.length];
+        cabecera.get(magia);
+        if (!Arrays.equals(magia, MAGIA)) throw new IOException("No es un flujo GCM1");
+        int trozo = cabecera.getInt();
+        if (trozo <= 0 || trozo > MAX_TAMANO_TROZO) throw new IOException("Tamaño de trozo inválido: " + trozo);
+        byte[] prefijo = new byte[BYTES_PREFIJO];
+        cabecera.get(prefijo);
+
+        ArrayDeque<CompletableFuture<ByteBuffer>> enCurso = new ArrayDeque<>();
+        ByteBuffer marco = ByteBuffer.allocate(5);
+        for (int indice = 0; ; indice++) {
+            if (indice < 0) throw new IOException("Demasiados trozos");
+            marco.clear();
+            int leidos = leerCompleto(entrada, marco);
+            if (leidos < marco.capacity()) throw new IOException("Flujo GCM truncado en el trozo " + indice);
+            marco.flip();
+            int longitud = marco.getInt();
+            boolean fin = marco.get() != 0;
+            if (longitud < BYTES_ETIQUETA || longitud > trozo + BYTES_ETIQUETA) {
+                throw new IOException("Longitud de trozo inválida: " + longitud);
+            }
+            ByteBuffer cifrado = ByteBuffer.allocate(longitud);
+            if (leerCompleto(entrada, cifrado) < longitud) throw new IOException("Flujo GCM truncado en el trozo " + indice);
+
+            procesar(enCurso, salida, trozoDescifrado(llave, prefijo, indice, cifrado.array(), fin), fin);
+            if (fin) break;
+        }
+        vaciar(enCurso, salida, 0);
+        if (leerCompleto(entrada, ByteBuffer.allocate(1)) > 0) {
+            throw new IOException("Datos después del trozo final");
+        }
+    }
+
+    // ─── Trozos ───
+
+    private interface Trozo {
+        ByteBuffer ejecutar() throws GeneralSecurityException;
+    }
+
+    private Trozo trozoCifrado(SecretKey llave, byte[] prefijo, int indice, byte[] plano, boolean fin) {
+        return () -> {
+            Cipher c = iniciar(Cipher.ENCRYPT_MODE, llave, prefijo, indice, fin);
+            ByteBuffer marco = ByteBuffer.allocate(5 + c.getOutputSize(plano.length));
+            marco.position(5);
+            int n = c.doFinal(ByteBuffer.wrap(plano), marco);
+            marco.putInt(0, n).put(4, (byte) (fin ? 1 : 0));
+            return marco.flip();
+        };
+    }
+
+    private Trozo trozoDescifrado(SecretKey llave, byte[] prefijo, int indice, byte[] cifrado, boolean fin) {
+        return () -> ByteBuffer.wrap(iniciar(Cipher.DECRYPT_MODE, llave, prefijo, indice, fin).doFinal(cifrado));
+    }
+
+    private static Cipher iniciar(int modo, SecretKey llave, byte[] prefijo, int indice, boolean fin)
+            throws GeneralSecurityException {
+        byte[] nonce = ByteBuffer.allocate(BYTES_PREFIJO + 4).put(prefijo).putInt(indice).array();
+        Cipher c = ContextoCripto.porDefecto().cipherAesGcm();
+        c.init(modo, llave, new GCMParameterSpec(BYTES_ETIQUETA * 8, nonce));
+        c.updateAAD(ByteBuffer.allocate(5).putInt(indice).put((byte) (fin ? 1 : 0)).array());
+        return c;
+    }
+
+    /** Ejecuta el trozo (en línea o en paralelo) y escribe los que ya salen de la ventana. */
+    private void procesar(ArrayDeque<CompletableFuture<ByteBuffer>> enCurso, WritableByteChannel salida,
+                          Trozo trozo, boolean fin) throws IOException, GeneralSecurityException {
+        // Un solo trozo (lo habitual en bloques chicos): no vale la pena pasar al pool
+        if (paralelo == null || (fin && enCurso.isEmpty())) {
+            vaciar(enCurso, salida, 0);
+            escribir(salida, trozo.ejecutar());
+            return;
+        }
+        enCurso.add(CompletableFuture.supplyAsync(() -> {
+            try {
+                return trozo.ejecutar();
+            } catch (GeneralSecurityException e) {
+                throw new CompletionException(e);
+            }
+        }, paralelo));
+        vaciar(enCurso, salida, ventana - 1);
+    }
+
+    private static void vaciar(ArrayDeque<CompletableFuture<ByteBuffer>> enCurso, WritableByteChannel salida,
+                               int hastaQuedar) throws IOException, GeneralSecurityException {
+        while (enCurso.size() > hastaQuedar) {
+            try {
+                escribir(salida, enCurso.poll().join());
+            } catch (CompletionException e) {
+                enCurso.forEach(f -> f.cancel(false));
+                if (e.getCause() instanceof GeneralSecurityException) throw (GeneralSecurityException) e.getCause();
+                throw e;
+            }
+        }
+    }
+
+    // ─── E/S ───
+
+    private byte[] leerTrozo(ReadableByteChannel entrada) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(tamanoTrozo);
+        int n = leerCompleto(entrada, b);
+        return n == tamanoTrozo ? b.array() : Arrays.copyOf(b.array(), n);
+    }
+
+    /** Llena el buffer salvo que se acabe la entrada; devuelve cuántos bytes leyó. */
+    private static int leerCompleto(ReadableByteChannel entrada, ByteBuffer b) throws IOException {
+        int total = 0;
+        while (b.hasRemaining()) {
+            int n = entrada.read(b);
+            if (n < 0) break;
+            total += n;
+        }
+        return total;
+    }
+
+    private static void escribir(WritableByteChannel salida, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) salida.write(b);
+    }
+}
@@ -0,0 +1,174 @@
+package modelo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Formato JSON del contenido de un bloque antes de cifrarlo: ServicioMinado lo
+ * escribe al minar y PipelineDescifrado lo lee al descifrar.
+ */
+public final class CodecTransacciones {
+
+    private CodecTransacciones() {
+    }
+
+    /** Convierte transacciones a JSON manual (textos escapados; null como null). */
+    public static String aJson(List<TransaccionInventario> transacciones) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < transacciones.size(); i++) {
+            TransaccionInventario t = transacciones.get(i);
+            json.append("{")
+                    .append("\"farmaciaId\":").append(textoJson(t.getFarmaciaId())).append(",")
+                    .append("\"productoNombre\":").append(textoJson(t.getProducto().getNombre())).append(",")
+                    .append("\"productoCodigo\":").append(textoJson(t.getProducto().getCodigo())).append(",")
+                    .append("\"cantidad\":").append(t.getProducto().getCantidad()).append(",")
+                    .append("\"tipoMovimiento\":").append(textoJson(t.getTipoMovimiento())).append(",")
+                    .append("\"responsable\":").append(textoJson(t.getResponsable())).append(",")
+                    .append("\"lote\":").append(textoJson(t.getLote())).append(",")
+                    .append("\"fechaCaducidad\":").append(textoJson(t.getFechaCaducidad())).append(",")
+                    // con tiempoCreacion el hash de la transacción se puede recalcular tras descifrar
+                    .append("\"tiempoCreacion\":").append(t.getTiempoCreacion())
+                    .append("}");
+            if (i < transacciones.size() - 1) json.append(",");
+        }
+        json.append("]");
+        return json.toString();
+    }
+
+    private static String textoJson(String texto) {
+        if (texto == null) return "null";
+        StringBuilder sb = new StringBuilder(texto.length() + 2).append('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Inverso de aJson: reconstruye las transacciones de un bloque
+     * descifrado con su tiempo de creación, así sus hashes coinciden con los del
+     * bloque. Bloques antiguos sin tiempoCreacion quedan con 0. Los textos
+     * "null" (bloques previos al escapado) se conservan tal cual: el hash los
+     * trata igual que null.
+     * @throws IllegalArgumentException si el JSON no tiene ese formato
+     */
+    public static List<TransaccionInventario> desdeJson(String json) {
+        LectorJson l = new LectorJson(json);
+        ArrayList<TransaccionInventario> transacciones = new ArrayList<>();
+        l.esperar('[');
+        if (l.siguienteEs(']')) return transacciones;
+        do {
+            HashMap<String, String> campos = l.objeto();
+            String cantidad = campos.get("cantidad");
+            String tiempo = campos.get("tiempoCreacion");
+            if (cantidad == null) throw new IllegalArgumentException("Transacción sin cantidad");
+            // Mismos obligatorios que TX_NEW: los estados derivados no admiten null en estos campos
+            for (String campo : new String[] {"farmaciaId", "productoNombre", "productoCodigo", "tipoMovimiento"}) {
+                if (campos.get(campo) == null) throw new IllegalArgumentException("Transacción sin " + campo);
+            }
+            transacciones.add(new TransaccionInventario(
+                    campos.get("farmaciaId"),
+                    new Medicamento(campos.get("productoNombre"), campos.get("productoCodigo"), Integer.parseInt(cantidad), ""),
+                    campos.get("tipoMovimiento"), campos.get("responsable"), campos.get("lote"),
+                    campos.get("fechaCaducidad"), tiempo != null ? Long.parseLong(tiempo) : 0L));
+        } while (l.siguienteEs(','));
+        l.esperar(']');
+        return transacciones;
+    }
+
+    // Lector mínimo para el JSON plano de aJson: objetos de textos, números y null
+    private static final class LectorJson {
+        private final String json;
+        private int pos;
+
+        LectorJson(String json) {
+            this.json = json;
+        }
+
+        HashMap<String, String> objeto() {
+            HashMap<String, String> campos = new HashMap<>();
+            esperar('{');
+            if (siguienteEs('}')) return campos;
+            do {
+                String clave = texto();
+                esperar(':');
+                campos.put(clave, valor());
+            } while (siguienteEs(','));
+            esperar('}');
+            return campos;
+        }
+
+        private String valor() {
+            saltarEspacios();
+            if (pos < json.length() && json.charAt(pos) == '"') return texto();
+            if (json.startsWith("null", pos)) {
+                pos += 4;
+                return null;
+            }
+            int inicio = pos;
+            while (pos < json.length() && "+-.0123456789eE".indexOf(json.charAt(pos)) >= 0) pos++;
+            if (inicio == pos) throw error("valor");
+            return json.substring(inicio, pos);
+        }
+
+        private String texto() {
+            esperar('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                if (pos >= json.length()) throw error("fin de texto");
+                char c = json.charAt(pos++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= json.length()) throw error("escape");
+                char e = json.charAt(pos++);
+                switch (e) {
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > json.length()) throw error("escape");
+                        sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: sb.append(e); // \" \\ \/
+                }
+            }
+        }
+
+        void esperar(char c) {
+            saltarEspacios();
+            if (pos >= json.length() || json.charAt(pos) != c) throw error("'" + c + "'");
+            pos++;
+        }
+
+        boolean siguienteEs(char c) {
+            saltarEspacios();
+            if (pos < json.length() && json.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void saltarEspacios() {
+            while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) pos++;
+        }
+
+        private IllegalArgumentException error(String esperado) {
+            return new IllegalArgumentException("JSON de transacciones inválido: se esperaba " + esperado + " en " + pos);
+        }
+    }
+}
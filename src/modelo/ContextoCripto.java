@@ -0,0 +1,201 @@
+package modelo;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.NoSuchPaddingException;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Material criptográfico reutilizable entre bloques.
+ *
+ * - Las llaves PEM se leen y parsean una sola vez por ruta. Cada acierto
+ *   compara la fecha de modificación del archivo con la que tenía antes de
+ *   leerlo, así una rotación durante la carga no deja la llave vieja en caché.
+ *   Un WatchService sobre el directorio además descarta la entrada en cuanto
+ *   el archivo cambia.
+ * - Cipher y KeyGenerator no son thread-safe: hay uno por hilo y transformación,
+ *   creado la primera vez y re-inicializado (init) en cada uso.
+ *
+ * Así el costo por bloque queda en el cifrado en sí. Encriptador delega aquí.
+ */
+public final class ContextoCripto {
+
+    public static final String TRANSFORMACION_AES = "AES"; // ECB: solo para bloques legado
+    public static final String TRANSFORMACION_AES_GCM = "AES/GCM/NoPadding";
+    public static final String TRANSFORMACION_RSA = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+    public static final int BITS_LLAVE_AES = 256;
+
+    private static final ContextoCripto POR_DEFECTO = new ContextoCripto();
+
+    private static final class LlaveCargada<K> {
+        final K llave;
+        final long modificado; // del archivo antes de leerlo; se compara en cada acierto
+
+        LlaveCargada(K llave, long modificado) {
+            this.llave = llave;
+            this.modificado = modificado;
+        }
+    }
+
+    private final ThreadLocal<Cipher> aes = ThreadLocal.withInitial(() -> crearCipher(TRANSFORMACION_AES));
+    private final ThreadLocal<Cipher> aesGcm = ThreadLocal.withInitial(() -> crearCipher(TRANSFORMACION_AES_GCM));
+    private final ThreadLocal<Cipher> rsa = ThreadLocal.withInitial(() -> crearCipher(TRANSFORMACION_RSA));
+    private final ThreadLocal<KeyGenerator> generadorAes = ThreadLocal.withInitial(() -> {
+        try {
+            KeyGenerator kg = KeyGenerator.getInstance("AES");
+            kg.init(BITS_LLAVE_AES);
+            return kg;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("AES no disponible", e);
+        }
+    });
+
+    private final ConcurrentHashMap<Path, LlaveCargada<PublicKey>> publicas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Path, LlaveCargada<PrivateKey>> privadas = new ConcurrentHashMap<>();
+    private final Set<Path> directoriosVigilados = ConcurrentHashMap.newKeySet();
+    private volatile WatchService vigilante;
+    private volatile boolean sinVigilante; // el sistema de archivos no lo soporta: solo se compara la fecha
+
+    /** Contexto compartido por todo el proceso. */
+    public static ContextoCripto porDefecto() {
+        return POR_DEFECTO;
+    }
+
+    // ─── Llaves ───
+
+    public PublicKey llavePublica(String ruta) throws Exception {
+        Path p = normalizar(ruta);
+        LlaveCargada<PublicKey> c = vigente(publicas, p);
+        if (c == null) {
+            vigilar(p);
+            long modificado = Files.getLastModifiedTime(p).toMillis();
+            c = new LlaveCargada<>(Encriptador.leerLlavePublica(ruta), modificado);
+            publicas.put(p, c);
+            System.out.println("🔑 Llave pública cargada: " + p.getFileName());
+        }
+        return c.llave;
+    }
+
+    /** Llave privada PEM sin contraseña. Las cifradas se descifran con Encriptador.cargarLlavePrivada(ruta, contraseña). */
+    public PrivateKey llavePrivada(String ruta) throws Exception {
+        Path p = normalizar(ruta);
+        LlaveCargada<PrivateKey> c = vigente(privadas, p);
+        if (c == null) {
+            vigilar(p);
+            long modificado = Files.getLastModifiedTime(p).toMillis();
+            c = new LlaveCargada<>(Encriptador.leerLlavePrivada(ruta), modificado);
+            privadas.put(p, c);
+            System.out.println("🔑 Llave privada cargada: " + p.getFileName());
+        }
+        return c.llave;
+    }
+
+    /** Olvida las llaves cargadas; la próxima consulta las relee. */
+    public void invalidar() {
+        publicas.clear();
+        privadas.clear();
+    }
+
+    private <K> LlaveCargada<K> vigente(ConcurrentHashMap<Path, LlaveCargada<K>> cache, Path p) throws IOException {
+        LlaveCargada<K> c = cache.get(p);
+        // También con WatchService: su evento puede llegar antes de que la carga en curso guarde la llave vieja
+        if (c != null && Files.getLastModifiedTime(p).toMillis() != c.modificado) {
+            cache.remove(p, c);
+            return null;
+        }
+        return c;
+    }
+
+    private static Path normalizar(String ruta) {
+        return Paths.get(ruta).toAbsolutePath().normalize();
+    }
+
+    // ─── Vigilancia de archivos (rotación de llaves) ───
+
+    private void vigilar(Path archivo) {
+        if (sinVigilante) return;
+        Path dir = archivo.getParent();
+        if (dir == null || directoriosVigilados.contains(dir)) return;
+        synchronized (this) {
+            if (directoriosVigilados.contains(dir)) return;
+            try {
+                if (vigilante == null) {
+                    vigilante = FileSystems.getDefault().newWatchService();
+                    Thread t = new Thread(this::atenderEventos, "Cripto-Llaves");
+                    t.setDaemon(true);
+                    t.start();
+                }
+                dir.register(vigilante, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                directoriosVigilados.add(dir);
+            } catch (IOException | UnsupportedOperationException e) {
+                System.err.println("⚠️ Sin vigilancia de llaves (" + e.getMessage() + "); se comparará la fecha de modificación");
+                sinVigilante = true;
+            }
+        }
+    }
+
+    private void atenderEventos() {
+        try {
+            while (true) {
+                WatchKey clave = vigilante.take();
+                Path dir = (Path) clave.watchable();
+                for (WatchEvent<?> evento : clave.pollEvents()) {
+                    if (evento.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        invalidar();
+                        continue;
+                    }
+                    Path archivo = dir.resolve((Path) evento.context());
+                    boolean habia = publicas.remove(archivo) != null | privadas.remove(archivo) != null;
+                    if (habia) System.out.println("🔄 Llave modificada, se recargará: " + archivo.getFileName());
+                }
+                if (!clave.reset()) directoriosVigilados.remove(dir);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // fin del proceso
+        }
+    }
+
+    // ─── Cipher / KeyGenerator por hilo ───
+
+    /** Cipher AES del hilo actual; llamar a init antes de cada uso. */
+    public Cipher cipherAes() {
+        return aes.get();
+    }
+
+    /** Cipher AES-GCM del hilo actual; cada init necesita un nonce nuevo (ver CifradorFlujo). */
+    public Cipher cipherAesGcm() {
+        return aesGcm.get();
+    }
+
+    /** Cipher RSA-OAEP del hilo actual; llamar a init antes de cada uso. */
+    public Cipher cipherRsa() {
+        return rsa.get();
+    }
+
+    public KeyGenerator generadorAes() {
+        return generadorAes.get();
+    }
+
+    private static Cipher crearCipher(String transformacion) {
+        try {
+            return Cipher.getInstance(transformacion);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException(transformacion + " no disponible", e);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 
 package modelo;
+import java.security.DigestException;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -9,19 +12,186 @@ import java.nio.charset.StandardCharsets;
  */
 public class CriptoUtil {
 
+    public static final int LONGITUD_SHA256 = 32;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // MessageDigest no es thread-safe: uno por hilo, reutilizado entre llamadas
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    });
+
+    // Buffers por hilo para codificar entradas ASCII y formatear hex sin asignar.
+    // El de entrada es de tamaño fijo: una entrada más larga pasa al digest por trozos
+    private static final int TAMANO_BUFFER_ENTRADA = 4096;
+    private static final ThreadLocal<byte[]> BUFFER_ENTRADA = ThreadLocal.withInitial(() -> new byte[TAMANO_BUFFER_ENTRADA]);
+    private static final ThreadLocal<byte[]> BUFFER_DIGEST = ThreadLocal.withInitial(() -> new byte[LONGITUD_SHA256]);
+    private static final ThreadLocal<char[]> BUFFER_HEX = ThreadLocal.withInitial(() -> new char[LONGITUD_SHA256 * 2]);
+
     public static String aplicarSha256(String input) {
+        MessageDigest digest = sha256();
+        int n = input.length();
+        byte[] buffer = BUFFER_ENTRADA.get();
+        // Camino rápido: entradas ASCII (hashes hex, números, base64) se copian tal cual
+        boolean ascii = true;
+        int llenos = 0;
+        for (int i = 0; i < n; i++) {
+            char c = input.charAt(i);
+            if (c >= 0x80) { ascii = false; break; }
+            buffer[llenos++] = (byte) c;
+            if (llenos == buffer.length) {
+                digest.update(buffer, 0, llenos);
+                llenos = 0;
+            }
+        }
+        if (ascii) {
+            digest.update(buffer, 0, llenos);
+        } else {
+            // Puede haber trozos ASCII ya enviados: se reinicia y se codifica todo
+            digest.reset();
+            digest.update(input.getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] hash = BUFFER_DIGEST.get();
+        finalizar(digest, hash, 0);
+        char[] hex = BUFFER_HEX.get();
+        aHex(hash, hex, 0);
+        return new String(hex);
+    }
+
+    /** Digest SHA-256 del hilo actual, ya reiniciado. No compartir entre hilos. */
+    public static MessageDigest sha256() {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        return digest;
+    }
+
+    /** Instancia SHA-256 propia (para estado que vive más allá de una llamada, p.ej. midstate). */
+    public static MessageDigest nuevoSha256() {
+        try {
+            MessageDigest digest = (MessageDigest) SHA256.get().clone();
+            digest.reset();
+            return digest;
+        } catch (CloneNotSupportedException e) {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException("SHA-256 no disponible", ex);
+            }
+        }
+    }
+
+    public static byte[] sha256(byte[] datos) {
+        return sha256().digest(datos);
+    }
+
+    public static byte[] sha256(byte[] datos, int offset, int longitud) {
+        MessageDigest digest = sha256();
+        digest.update(datos, offset, longitud);
+        return digest.digest();
+    }
+
+    /** Consume los bytes restantes de la entrada y devuelve el digest. */
+    public static byte[] sha256(ByteBuffer entrada) {
+        MessageDigest digest = sha256();
+        digest.update(entrada);
+        return digest.digest();
+    }
+
+    /** Igual que sha256(ByteBuffer) pero escribe el digest en salida sin asignar. */
+    public static void sha256(ByteBuffer entrada, ByteBuffer salida) {
+        MessageDigest digest = sha256();
+        digest.update(entrada);
+        byte[] hash = BUFFER_DIGEST.get();
+        finalizar(digest, hash, 0);
+        salida.put(hash);
+    }
+
+    /** Cierra el digest escribiendo los 32 bytes en destino[offset..]. */
+    public static void finalizar(MessageDigest digest, byte[] destino, int offset) {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
+            digest.digest(destino, offset, LONGITUD_SHA256);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String aHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        aHex(bytes, hex, 0);
+        return new String(hex);
+    }
+
+    /** Codifica bytes como hex en minúsculas por tabla, escribiendo en destino[offset..]. */
+    public static void aHex(byte[] bytes, char[] destino, int offset) {
+        for (int i = 0; i < bytes.length; i++) {
+            int v = bytes[i] & 0xff;
+            destino[offset++] = HEX[v >>> 4];
+            destino[offset++] = HEX[v & 0x0f];
+        }
+    }
+
+    public static byte[] desdeHex(String hex) {
+        if ((hex.length() & 1) != 0) {
+            throw new IllegalArgumentException("Hex de longitud impar: " + hex.length());
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int alto = Character.digit(hex.charAt(2 * i), 16);
+            int bajo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (alto < 0 || bajo < 0) {
+                throw new IllegalArgumentException("Carácter no hexadecimal en: " + hex);
             }
-            return hexString.toString();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            bytes[i] = (byte) ((alto << 4) | bajo);
         }
+        return bytes;
+    }
+
+    /**
+     * Comprueba la dificultad sobre el digest crudo: los primeros "cerosHex"
+     * nibbles deben ser 0 (equivale a hash.startsWith("000...")).
+     */
+    public static boolean cumpleDificultad(byte[] digest, int cerosHex) {
+        int bytesCompletos = cerosHex >>> 1;
+        for (int i = 0; i < bytesCompletos; i++) {
+            if (digest[i] != 0) return false;
+        }
+        return (cerosHex & 1) == 0 || (digest[bytesCompletos] & 0xf0) == 0;
+    }
+
+    /** Comprueba que el digest empiece por al menos "bits" bits a cero. */
+    public static boolean cumpleDificultadBits(byte[] digest, int bits) {
+        int bytesCompletos = bits >>> 3;
+        for (int i = 0; i < bytesCompletos; i++) {
+            if (digest[i] != 0) return false;
+        }
+        int resto = bits & 7;
+        return resto == 0 || (digest[bytesCompletos] & (0xff << (8 - resto)) & 0xff) == 0;
+    }
+
+    /** Cantidad de bits cero iniciales del digest. */
+    public static int bitsCeroIniciales(byte[] digest) {
+        int bits = 0;
+        for (byte b : digest) {
+            if (b == 0) { bits += 8; continue; }
+            return bits + Integer.numberOfLeadingZeros(b & 0xff) - 24;
+        }
+        return bits;
+    }
+
+    /**
+     * Escribe el valor decimal ASCII de n (n >= 0) alineado al final de destino
+     * y devuelve la posición del primer dígito. destino debe tener al menos 19 bytes.
+     */
+    public static int escribirDecimal(long n, byte[] destino) {
+        int pos = destino.length;
+        do {
+            destino[--pos] = (byte) ('0' + (n % 10));
+            n /= 10;
+        } while (n != 0);
+        return pos;
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,6 @@
 package modelo;
 
 import javax.crypto.Cipher;
-import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.swing.JPasswordField;
 import javax.swing.JOptionPane;
@@ -22,48 +21,52 @@ import java.security.PublicKey;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Base64;
-import java.util.HashMap;
 
 public class Encriptador {
     
-    // Método para generar una llave simétrica AES (sin cambios)
+    // Cipher, KeyGenerator y llaves ya cargadas, reutilizados entre llamadas (ver ContextoCripto)
+    private static final ContextoCripto CONTEXTO = ContextoCripto.porDefecto();
+
+    // Método para generar una llave simétrica AES (256 bits)
     public static SecretKey generarLlaveAes() throws Exception {
-        KeyGenerator keyGen = KeyGenerator.getInstance("AES");
-        keyGen.init(256); // Tamaño de la llave en bits
-        return keyGen.generateKey();
+        return CONTEXTO.generadorAes().generateKey();
     }
     
-    // Método para encriptar datos con AES (sin cambios)
+    // Método para encriptar datos con AES/ECB de una pieza (formato legado: los bloques nuevos usan CifradorFlujo)
     public static byte[] cifrarAes(byte[] datos, SecretKey llave) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES");
+        Cipher cipher = CONTEXTO.cipherAes();
         cipher.init(Cipher.ENCRYPT_MODE, llave);
         return cipher.doFinal(datos);
     }
     
-    // Método para desencriptar datos con AES (sin cambios)
+    // Método para desencriptar datos con AES/ECB (bloques anteriores a CifradorFlujo)
     public static byte[] descifrarAes(byte[] datosCifrados, SecretKey llave) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES");
+        Cipher cipher = CONTEXTO.cipherAes();
         cipher.init(Cipher.DECRYPT_MODE, llave);
         return cipher.doFinal(datosCifrados);
     }
 
-    // Método para cifrar una llave simétrica con RSA (sin cambios)
+    // Método para cifrar una llave simétrica con RSA
     public static byte[] cifrarLlaveRsa(SecretKey llaveAes, PublicKey llavePublica) throws Exception {
-        Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        Cipher cipher = CONTEXTO.cipherRsa();
         cipher.init(Cipher.ENCRYPT_MODE, llavePublica);
         return cipher.doFinal(llaveAes.getEncoded());
     }
     
-    // Método para descifrar una llave simétrica con RSA (sin cambios)
+    // Método para descifrar una llave simétrica con RSA
     public static SecretKey descifrarLlaveRsa(byte[] llaveCifrada, PrivateKey llavePrivada) throws Exception {
-        Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        Cipher cipher = CONTEXTO.cipherRsa();
         cipher.init(Cipher.DECRYPT_MODE, llavePrivada);
         byte[] llaveDescifrada = cipher.doFinal(llaveCifrada);
         return new javax.crypto.spec.SecretKeySpec(llaveDescifrada, "AES");
     }
 
-    // Cargar llave pública desde un archivo PEM (sin cambios)
+    // Cargar llave pública desde un archivo PEM (se parsea una vez; se recarga si el archivo cambia)
     public static PublicKey cargarLlavePublica(String rutaArchivo) throws Exception {
+        return CONTEXTO.llavePublica(rutaArchivo);
+    }
+
+    static PublicKey leerLlavePublica(String rutaArchivo) throws Exception {
         try (InputStream is = new FileInputStream(rutaArchivo)) {
             byte[] keyBytes = is.readAllBytes();
             String keyPem = new String(keyBytes, StandardCharsets.UTF_8)
@@ -77,8 +80,12 @@ public class Encriptador {
         }
     }
 
-    
+    // Llave privada PEM sin contraseña (se parsea una vez; se recarga si el archivo cambia)
     public static PrivateKey cargarLlavePrivada(String rutaArchivo) throws Exception {
+        return CONTEXTO.llavePrivada(rutaArchivo);
+    }
+
+    static PrivateKey leerLlavePrivada(String rutaArchivo) throws Exception {
         try (InputStream is = new FileInputStream(rutaArchivo)) {
             byte[] keyBytes = is.readAllBytes();
             String keyPem = new String(keyBytes, StandardCharsets.UTF_8);
@@ -119,7 +126,7 @@ public class Encriptador {
                 
             } else {
                 // Si el objeto no es la llave cifrada esperada, lo tratamos como si fuera sin cifrar:
-                return cargarLlavePrivada(rutaArchivo); 
+                return leerLlavePrivada(rutaArchivo); 
             }
         } catch (Exception e) {
             throw new Exception("Error al cargar o descifrar la llave privada (Verifique la contraseña o el formato): " + e.getMessage(), e);
@@ -0,0 +1,43 @@
+package modelo;
+
+import java.io.IOException;
+
+/**
+ * Estado calculado a partir de los bloques de la cadena principal (p.ej. el
+ * inventario). Blockchain lo mantiene al día: aplica cada bloque que entra en
+ * la cadena principal y, en una reorganización, revierte solo los bloques que
+ * salen usando el registro de deshacer que devolvió aplicar.
+ *
+ * Los métodos se llaman desde el hilo escritor de Blockchain, uno a la vez.
+ *
+ * Si implementa exportar/importar, Blockchain lo guarda con la instantánea
+ * del almacén y al registrarlo tras reiniciar solo aplica los bloques
+ * posteriores; si no, se reconstruye desde el génesis.
+ *
+ * @param <D> registro de deshacer que produce aplicar y consume revertir
+ */
+public interface EstadoDerivado<D> {
+
+    /** Incorpora el bloque y devuelve lo necesario para deshacerlo. */
+    D aplicar(Bloque bloque);
+
+    /** Deshace el bloque (siempre el último aplicado) con su registro. */
+    void revertir(Bloque bloque, D deshacer);
+
+    /** Vuelve al estado vacío; después se re-aplica la cadena desde el génesis. */
+    void reiniciar();
+
+    /** El estado serializado para la instantánea, o null si este estado no se persiste. */
+    default byte[] exportar() throws IOException {
+        return null;
+    }
+
+    /**
+     * Carga, sobre el estado recién reiniciado, lo que devolvió exportar.
+     * @return false si este estado no se persiste
+     * @throws IOException si los datos están dañados (entonces se reconstruye)
+     */
+    default boolean importar(byte[] datos) throws IOException {
+        return false;
+    }
+}
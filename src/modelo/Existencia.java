@@ -0,0 +1,41 @@
+package modelo;
+
+/**
+ * Stock de un producto en una farmacia, tal como lo mantiene IndiceInventario.
+ * Es inmutable: cada movimiento reemplaza la instancia en el índice, así quien
+ * la lee desde otro hilo nunca ve una cantidad a medio actualizar.
+ *
+ * No extiende Producto: Producto es mutable (setCantidad) y una subclase que
+ * lo prohibiera rompería su contrato.
+ */
+public final class Existencia {
+
+    private final String farmaciaId;
+    private final String nombre;
+    private final String codigo;
+    private final int cantidad;
+    private final String tipo;
+
+    public Existencia(String farmaciaId, String nombre, String codigo, int cantidad, String tipo) {
+        this.farmaciaId = farmaciaId;
+        this.nombre = nombre;
+        this.codigo = codigo;
+        this.cantidad = cantidad;
+        this.tipo = tipo;
+    }
+
+    public String getFarmaciaId() { return farmaciaId; }
+    public String getNombre() { return nombre; }
+    public String getCodigo() { return codigo; }
+    public int getCantidad() { return cantidad; }
+    public String getTipo() { return tipo; }
+
+    public Existencia conCantidad(int nuevaCantidad) {
+        return new Existencia(farmaciaId, nombre, codigo, nuevaCantidad, tipo);
+    }
+
+    @Override
+    public String toString() {
+        return nombre + " (" + codigo + ") - Cantidad: " + cantidad;
+    }
+}
@@ -0,0 +1,79 @@
+package modelo;
+
+/**
+ * Filtro de Bloom sobre hashes SHA-256 en hexadecimal (hashes de transacción).
+ *
+ * "puedeContener" nunca da falso negativo; con BITS_POR_ELEMENTO = 10 y
+ * K = 7 los falsos positivos rondan el 1%. Como el hash ya es uniforme, las
+ * K posiciones salen de sus primeros 128 bits por doble hashing (h1 + i*h2),
+ * sin volver a hashear.
+ */
+public final class FiltroBloom {
+
+    public static final int BITS_POR_ELEMENTO = 10;
+    public static final int K = 7;
+
+    private final long[] bits;
+
+    private FiltroBloom(long[] bits) {
+        this.bits = bits;
+    }
+
+    /** Filtro dimensionado para "elementos" entradas. */
+    public static FiltroBloom para(int elementos) {
+        int palabras = Math.max(1, (elementos * BITS_POR_ELEMENTO + 63) / 64);
+        return new FiltroBloom(new long[palabras]);
+    }
+
+    public static FiltroBloom de(Iterable<String> hashesHex, int elementos) {
+        FiltroBloom f = para(elementos);
+        for (String h : hashesHex) f.agregar(h);
+        return f;
+    }
+
+    public void agregar(String hashHex) {
+        long h1 = mitad(hashHex, 0);
+        long h2 = mitad(hashHex, 16) | 1;
+        long m = bits.length * 64L;
+        for (int i = 0; i < K; i++) {
+            long pos = Long.remainderUnsigned(h1 + i * h2, m);
+            bits[(int) (pos >>> 6)] |= 1L << pos;
+        }
+    }
+
+    public boolean puedeContener(String hashHex) {
+        long h1 = mitad(hashHex, 0);
+        long h2 = mitad(hashHex, 16) | 1;
+        long m = bits.length * 64L;
+        for (int i = 0; i < K; i++) {
+            long pos = Long.remainderUnsigned(h1 + i * h2, m);
+            if ((bits[(int) (pos >>> 6)] & (1L << pos)) == 0) return false;
+        }
+        return true;
+    }
+
+    /** Tamaño del filtro en bytes. */
+    public int getBytes() {
+        return bits.length * 8;
+    }
+
+    // 64 bits del hash desde el carácter "desde"; textos que no son hex se mezclan con hashCode
+    private static long mitad(String hashHex, int desde) {
+        if (hashHex.length() >= desde + 16) {
+            long v = 0;
+            for (int i = desde; i < desde + 16; i++) {
+                int d = Character.digit(hashHex.charAt(i), 16);
+                if (d < 0) return mezclar(hashHex.hashCode() + desde);
+                v = (v << 4) | d;
+            }
+            return v;
+        }
+        return mezclar(hashHex.hashCode() + desde);
+    }
+
+    private static long mezclar(long x) {
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return x ^ (x >>> 33);
+    }
+}
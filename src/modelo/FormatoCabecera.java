@@ -0,0 +1,123 @@
+package modelo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Formato binario versionado de la cabecera de un bloque.
+ *
+ * Versión 1 (84 bytes, big-endian):
+ *   [0..4)   versión (int)
+ *   [4..36)  hash anterior (32 bytes crudos)
+ *   [36..68) digest del contenido (llave AES cifrada + datos cifrados)
+ *   [68..76) tiempo de creación (long)
+ *   [76..84) nonce (long)  <- siempre al final
+ *
+ * Versión 2 (misma disposición): en [36..68) va la raíz del ArbolMerkle de
+ * transacciones + datos cifrados + llave, lo que permite probar la inclusión
+ * de una transacción sin el bloque completo (ver Bloque.generarPruebaTransaccion).
+ *
+ * Como el nonce va al final, los primeros 76 bytes son constantes durante el
+ * minado: se procesan una vez y el estado del digest se clona por cada nonce,
+ * así que cada intento cuesta lo mismo sin importar el tamaño del bloque.
+ *
+ * Versión 0 (legado) es el hash sobre el String concatenado; se conserva para
+ * que las cadenas existentes sigan validando.
+ */
+public final class FormatoCabecera {
+
+    public static final int VERSION_LEGADO = 0;
+    public static final int VERSION_BINARIA = 1;
+    public static final int VERSION_MERKLE = 2;
+    /** Versión con la que se minan los bloques nuevos. */
+    public static final int VERSION_ACTUAL = VERSION_MERKLE;
+
+    public static final int LONGITUD_PREFIJO = 4 + 32 + 32 + 8;
+    public static final int LONGITUD = LONGITUD_PREFIJO + 8;
+
+    private FormatoCabecera() {}
+
+    public static boolean esVersionConocida(int version) {
+        return version >= VERSION_LEGADO && version <= VERSION_ACTUAL;
+    }
+
+    /**
+     * Regla de consenso para un bloque sobre un padre de versión versionPadre:
+     * nada legado por encima del génesis (v1), porque su hash y su PoW no se
+     * pueden verificar, y ninguna versión menor que la del padre.
+     */
+    public static boolean esVersionValidaSobre(int version, int versionPadre) {
+        return esVersionConocida(version) && version >= VERSION_BINARIA && version >= versionPadre;
+    }
+
+    /** Cabecera completa (prefijo + nonce). */
+    public static byte[] codificar(int version, String hashAnterior, byte[] digestContenido,
+                                   long tiempoCreacion, long nonce) {
+        ByteBuffer buffer = ByteBuffer.allocate(LONGITUD);
+        escribirPrefijo(buffer, version, hashAnterior, digestContenido, tiempoCreacion);
+        buffer.putLong(nonce);
+        return buffer.array();
+    }
+
+    /** Los 76 bytes constantes de la cabecera (todo salvo el nonce). */
+    public static byte[] prefijo(int version, String hashAnterior, byte[] digestContenido, long tiempoCreacion) {
+        ByteBuffer buffer = ByteBuffer.allocate(LONGITUD_PREFIJO);
+        escribirPrefijo(buffer, version, hashAnterior, digestContenido, tiempoCreacion);
+        return buffer.array();
+    }
+
+    private static void escribirPrefijo(ByteBuffer buffer, int version, String hashAnterior,
+                                        byte[] digestContenido, long tiempoCreacion) {
+        buffer.putInt(version);
+        buffer.put(hashAnteriorCrudo(hashAnterior));
+        buffer.put(digestContenido);
+        buffer.putLong(tiempoCreacion);
+    }
+
+    /**
+     * Hash anterior como 32 bytes. Los hashes normales son hex de 64 caracteres;
+     * cualquier otro valor (p.ej. "0" del génesis) se reduce con SHA-256.
+     */
+    public static byte[] hashAnteriorCrudo(String hashAnterior) {
+        String h = hashAnterior != null ? hashAnterior : "";
+        if (h.length() == 64) {
+            try {
+                return CriptoUtil.desdeHex(h);
+            } catch (IllegalArgumentException noHex) {
+                // cae al caso general
+            }
+        }
+        return CriptoUtil.sha256(h.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Digest del contenido: cada campo va prefijado por su longitud para evitar ambigüedades. */
+    public static byte[] digestContenido(String llaveAesEncriptada, List<String> datosEncriptados) {
+        MessageDigest sha = CriptoUtil.sha256();
+        actualizarConLongitud(sha, llaveAesEncriptada != null ? llaveAesEncriptada : "");
+        sha.update(enteroABytes(datosEncriptados.size()));
+        for (String dato : datosEncriptados) {
+            actualizarConLongitud(sha, dato);
+        }
+        return sha.digest();
+    }
+
+    private static void actualizarConLongitud(MessageDigest sha, String valor) {
+        byte[] bytes = valor.getBytes(StandardCharsets.UTF_8);
+        sha.update(enteroABytes(bytes.length));
+        sha.update(bytes);
+    }
+
+    private static byte[] enteroABytes(int v) {
+        return new byte[] { (byte) (v >>> 24), (byte) (v >>> 16), (byte) (v >>> 8), (byte) v };
+    }
+
+    /** Escribe el nonce big-endian en destino[offset..offset+8). */
+    public static void escribirNonce(long nonce, byte[] destino, int offset) {
+        for (int i = 7; i >= 0; i--) {
+            destino[offset + i] = (byte) nonce;
+            nonce >>>= 8;
+        }
+    }
+}
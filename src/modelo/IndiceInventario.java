@@ -0,0 +1,162 @@
+package modelo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inventario materializado por (farmacia, código de producto).
+ *
+ * Se registra en Blockchain como EstadoDerivado: cada bloque que entra en la
+ * cadena principal se aplica en O(transacciones del bloque) y las consultas
+ * de stock son O(1), sin recorrer la cadena. El registro de deshacer de cada
+ * bloque guarda la existencia previa de cada clave que tocó.
+ *
+ * Lo escribe solo el hilo escritor de Blockchain; se puede leer desde
+ * cualquier hilo. Se exporta con la instantánea del almacén.
+ */
+public class IndiceInventario implements EstadoDerivado<List<IndiceInventario.Cambio>> {
+
+    /** Valor anterior de una clave tocada por un bloque (null si no existía). */
+    static final class Cambio {
+        final String farmaciaId;
+        final String codigo;
+        final Existencia anterior;
+
+        Cambio(String farmaciaId, String codigo, Existencia anterior) {
+            this.farmaciaId = farmaciaId;
+            this.codigo = codigo;
+            this.anterior = anterior;
+        }
+    }
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Existencia>> porFarmacia = new ConcurrentHashMap<>();
+
+    /** Efecto de un movimiento sobre el stock: ENTRADA suma, SALIDA y AJUSTE restan. */
+    public static int delta(TransaccionInventario t) {
+        int cantidad = t.getProducto().getCantidad();
+        return TransaccionInventario.ENTRADA.equals(t.getTipoMovimiento()) ? cantidad : -cantidad;
+    }
+
+    @Override
+    public List<Cambio> aplicar(Bloque bloque) {
+        List<TransaccionInventario> transacciones = bloque.getTransacciones();
+        if (transacciones.isEmpty()) return Collections.emptyList();
+
+        ArrayList<Cambio> cambios = new ArrayList<>(transacciones.size());
+        for (TransaccionInventario t : transacciones) {
+            String codigo = t.getProducto().getCodigo();
+            ConcurrentHashMap<String, Existencia> existencias =
+                    porFarmacia.computeIfAbsent(t.getFarmaciaId(), k -> new ConcurrentHashMap<>());
+            Existencia anterior = existencias.get(codigo);
+            cambios.add(new Cambio(t.getFarmaciaId(), codigo, anterior));
+
+            Existencia nueva = anterior == null
+                    ? new Existencia(t.getFarmaciaId(), t.getProducto().getNombre(), codigo, delta(t), t.getProducto().getTipo())
+                    : anterior.conCantidad(anterior.getCantidad() + delta(t));
+            existencias.put(codigo, nueva);
+        }
+        return cambios;
+    }
+
+    @Override
+    public void revertir(Bloque bloque, List<Cambio> cambios) {
+        for (int i = cambios.size() - 1; i >= 0; i--) {
+            Cambio c = cambios.get(i);
+            ConcurrentHashMap<String, Existencia> existencias = porFarmacia.get(c.farmaciaId);
+            if (c.anterior == null) {
+                existencias.remove(c.codigo);
+            } else {
+                existencias.put(c.codigo, c.anterior);
+            }
+        }
+    }
+
+    @Override
+    public void reiniciar() {
+        porFarmacia.clear();
+    }
+
+    @Override
+    public byte[] exportar() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        escribirExistencias(new DataOutputStream(bytes), porFarmacia);
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public boolean importar(byte[] datos) throws IOException {
+        for (Existencia e : leerExistencias(new DataInputStream(new ByteArrayInputStream(datos)))) {
+            porFarmacia.computeIfAbsent(e.getFarmaciaId(), k -> new ConcurrentHashMap<>()).put(e.getCodigo(), e);
+        }
+        return true;
+    }
+
+    // Formato compartido con PuntosControlInventario:
+    //   nFarmacias { farmacia | n { codigo | nombre? | tipo? | cantidad } }   (? = puede faltar)
+    static void escribirExistencias(DataOutputStream out, Map<String, ? extends Map<String, Existencia>> inventario)
+            throws IOException {
+        out.writeInt(inventario.size());
+        for (Map.Entry<String, ? extends Map<String, Existencia>> f : inventario.entrySet()) {
+            out.writeUTF(f.getKey());
+            out.writeInt(f.getValue().size());
+            for (Existencia e : f.getValue().values()) {
+                out.writeUTF(e.getCodigo());
+                escribirOpcional(out, e.getNombre());
+                escribirOpcional(out, e.getTipo());
+                out.writeInt(e.getCantidad());
+            }
+        }
+        out.flush();
+    }
+
+    static List<Existencia> leerExistencias(DataInputStream in) throws IOException {
+        ArrayList<Existencia> existencias = new ArrayList<>();
+        int farmacias = in.readInt();
+        for (int f = 0; f < farmacias; f++) {
+            String farmacia = in.readUTF();
+            int n = in.readInt();
+            for (int k = 0; k < n; k++) {
+                String codigo = in.readUTF();
+                String nombre = leerOpcional(in);
+                String tipo = leerOpcional(in);
+                existencias.add(new Existencia(farmacia, nombre, codigo, in.readInt(), tipo));
+            }
+        }
+        return existencias;
+    }
+
+    static void escribirOpcional(DataOutputStream out, String texto) throws IOException {
+        out.writeBoolean(texto != null);
+        if (texto != null) out.writeUTF(texto);
+    }
+
+    static String leerOpcional(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /** Existencia del producto en la farmacia, o null si nunca tuvo movimientos. */
+    public Existencia getExistencia(String farmaciaId, String codigo) {
+        ConcurrentHashMap<String, Existencia> existencias = porFarmacia.get(farmaciaId);
+        return existencias == null ? null : existencias.get(codigo);
+    }
+
+    public int getCantidad(String farmaciaId, String codigo) {
+        Existencia e = getExistencia(farmaciaId, codigo);
+        return e == null ? 0 : e.getCantidad();
+    }
+
+    /** Existencias actuales de la farmacia (vista de solo lectura). */
+    public Collection<Existencia> getExistencias(String farmaciaId) {
+        ConcurrentHashMap<String, Existencia> existencias = porFarmacia.get(farmaciaId);
+        return existencias == null ? Collections.emptyList() : Collections.unmodifiableCollection(existencias.values());
+    }
+}
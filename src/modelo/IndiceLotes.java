@@ -0,0 +1,206 @@
+package modelo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Índices secundarios por lote y por caducidad.
+ *
+ * - Por lote: lote -> (farmacia, producto) -> LoteInventario, para rastrear un
+ *   lote en todas las farmacias sin recorrer la cadena.
+ * - Por caducidad: farmacia -> mapa ordenado día de época -> lotes, para
+ *   responder "qué lotes caducan en los próximos N días" con un subMap
+ *   (O(log n) + lotes devueltos).
+ *
+ * Como IndiceInventario, se mantiene como EstadoDerivado de Blockchain (y se
+ * exporta con la instantánea): la fecha DD/MM/AAAA se parsea una sola vez, al
+ * aplicar el bloque.
+ */
+public class IndiceLotes implements EstadoDerivado<List<IndiceLotes.Cambio>> {
+
+    private static final DateTimeFormatter FORMATO_FECHA =
+            DateTimeFormatter.ofPattern("dd/MM/uuuu").withResolverStyle(ResolverStyle.STRICT);
+
+    /** Registro de un lote antes del bloque (null si no existía). */
+    static final class Cambio {
+        final String lote;
+        final String clave;
+        final LoteInventario anterior;
+        final LoteInventario nuevo;
+
+        Cambio(String lote, String clave, LoteInventario anterior, LoteInventario nuevo) {
+            this.lote = lote;
+            this.clave = clave;
+            this.anterior = anterior;
+            this.nuevo = nuevo;
+        }
+    }
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, LoteInventario>> porLote = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Integer, ConcurrentHashMap<String, LoteInventario>>>
+            caducidadPorFarmacia = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LoteInventario> VACIO = new ConcurrentHashMap<>();
+
+    /** Día de época de una fecha DD/MM/AAAA, o SIN_CADUCIDAD si falta o no es válida. */
+    public static int diaEpoca(String fecha) {
+        if (fecha == null || fecha.isBlank()) return LoteInventario.SIN_CADUCIDAD;
+        try {
+            return (int) LocalDate.parse(fecha.trim(), FORMATO_FECHA).toEpochDay();
+        } catch (DateTimeParseException e) {
+            return LoteInventario.SIN_CADUCIDAD;
+        }
+    }
+
+    @Override
+    public List<Cambio> aplicar(Bloque bloque) {
+        List<TransaccionInventario> transacciones = bloque.getTransacciones();
+        if (transacciones.isEmpty()) return Collections.emptyList();
+
+        ArrayList<Cambio> cambios = new ArrayList<>(transacciones.size());
+        for (TransaccionInventario t : transacciones) {
+            String lote = t.getLote() == null ? "" : t.getLote();
+            String codigo = t.getProducto().getCodigo();
+            String clave = clave(t.getFarmaciaId(), codigo);
+            int dia = diaEpoca(t.getFechaCaducidad());
+
+            LoteInventario anterior = porLote.getOrDefault(lote, VACIO).get(clave);
+            LoteInventario nuevo;
+            if (anterior == null) {
+                nuevo = new LoteInventario(t.getFarmaciaId(), lote, codigo, t.getProducto().getNombre(),
+                        dia, IndiceInventario.delta(t));
+            } else {
+                // Una fecha nueva y válida corrige la del lote; si no trae fecha se conserva
+                nuevo = anterior.con(dia != LoteInventario.SIN_CADUCIDAD ? dia : anterior.getDiaCaducidad(),
+                        anterior.getCantidad() + IndiceInventario.delta(t));
+            }
+            reemplazar(lote, clave, anterior, nuevo);
+            cambios.add(new Cambio(lote, clave, anterior, nuevo));
+        }
+        return cambios;
+    }
+
+    @Override
+    public void revertir(Bloque bloque, List<Cambio> cambios) {
+        for (int i = cambios.size() - 1; i >= 0; i--) {
+            Cambio c = cambios.get(i);
+            reemplazar(c.lote, c.clave, c.nuevo, c.anterior);
+        }
+    }
+
+    @Override
+    public void reiniciar() {
+        porLote.clear();
+        caducidadPorFarmacia.clear();
+    }
+
+    // n { lote | farmacia | código | nombre? | día de caducidad | cantidad }; el de caducidad se rearma
+    @Override
+    public byte[] exportar() throws IOException {
+        ArrayList<LoteInventario> lotes = new ArrayList<>();
+        for (ConcurrentHashMap<String, LoteInventario> delLote : porLote.values()) lotes.addAll(delLote.values());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(lotes.size());
+        for (LoteInventario l : lotes) {
+            out.writeUTF(l.getLote());
+            out.writeUTF(l.getFarmaciaId());
+            out.writeUTF(l.getCodigo());
+            IndiceInventario.escribirOpcional(out, l.getNombre());
+            out.writeInt(l.getDiaCaducidad());
+            out.writeInt(l.getCantidad());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public boolean importar(byte[] datos) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(datos));
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            String lote = in.readUTF();
+            String farmaciaId = in.readUTF();
+            String codigo = in.readUTF();
+            String nombre = IndiceInventario.leerOpcional(in);
+            LoteInventario l = new LoteInventario(farmaciaId, lote, codigo, nombre, in.readInt(), in.readInt());
+            reemplazar(lote, clave(farmaciaId, codigo), null, l);
+        }
+        return true;
+    }
+
+    /**
+     * Lotes con stock en la farmacia que caducan entre hoy y dentro de "dias"
+     * días (inclusive), del más próximo al más lejano.
+     */
+    public List<LoteInventario> lotesPorCaducar(String farmaciaId, int dias) {
+        LocalDate hoy = LocalDate.now();
+        return lotesPorCaducar(farmaciaId, hoy, hoy.plusDays(dias));
+    }
+
+    public List<LoteInventario> lotesPorCaducar(String farmaciaId, LocalDate desde, LocalDate hasta) {
+        ConcurrentSkipListMap<Integer, ConcurrentHashMap<String, LoteInventario>> porDia = caducidadPorFarmacia.get(farmaciaId);
+        if (porDia == null) return Collections.emptyList();
+        ArrayList<LoteInventario> resultado = new ArrayList<>();
+        for (ConcurrentHashMap<String, LoteInventario> lotes
+                : porDia.subMap((int) desde.toEpochDay(), true, (int) hasta.toEpochDay(), true).values()) {
+            for (LoteInventario l : lotes.values()) {
+                if (l.getCantidad() > 0) resultado.add(l);
+            }
+        }
+        return resultado;
+    }
+
+    /** El lote en todas las farmacias (y productos) donde tuvo movimientos. */
+    public List<LoteInventario> rastrearLote(String lote) {
+        return new ArrayList<>(porLote.getOrDefault(lote, VACIO).values());
+    }
+
+    private static String clave(String farmaciaId, String codigo) {
+        return farmaciaId + '\u0000' + codigo;
+    }
+
+    // Cambia "anterior" por "nuevo" (cualquiera puede ser null) en ambos índices
+    private void reemplazar(String lote, String clave, LoteInventario anterior, LoteInventario nuevo) {
+        if (anterior != null) {
+            ConcurrentHashMap<String, LoteInventario> delLote = porLote.get(lote);
+            delLote.remove(clave);
+            if (delLote.isEmpty()) porLote.remove(lote);
+            quitarCaducidad(anterior);
+        }
+        if (nuevo != null) {
+            porLote.computeIfAbsent(lote, k -> new ConcurrentHashMap<>()).put(clave, nuevo);
+            if (nuevo.tieneCaducidad()) {
+                caducidadPorFarmacia.computeIfAbsent(nuevo.getFarmaciaId(), k -> new ConcurrentSkipListMap<>())
+                        .computeIfAbsent(nuevo.getDiaCaducidad(), k -> new ConcurrentHashMap<>())
+                        .put(claveCaducidad(nuevo), nuevo);
+            }
+        }
+    }
+
+    private void quitarCaducidad(LoteInventario l) {
+        if (!l.tieneCaducidad()) return;
+        ConcurrentSkipListMap<Integer, ConcurrentHashMap<String, LoteInventario>> porDia = caducidadPorFarmacia.get(l.getFarmaciaId());
+        if (porDia == null) return;
+        Map<String, LoteInventario> delDia = porDia.get(l.getDiaCaducidad());
+        if (delDia == null) return;
+        delDia.remove(claveCaducidad(l));
+        if (delDia.isEmpty()) porDia.remove(l.getDiaCaducidad());
+    }
+
+    private static String claveCaducidad(LoteInventario l) {
+        return l.getLote() + '\u0000' + l.getCodigo();
+    }
+}
@@ -0,0 +1,115 @@
+package modelo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Índice hash de transacción -> (altura del bloque, posición en el bloque).
+ *
+ * Se mantiene como EstadoDerivado de Blockchain a partir de los hashes de
+ * transacción de cada bloque (que viajan y se guardan con él), así que cubre
+ * también bloques replicados o recargados de disco cuyo contenido sigue
+ * cifrado. Los nodos que no lo registran pueden usar
+ * Blockchain.buscarAlturaTransaccion, que descarta bloques con su FiltroBloom.
+ *
+ * También sirve para rechazar en la admisión una transacción ya confirmada.
+ * Se exporta con la instantánea del almacén.
+ */
+public class IndiceTransacciones implements EstadoDerivado<List<String>> {
+
+    /** Dónde quedó confirmada una transacción. */
+    public static final class Ubicacion {
+        private final int altura;
+        private final int posicion;
+        private final String hashBloque;
+
+        Ubicacion(int altura, int posicion, String hashBloque) {
+            this.altura = altura;
+            this.posicion = posicion;
+            this.hashBloque = hashBloque;
+        }
+
+        public int getAltura() { return altura; }
+        public int getPosicion() { return posicion; }
+        public String getHashBloque() { return hashBloque; }
+
+        @Override
+        public String toString() {
+            return "bloque #" + altura + " posición " + posicion;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Ubicacion> porHash = new ConcurrentHashMap<>();
+
+    @Override
+    public List<String> aplicar(Bloque bloque) {
+        List<String> hashes = bloque.getHashesTransacciones();
+        if (hashes.isEmpty()) return Collections.emptyList();
+        ArrayList<String> agregados = new ArrayList<>(hashes.size());
+        for (int i = 0; i < hashes.size(); i++) {
+            // Si ya estaba confirmada se conserva la primera aparición
+            if (porHash.putIfAbsent(hashes.get(i), new Ubicacion(bloque.getIndex(), i, bloque.getHash())) == null) {
+                agregados.add(hashes.get(i));
+            }
+        }
+        return agregados;
+    }
+
+    @Override
+    public void revertir(Bloque bloque, List<String> agregados) {
+        for (String h : agregados) porHash.remove(h);
+    }
+
+    @Override
+    public void reiniciar() {
+        porHash.clear();
+    }
+
+    // n { hash | altura | posición | hash del bloque }
+    @Override
+    public byte[] exportar() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(porHash.size());
+        for (Map.Entry<String, Ubicacion> e : porHash.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeInt(e.getValue().altura);
+            out.writeInt(e.getValue().posicion);
+            out.writeUTF(e.getValue().hashBloque);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public boolean importar(byte[] datos) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(datos));
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            String hash = in.readUTF();
+            porHash.put(hash, new Ubicacion(in.readInt(), in.readInt(), in.readUTF()));
+        }
+        return true;
+    }
+
+    /** Ubicación de la transacción en la cadena principal, o null. */
+    public Ubicacion buscar(String hashTransaccion) {
+        return porHash.get(hashTransaccion);
+    }
+
+    public boolean estaConfirmada(String hashTransaccion) {
+        return porHash.containsKey(hashTransaccion);
+    }
+
+    public int getTotal() {
+        return porHash.size();
+    }
+}
@@ -2,6 +2,7 @@ package modelo;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.file.Paths;
 import java.security.Security;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import java.security.PublicKey;
@@ -15,13 +16,18 @@ import java.time.Instant;
  * - Espera a que los puertos estén up (replicación + web).
  * - Registra peers directamente vía getServicioReplicacion().registrarPeer(...)
  *   evitando así dependencia de comandos TCP de registro.
+ * - Cada servidor persiste su cadena en datos/<nombre> (AlmacenBloques); al
+ *   reiniciar carga la instantánea + la cola en vez de empezar de cero.
+ * - Reporta el tiempo hasta servir peticiones (puerto arriba) de cada servidor.
  */
 public class IniciarServidoresReplicados {
 
     private static final String RUTA_LLAVE_PUBLICA = "public_key_descifrada.pem";
     private static final String RUTA_LLAVE_PRIVADA = "private_key_descifrada.pem";
+    private static final String DIR_DATOS = System.getProperty("servidores.dirDatos", "datos");
 
     public static void main(String[] args) {
+        final long inicio = System.nanoTime();
         try {
             System.out.println("╔═══════════════════════════════════════════╗");
             System.out.println("║  🚀 INICIANDO 3 SERVIDORES REPLICADOS    ║");
@@ -38,12 +44,13 @@ public class IniciarServidoresReplicados {
             PrivateKey privKey = Encriptador.cargarLlavePrivada(RUTA_LLAVE_PRIVADA);
             System.out.println("✅ Llaves cargadas\n");
 
-            // Crear blockchains independientes (ajusta dificultad si quieres)
-            System.out.println("⛓️  Creando blockchains...");
-            Blockchain bc1 = new Blockchain(4);
-            Blockchain bc2 = new Blockchain(4);
-            Blockchain bc3 = new Blockchain(4);
-            System.out.println("✅ Blockchains creados\n");
+            // Abrir la cadena persistida de cada servidor (génesis fijo si está vacía)
+            System.out.println("⛓️  Cargando blockchains...");
+            long[] cargaMs = new long[3];
+            Blockchain bc1 = abrirBlockchain("Servidor-1", cargaMs, 0);
+            Blockchain bc2 = abrirBlockchain("Servidor-2", cargaMs, 1);
+            Blockchain bc3 = abrirBlockchain("Servidor-3", cargaMs, 2);
+            System.out.println("✅ Blockchains cargados\n");
 
             System.out.println("🚀 Iniciando servidores en hilos separados...\n");
 
@@ -66,8 +73,6 @@ public class IniciarServidoresReplicados {
             t1.setDaemon(false);
             t1.start();
 
-            Thread.sleep(800);
-
             Thread t2 = new Thread(() -> {
                 try {
                     System.out.println("🟢 [HILO-2] Iniciando Servidor-2 en puerto 8090...");
@@ -81,8 +86,6 @@ public class IniciarServidoresReplicados {
             t2.setDaemon(false);
             t2.start();
 
-            Thread.sleep(800);
-
             Thread t3 = new Thread(() -> {
                 try {
                     System.out.println("🟢 [HILO-3] Iniciando Servidor-3 en puerto 8100...");
@@ -98,18 +101,29 @@ public class IniciarServidoresReplicados {
 
             // Esperar a que los servidores abran sus puertos (replicación + web)
             System.out.println("\n⏳ Esperando que puertos de replicación y web estén arriba...");
-            boolean s1Ready = esperarPuertoArriba("localhost", 8080, 20, 250);
-            boolean s1WebReady = esperarPuertoArriba("localhost", 8081, 20, 250);
-            boolean s2Ready = esperarPuertoArriba("localhost", 8090, 20, 250);
-            boolean s2WebReady = esperarPuertoArriba("localhost", 8091, 20, 250);
-            boolean s3Ready = esperarPuertoArriba("localhost", 8100, 20, 250);
-            boolean s3WebReady = esperarPuertoArriba("localhost", 8101, 20, 250);
+            // Sondeo fino (10 ms) para que el tiempo hasta servir sea representativo
+            boolean s1Ready = esperarPuertoArriba("localhost", 8080, 2000, 10);
+            long s1Ms = msDesde(inicio);
+            boolean s1WebReady = esperarPuertoArriba("localhost", 8081, 2000, 10);
+            boolean s2Ready = esperarPuertoArriba("localhost", 8090, 2000, 10);
+            long s2Ms = msDesde(inicio);
+            boolean s2WebReady = esperarPuertoArriba("localhost", 8091, 2000, 10);
+            boolean s3Ready = esperarPuertoArriba("localhost", 8100, 2000, 10);
+            long s3Ms = msDesde(inicio);
+            boolean s3WebReady = esperarPuertoArriba("localhost", 8101, 2000, 10);
+            long todosMs = msDesde(inicio);
 
             System.out.println("\n📣 Estado de readiness:");
             System.out.println("  Servidor-1 replicación: " + (s1Ready ? "UP" : "NO") + " | web: " + (s1WebReady ? "UP" : "NO"));
             System.out.println("  Servidor-2 replicación: " + (s2Ready ? "UP" : "NO") + " | web: " + (s2WebReady ? "UP" : "NO"));
             System.out.println("  Servidor-3 replicación: " + (s3Ready ? "UP" : "NO") + " | web: " + (s3WebReady ? "UP" : "NO"));
 
+            System.out.println("\n⏱️  Tiempo hasta servir (desde el arranque del proceso):");
+            System.out.println("  Servidor-1: " + s1Ms + " ms (carga de cadena " + cargaMs[0] + " ms, " + bc1.getCadena().size() + " bloques)");
+            System.out.println("  Servidor-2: " + s2Ms + " ms (carga de cadena " + cargaMs[1] + " ms, " + bc2.getCadena().size() + " bloques)");
+            System.out.println("  Servidor-3: " + s3Ms + " ms (carga de cadena " + cargaMs[2] + " ms, " + bc3.getCadena().size() + " bloques)");
+            System.out.println("  Todos los puertos arriba: " + todosMs + " ms");
+
             // Solo registrar peers si los servidores están listos (al menos puerto replicación)
             if (s1Ready && s2Ready && s3Ready) {
                 System.out.println("\n🔗 Registrando peers directamente en los servicios (por referencia)...");
@@ -151,6 +165,20 @@ public class IniciarServidoresReplicados {
         }
     }
 
+    /** Abre datos/<nombre> y reconstruye su cadena; guarda la instantánea al salir. */
+    private static Blockchain abrirBlockchain(String nombre, long[] cargaMs, int i) throws IOException {
+        long t0 = System.nanoTime();
+        AlmacenBloques almacen = new AlmacenBloques(Paths.get(DIR_DATOS, nombre));
+        Blockchain bc = new Blockchain(AjusteDificultad.porDefecto(4), almacen);
+        Runtime.getRuntime().addShutdownHook(new Thread(bc::cerrar, "Cierre-" + nombre));
+        cargaMs[i] = msDesde(t0);
+        return bc;
+    }
+
+    private static long msDesde(long inicioNanos) {
+        return (System.nanoTime() - inicioNanos) / 1_000_000;
+    }
+
     /**
      * Intenta conectar por TCP al host:port repetidamente.
      * @param host host (ej: "localhost")
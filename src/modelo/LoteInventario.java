@@ -0,0 +1,56 @@
+package modelo;
+
+import java.time.LocalDate;
+
+/**
+ * Stock de un lote de un producto en una farmacia, como lo mantiene IndiceLotes.
+ * La caducidad va como día de época (LocalDate.toEpochDay) para ordenar y
+ * comparar sin volver a parsear el texto DD/MM/AAAA. Es inmutable.
+ */
+public final class LoteInventario {
+
+    /** La transacción no traía una fecha de caducidad válida. */
+    public static final int SIN_CADUCIDAD = Integer.MIN_VALUE;
+
+    private final String farmaciaId;
+    private final String lote;
+    private final String codigo;
+    private final String nombre;
+    private final int diaCaducidad;
+    private final int cantidad;
+
+    public LoteInventario(String farmaciaId, String lote, String codigo, String nombre, int diaCaducidad, int cantidad) {
+        this.farmaciaId = farmaciaId;
+        this.lote = lote;
+        this.codigo = codigo;
+        this.nombre = nombre;
+        this.diaCaducidad = diaCaducidad;
+        this.cantidad = cantidad;
+    }
+
+    public String getFarmaciaId() { return farmaciaId; }
+    public String getLote() { return lote; }
+    public String getCodigo() { return codigo; }
+    public String getNombre() { return nombre; }
+    public int getDiaCaducidad() { return diaCaducidad; }
+    public int getCantidad() { return cantidad; }
+
+    public boolean tieneCaducidad() {
+        return diaCaducidad != SIN_CADUCIDAD;
+    }
+
+    /** null si el lote no tiene fecha de caducidad. */
+    public LocalDate getFechaCaducidad() {
+        return tieneCaducidad() ? LocalDate.ofEpochDay(diaCaducidad) : null;
+    }
+
+    LoteInventario con(int nuevoDiaCaducidad, int nuevaCantidad) {
+        return new LoteInventario(farmaciaId, lote, codigo, nombre, nuevoDiaCaducidad, nuevaCantidad);
+    }
+
+    @Override
+    public String toString() {
+        return farmaciaId + " | Lote " + lote + " | " + nombre + " (" + codigo + ") - Cantidad: " + cantidad
+                + " - Caduca: " + (tieneCaducidad() ? getFechaCaducidad() : "sin fecha");
+    }
+}
@@ -0,0 +1,357 @@
+package modelo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * Transacciones pendientes de entrar en un bloque (reemplaza al "bloque
+ * pendiente"). Es seguro entre hilos y descarta duplicados por hash.
+ *
+ * Sella un lote (se lo entrega al "sellador", que lo mina) cuando se cumple
+ * lo primero de:
+ *   - maxTransacciones pendientes,
+ *   - maxBytes pendientes (tamaño estimado del JSON de las transacciones),
+ *   - la transacción más antigua lleva edadMaximaMs esperando.
+ * Así con carga sostenida los bloques salen llenos y con poca carga ninguna
+ * transacción espera más de edadMaximaMs.
+ *
+ * Hay como mucho un lote en vuelo: hasta que el dueño llama a confirmarLote
+ * (el bloque entró en la cadena) o devolverLote (falló o se canceló) no se
+ * sella otro; las transacciones devueltas vuelven al frente de la cola.
+ *
+ * Con setExistencias la admisión es con estado: una salida solo entra si el
+ * stock confirmado (p.ej. IndiceInventario) más el efecto neto de lo pendiente
+ * y en vuelo alcanza, en O(1) por transacción. Blockchain.admitirTransaccion
+ * la hace bajo el lock del escritor para que un bloque que entra no se cuente
+ * dos veces (ya confirmado y todavía pendiente).
+ */
+public class Mempool {
+
+    /** Qué pasó con una transacción entregada a agregar. */
+    public enum ResultadoAdmision {
+        ACEPTADA,
+        /** Ya estaba pendiente, en el lote en vuelo o confirmada. */
+        DUPLICADA,
+        /** Se alcanzó MAX_PENDIENTES (nadie está sellando); reintentar más tarde. */
+        LLENO,
+        /** Dejaría el stock en negativo (confirmado + pendiente). */
+        SIN_EXISTENCIAS
+    }
+
+    public static final int MAX_TRANSACCIONES_DEFECTO = Integer.getInteger("mempool.maxTransacciones", 500);
+    public static final int MAX_BYTES_DEFECTO = Integer.getInteger("mempool.maxBytes", 256 * 1024);
+    public static final long EDAD_MAXIMA_MS_DEFECTO = Long.getLong("mempool.edadMaximaMs", 30_000L);
+    // Tope de pendientes: protege la memoria de un nodo que admite por red pero no mina
+    public static final int MAX_PENDIENTES = Integer.getInteger("mempool.maxPendientes", 100_000);
+
+    private static final class Entrada {
+        final TransaccionInventario transaccion;
+        final int bytes;
+        final long admitidaNanos;
+
+        Entrada(TransaccionInventario transaccion, int bytes, long admitidaNanos) {
+            this.transaccion = transaccion;
+            this.bytes = bytes;
+            this.admitidaNanos = admitidaNanos;
+        }
+    }
+
+    private final int maxTransacciones;
+    private final int maxBytes;
+    private final long edadMaximaNanos;
+
+    // Todo lo siguiente se protege con "this"
+    private final LinkedHashMap<String, Entrada> pendientes = new LinkedHashMap<>();
+    private final HashSet<String> enVuelo = new HashSet<>();
+    // Efecto neto en stock de pendientes + en vuelo, por farmacia y código
+    private final HashMap<String, Integer> deltaPendiente = new HashMap<>();
+    private List<TransaccionInventario> loteEnVuelo;
+    private int bytesPendientes;
+    private ScheduledFuture<?> temporizador;
+
+    private volatile Consumer<List<TransaccionInventario>> sellador;
+    private volatile Predicate<String> confirmada = h -> false;
+    private volatile Runnable alCambiar = () -> { };
+    private volatile ToIntBiFunction<String, String> existencias; // null = sin control de stock
+    private ScheduledExecutorService programador; // se crea con el primer sellador
+
+    public Mempool() {
+        this(MAX_TRANSACCIONES_DEFECTO, MAX_BYTES_DEFECTO, EDAD_MAXIMA_MS_DEFECTO);
+    }
+
+    public Mempool(int maxTransacciones, int maxBytes, long edadMaximaMs) {
+        if (maxTransacciones < 1 || maxBytes < 1 || edadMaximaMs < 1) {
+            throw new IllegalArgumentException("Los límites del mempool deben ser positivos");
+        }
+        this.maxTransacciones = maxTransacciones;
+        this.maxBytes = maxBytes;
+        this.edadMaximaNanos = TimeUnit.MILLISECONDS.toNanos(edadMaximaMs);
+    }
+
+    // ----- Configuración -----
+
+    /**
+     * Quién recibe cada lote sellado (se llama fuera del lock, desde el hilo que
+     * disparó el sellado). Sin sellador no se sella automáticamente.
+     */
+    public synchronized void setSellador(Consumer<List<TransaccionInventario>> sellador) {
+        this.sellador = sellador;
+        if (sellador != null && programador == null) {
+            programador = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Mempool-Sellado");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        programarEdad();
+    }
+
+    /** Criterio para rechazar transacciones ya confirmadas (p.ej. IndiceTransacciones::estaConfirmada). */
+    public void setConfirmada(Predicate<String> confirmada) {
+        this.confirmada = confirmada != null ? confirmada : h -> false;
+    }
+
+    /** Stock confirmado por (farmacia, código), p.ej. IndiceInventario::getCantidad; null lo desactiva. */
+    public void setExistencias(ToIntBiFunction<String, String> existencias) {
+        this.existencias = existencias;
+    }
+
+    /** Aviso tras cada cambio de las pendientes (desde cualquier hilo). */
+    public void setAlCambiar(Runnable alCambiar) {
+        this.alCambiar = alCambiar != null ? alCambiar : () -> { };
+    }
+
+    // ----- Admisión -----
+
+    public ResultadoAdmision agregar(TransaccionInventario t) {
+        List<TransaccionInventario> lote;
+        synchronized (this) {
+            String hash = t.getHashTransaccion();
+            if (pendientes.containsKey(hash) || enVuelo.contains(hash) || confirmada.test(hash)) {
+                return ResultadoAdmision.DUPLICADA;
+            }
+            if (pendientes.size() >= MAX_PENDIENTES) {
+                return ResultadoAdmision.LLENO;
+            }
+            int delta = IndiceInventario.delta(t);
+            ToIntBiFunction<String, String> stock = existencias;
+            if (delta < 0 && stock != null && stock.applyAsInt(t.getFarmaciaId(), t.getProducto().getCodigo())
+                    + getDeltaPendiente(t.getFarmaciaId(), t.getProducto().getCodigo()) + delta < 0) {
+                return ResultadoAdmision.SIN_EXISTENCIAS;
+            }
+            Entrada e = new Entrada(t, tamanoEstimado(t), System.nanoTime());
+            pendientes.put(hash, e);
+            bytesPendientes += e.bytes;
+            sumarDelta(t, delta);
+            if (pendientes.size() == 1) programarEdad();
+            lote = sellarSiCorresponde(false);
+        }
+        alCambiar.run();
+        entregar(lote);
+        return ResultadoAdmision.ACEPTADA;
+    }
+
+    /** Sella ya lo que haya (p.ej. botón "Minar"); null si está vacío o hay un lote en vuelo. */
+    public List<TransaccionInventario> sellarAhora() {
+        List<TransaccionInventario> lote;
+        synchronized (this) {
+            lote = sellarSiCorresponde(true);
+        }
+        if (lote != null) alCambiar.run();
+        return lote;
+    }
+
+    /** El lote en vuelo entró en la cadena. Si ya hay otro lleno, se sella. */
+    public void confirmarLote() {
+        List<TransaccionInventario> lote;
+        synchronized (this) {
+            // Las que siguen en vuelo pasan a estar confirmadas: salen del efecto pendiente
+            for (TransaccionInventario t : loteEnVuelo != null ? loteEnVuelo : List.<TransaccionInventario>of()) {
+                if (enVuelo.contains(t.getHashTransaccion())) sumarDelta(t, -IndiceInventario.delta(t));
+            }
+            enVuelo.clear();
+            loteEnVuelo = null;
+            lote = sellarSiCorresponde(false);
+            programarEdad();
+        }
+        if (lote != null) alCambiar.run();
+        entregar(lote);
+    }
+
+    /** El lote en vuelo no entró (cancelado, error o quedó en rama lateral): vuelve al frente. */
+    public void devolverLote() {
+        synchronized (this) {
+            if (loteEnVuelo == null) return;
+            LinkedHashMap<String, Entrada> reordenadas = new LinkedHashMap<>();
+            // Cuentan como recién llegadas: un lote cancelado no se vuelve a sellar al instante
+            long ahora = System.nanoTime();
+            for (TransaccionInventario t : loteEnVuelo) {
+                if (!enVuelo.contains(t.getHashTransaccion())) continue; // ya confirmada por otro bloque
+                if (confirmada.test(t.getHashTransaccion())) {
+                    sumarDelta(t, -IndiceInventario.delta(t));
+                    continue;
+                }
+                reordenadas.put(t.getHashTransaccion(), new Entrada(t, tamanoEstimado(t), ahora));
+            }
+            for (Entrada e : reordenadas.values()) bytesPendientes += e.bytes;
+            reordenadas.putAll(pendientes);
+            pendientes.clear();
+            pendientes.putAll(reordenadas);
+            enVuelo.clear();
+            loteEnVuelo = null;
+            programarEdad();
+        }
+        alCambiar.run();
+    }
+
+    /** Quita las que ya confirmó un bloque (propio o recibido de otro nodo), pendientes o en vuelo. */
+    public void quitarConfirmadas(Collection<String> hashes) {
+        boolean cambio = false;
+        synchronized (this) {
+            for (String h : hashes) {
+                Entrada e = pendientes.remove(h);
+                if (e != null) {
+                    bytesPendientes -= e.bytes;
+                    sumarDelta(e.transaccion, -IndiceInventario.delta(e.transaccion));
+                    cambio = true;
+                } else if (enVuelo.remove(h)) {
+                    for (TransaccionInventario t : loteEnVuelo) {
+                        if (t.getHashTransaccion().equals(h)) sumarDelta(t, -IndiceInventario.delta(t));
+                    }
+                }
+            }
+        }
+        if (cambio) alCambiar.run();
+    }
+
+    // ----- Consultas -----
+
+    /** Copia de las pendientes en orden de llegada (sin el lote en vuelo). */
+    public synchronized List<TransaccionInventario> getPendientes() {
+        ArrayList<TransaccionInventario> lista = new ArrayList<>(pendientes.size());
+        for (Entrada e : pendientes.values()) lista.add(e.transaccion);
+        return lista;
+    }
+
+    /** Efecto neto de pendientes + en vuelo sobre el stock del producto en la farmacia. */
+    public synchronized int getDeltaPendiente(String farmaciaId, String codigo) {
+        return deltaPendiente.getOrDefault(clave(farmaciaId, codigo), 0);
+    }
+
+    public synchronized boolean contiene(String hashTransaccion) {
+        return pendientes.containsKey(hashTransaccion) || enVuelo.contains(hashTransaccion);
+    }
+
+    public synchronized int getTamano() {
+        return pendientes.size();
+    }
+
+    public synchronized int getBytesPendientes() {
+        return bytesPendientes;
+    }
+
+    public synchronized boolean hayLoteEnVuelo() {
+        return loteEnVuelo != null;
+    }
+
+    public synchronized void cerrar() {
+        if (temporizador != null) temporizador.cancel(false);
+        if (programador != null) programador.shutdownNow();
+    }
+
+    // ----- Internos -----
+
+    private void sumarDelta(TransaccionInventario t, int delta) {
+        if (delta == 0) return;
+        deltaPendiente.merge(clave(t.getFarmaciaId(), t.getProducto().getCodigo()), delta,
+                (a, b) -> a + b == 0 ? null : a + b);
+    }
+
+    private static String clave(String farmaciaId, String codigo) {
+        return farmaciaId + '\u0000' + codigo;
+    }
+
+    /** Tamaño aproximado de la transacción en el JSON cifrado del bloque. */
+    static int tamanoEstimado(TransaccionInventario t) {
+        return 180 + largo(t.getFarmaciaId()) + largo(t.getProducto().getNombre()) + largo(t.getProducto().getCodigo())
+                + largo(t.getResponsable()) + largo(t.getLote()) + largo(t.getFechaCaducidad());
+    }
+
+    private static int largo(String s) {
+        return s == null ? 4 : s.length();
+    }
+
+    // Bajo el lock. "forzar": sellar aunque no se llegó a ningún límite
+    private List<TransaccionInventario> sellarSiCorresponde(boolean forzar) {
+        if (loteEnVuelo != null || pendientes.isEmpty()) return null;
+        if (!forzar && (sellador == null || !limiteAlcanzado())) return null;
+
+        ArrayList<TransaccionInventario> lote = new ArrayList<>(Math.min(pendientes.size(), maxTransacciones));
+        int bytes = 0;
+        Iterator<Entrada> it = pendientes.values().iterator();
+        while (it.hasNext() && lote.size() < maxTransacciones) {
+            Entrada e = it.next();
+            if (!lote.isEmpty() && bytes + e.bytes > maxBytes) break;
+            lote.add(e.transaccion);
+            enVuelo.add(e.transaccion.getHashTransaccion());
+            bytes += e.bytes;
+            bytesPendientes -= e.bytes;
+            it.remove();
+        }
+        loteEnVuelo = lote;
+        programarEdad();
+        return lote;
+    }
+
+    private boolean limiteAlcanzado() {
+        if (pendientes.size() >= maxTransacciones || bytesPendientes >= maxBytes) return true;
+        Entrada masAntigua = pendientes.values().iterator().next();
+        return System.nanoTime() - masAntigua.admitidaNanos >= edadMaximaNanos;
+    }
+
+    // Bajo el lock: un temporizador para cuando la más antigua cumpla la edad máxima
+    private void programarEdad() {
+        if (temporizador != null) {
+            temporizador.cancel(false);
+            temporizador = null;
+        }
+        if (programador == null || sellador == null || pendientes.isEmpty() || loteEnVuelo != null) return;
+        long espera = pendientes.values().iterator().next().admitidaNanos + edadMaximaNanos - System.nanoTime();
+        temporizador = programador.schedule(this::alVencerEdad, Math.max(0, espera), TimeUnit.NANOSECONDS);
+    }
+
+    private void alVencerEdad() {
+        List<TransaccionInventario> lote;
+        synchronized (this) {
+            temporizador = null;
+            lote = sellarSiCorresponde(false);
+            if (lote == null) programarEdad();
+        }
+        if (lote != null) alCambiar.run();
+        entregar(lote);
+    }
+
+    private void entregar(List<TransaccionInventario> lote) {
+        Consumer<List<TransaccionInventario>> s = sellador;
+        if (lote == null) return;
+        if (s == null) {
+            // Sin sellador no debería haber sellado automático; se devuelve para no perderlo
+            devolverLote();
+            return;
+        }
+        System.out.println("📦 Lote sellado: " + lote.size() + " transacciones");
+        s.accept(lote);
+    }
+}
@@ -0,0 +1,147 @@
+package modelo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Motor de prueba de trabajo multi-hilo.
+ *
+ * - Reparte el espacio de nonces en lotes consecutivos que los hilos toman
+ *   de un contador compartido (sin coordinación por nonce).
+ * - En cuanto un hilo encuentra un nonce válido, los demás dejan de tomar lotes.
+ * - Devuelve siempre el MENOR nonce válido, es decir, el mismo nonce/hash que
+ *   produciría el bucle secuencial nonce++ de Bloque.minarBloque.
+ *
+ * Admite un ProgresoMinado para consultar intentos/hashrate y cancelar.
+ * El número de hilos se configura en el constructor; la instancia por defecto
+ * usa la propiedad de sistema "minado.hilos" o el número de núcleos.
+ */
+public class MinadorParalelo {
+
+    // Nonces por lote: suficientemente grande para amortizar el contador atómico,
+    // suficientemente pequeño para que los hilos paren rápido al encontrar solución.
+    private static final int TAMANO_LOTE = 4096;
+    private static final long SIN_SOLUCION = Long.MAX_VALUE;
+
+    private static MinadorParalelo porDefecto;
+
+    private final int hilos;
+    private final ExecutorService pool;
+
+    public MinadorParalelo(int hilos) {
+        if (hilos < 1) {
+            throw new IllegalArgumentException("El minador necesita al menos un hilo: " + hilos);
+        }
+        this.hilos = hilos;
+        AtomicInteger contador = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(hilos, r -> {
+            Thread t = new Thread(r, "Minador-" + contador.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Instancia compartida (hilos = -Dminado.hilos o núcleos disponibles). */
+    public static synchronized MinadorParalelo porDefecto() {
+        if (porDefecto == null) {
+            int n = Integer.getInteger("minado.hilos", Runtime.getRuntime().availableProcessors());
+            porDefecto = new MinadorParalelo(Math.max(1, n));
+        }
+        return porDefecto;
+    }
+
+    public int getHilos() { return hilos; }
+
+    /**
+     * Busca el menor nonce cuyo hash empiece por "dificultad" ceros hex.
+     * No modifica el bloque: el llamador asigna nonce y hash del resultado.
+     */
+    public Resultado minar(Bloque bloque, int dificultad) {
+        return minarBits(bloque, dificultad * 4, new ProgresoMinado(dificultad * 4));
+    }
+
+    /**
+     * Busca el menor nonce cuyo hash empiece por "bits" bits a cero, publicando
+     * intentos en "progreso" y abandonando con CancellationException si se cancela.
+     */
+    public Resultado minarBits(Bloque bloque, int bits, ProgresoMinado progreso) {
+        progreso.iniciar();
+        AtomicLong siguienteLote = new AtomicLong(0);
+        AtomicLong mejorNonce = new AtomicLong(SIN_SOLUCION);
+
+        List<Future<?>> trabajos = new ArrayList<>(hilos);
+        for (int i = 0; i < hilos; i++) {
+            trabajos.add(pool.submit(() -> buscar(bloque, bits, progreso, siguienteLote, mejorNonce)));
+        }
+        for (Future<?> f : trabajos) {
+            try {
+                f.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                mejorNonce.set(-1); // hace que los demás hilos abandonen
+                throw new IllegalStateException("Minado interrumpido", ie);
+            } catch (Exception e) {
+                mejorNonce.set(-1);
+                throw new IllegalStateException("Error en hilo de minado: " + e.getMessage(), e);
+            }
+        }
+
+        progreso.terminar();
+        if (progreso.isCancelado()) {
+            throw new CancellationException("Minado cancelado tras " + progreso.getIntentos() + " intentos");
+        }
+        long nonce = mejorNonce.get();
+        if (nonce == SIN_SOLUCION) {
+            throw new IllegalStateException("No existe nonce válido en el rango int para " + bits + " bits");
+        }
+        return new Resultado((int) nonce, bloque.calcularHashConNonce(nonce));
+    }
+
+    private void buscar(Bloque bloque, int bits, ProgresoMinado progreso,
+                        AtomicLong siguienteLote, AtomicLong mejorNonce) {
+        // Todo el estado de trabajo es local al hilo: el costo por nonce no depende del contenido
+        Bloque.CalculadorNonce calculador = bloque.crearCalculadorNonce();
+        byte[] digest = new byte[CriptoUtil.LONGITUD_SHA256];
+
+        while (true) {
+            long inicio = siguienteLote.getAndAdd(TAMANO_LOTE);
+            // Un lote por encima de la mejor solución ya no puede mejorarla
+            if (inicio > Integer.MAX_VALUE || inicio > mejorNonce.get() || progreso.isCancelado()) return;
+
+            long fin = Math.min(inicio + TAMANO_LOTE, (long) Integer.MAX_VALUE + 1);
+            for (long n = inicio; n < fin; n++) {
+                calculador.digest(n, digest);
+                if (CriptoUtil.cumpleDificultadBits(digest, bits)) {
+                    progreso.sumarIntentos(n - inicio + 1);
+                    mejorNonce.accumulateAndGet(n, Math::min);
+                    return;
+                }
+            }
+            progreso.sumarIntentos(fin - inicio);
+        }
+    }
+
+    public void cerrar() {
+        pool.shutdownNow();
+    }
+
+    /** Nonce y hash ganadores de una ejecución de minado. */
+    public static class Resultado {
+        private final int nonce;
+        private final String hash;
+
+        public Resultado(int nonce, String hash) {
+            this.nonce = nonce;
+            this.hash = hash;
+        }
+
+        public int getNonce() { return nonce; }
+        public String getHash() { return hash; }
+    }
+}
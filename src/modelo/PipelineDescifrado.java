@@ -0,0 +1,190 @@
+package modelo;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Repone las transacciones de bloques que solo traen datosEncriptados
+ * (replicados por REPLICATE_BLOCK o recargados del almacén).
+ *
+ * Cada bloque pasa por tres etapas, cada una como tarea aparte en el pool:
+ * RSA (desenvolver la llave AES) -> AES (descifrar el contenido) -> JSON
+ * (reconstruir las TransaccionInventario y comprobarlas contra los hashes
+ * del bloque). Mientras un bloque está en RSA otro puede estar en AES o en
+ * JSON; como mucho hay EN_VUELO_POR_HILO x hilos bloques a la vez.
+ *
+ * Los estados derivados que ya aplicaron esos bloques (vacíos) no se enteran:
+ * hay que re-aplicarlos después desde Resultado.getAlturaMinima
+ * (Blockchain.reaplicarEstadosDerivados), o descifrar antes de registrarlos.
+ */
+public class PipelineDescifrado {
+
+    private static final int EN_VUELO_POR_HILO = 4;
+    private static final int MAX_ERRORES_LOG = 5;
+
+    /** Resumen de una pasada. */
+    public static final class Resultado {
+        private final int descifrados;
+        private final int omitidos;
+        private final int fallidos;
+        private final int alturaMinima;
+        private final long nanos;
+        private final long nanosRsa, nanosAes, nanosJson;
+
+        Resultado(int descifrados, int omitidos, int fallidos, int alturaMinima, long nanos,
+                  long nanosRsa, long nanosAes, long nanosJson) {
+            this.descifrados = descifrados;
+            this.omitidos = omitidos;
+            this.fallidos = fallidos;
+            this.alturaMinima = alturaMinima;
+            this.nanos = nanos;
+            this.nanosRsa = nanosRsa;
+            this.nanosAes = nanosAes;
+            this.nanosJson = nanosJson;
+        }
+
+        public int getDescifrados() { return descifrados; }
+        /** Bloques que no lo necesitaban (ya tenían transacciones, génesis, sin contenido). */
+        public int getOmitidos() { return omitidos; }
+        public int getFallidos() { return fallidos; }
+        /** Menor altura con transacciones repuestas, o -1 si no hubo ninguna. */
+        public int getAlturaMinima() { return alturaMinima; }
+
+        public double getBloquesPorSegundo() {
+            return nanos > 0 ? descifrados / (nanos / 1e9) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d descifrados, %d omitidos, %d fallidos en %.1f ms (%.0f bloques/s; "
+                            + "CPU por etapa: RSA %.1f ms, AES %.1f ms, JSON %.1f ms)",
+                    descifrados, omitidos, fallidos, nanos / 1e6, getBloquesPorSegundo(),
+                    nanosRsa / 1e6, nanosAes / 1e6, nanosJson / 1e6);
+        }
+    }
+
+    private final PrivateKey llavePrivada;
+    private final CacheLlaves cache; // opcional: llaves AES ya desenvueltas
+    private final int hilos;
+    private final ExecutorService pool;
+    // El pool ya reparte bloques entre hilos: cada contenido se descifra en el hilo de su tarea
+    private final CifradorFlujo cifrador = new CifradorFlujo(CifradorFlujo.TAMANO_TROZO_DEFECTO, null);
+
+    public PipelineDescifrado(PrivateKey llavePrivada) {
+        this(llavePrivada, Runtime.getRuntime().availableProcessors(), null);
+    }
+
+    public PipelineDescifrado(PrivateKey llavePrivada, int hilos, CacheLlaves cache) {
+        if (llavePrivada == null) throw new IllegalArgumentException("Se requiere la llave privada");
+        if (hilos < 1) throw new IllegalArgumentException("hilos debe ser >= 1");
+        this.llavePrivada = llavePrivada;
+        this.cache = cache;
+        this.hilos = hilos;
+        AtomicInteger n = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(hilos, r -> {
+            Thread t = new Thread(r, "Descifrado-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Sin transacciones en memoria pero con contenido cifrado que las tendría. */
+    public static boolean necesitaDescifrado(Bloque b) {
+        if (!b.getTransacciones().isEmpty()) return false;
+        if (b.getLlaveAesEncriptada() == null || b.getLlaveAesEncriptada().isEmpty()) return false;
+        if (b.getDatosEncriptados() == null || b.getDatosEncriptados().isEmpty()) return false;
+        // Con cabecera Merkle se sabe de antemano si el bloque no tiene transacciones
+        return b.getVersion() < FormatoCabecera.VERSION_MERKLE || !b.getHashesTransacciones().isEmpty();
+    }
+
+    /** Descifra en paralelo los bloques que lo necesitan y espera a que terminen todos. */
+    public Resultado procesar(List<Bloque> bloques) {
+        long inicio = System.nanoTime();
+        LongAdder rsa = new LongAdder(), aes = new LongAdder(), json = new LongAdder();
+        AtomicInteger descifrados = new AtomicInteger(), fallidos = new AtomicInteger();
+        AtomicInteger alturaMinima = new AtomicInteger(Integer.MAX_VALUE);
+        Semaphore enVuelo = new Semaphore(EN_VUELO_POR_HILO * hilos);
+        ArrayList<CompletableFuture<Void>> tareas = new ArrayList<>();
+        int omitidos = 0;
+
+        for (Bloque b : bloques) {
+            if (!necesitaDescifrado(b)) {
+                omitidos++;
+                continue;
+            }
+            enVuelo.acquireUninterruptibly();
+            tareas.add(CompletableFuture
+                    .supplyAsync(() -> medir(rsa, () -> desenvolver(b)), pool)
+                    .thenApplyAsync(llave -> medir(aes, () -> descifrar(b, llave)), pool)
+                    .thenAcceptAsync(contenido -> medir(json, () -> {
+                        b.restaurarTransacciones(CodecTransacciones.desdeJson(contenido));
+                        return null;
+                    }), pool)
+                    .handle((ok, error) -> {
+                        enVuelo.release();
+                        if (error == null) {
+                            descifrados.incrementAndGet();
+                            alturaMinima.accumulateAndGet(b.getIndex(), Math::min);
+                        } else if (fallidos.incrementAndGet() <= MAX_ERRORES_LOG) {
+                            Throwable causa = error.getCause() != null ? error.getCause() : error;
+                            System.err.println("⚠️ No se pudo descifrar el bloque #" + b.getIndex() + ": " + causa.getMessage());
+                        }
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(tareas.toArray(new CompletableFuture<?>[0])).join();
+
+        Resultado r = new Resultado(descifrados.get(), omitidos, fallidos.get(),
+                descifrados.get() > 0 ? alturaMinima.get() : -1, System.nanoTime() - inicio,
+                rsa.sum(), aes.sum(), json.sum());
+        // Un solo bloque (REPLICATE_BLOCK) no merece línea propia: ya lo informa quien llama
+        if (r.getDescifrados() > 1 || r.getFallidos() > 0) {
+            System.out.println("🔓 Pipeline de descifrado: " + r);
+        }
+        return r;
+    }
+
+    private SecretKey desenvolver(Bloque b) throws Exception {
+        SecretKey llave = cache != null ? cache.getLlave(b.getHash()) : null;
+        if (llave == null) {
+            llave = Encriptador.descifrarLlaveRsa(Base64.getDecoder().decode(b.getLlaveAesEncriptada()), llavePrivada);
+            if (cache != null) cache.guardarLlave(b.getHash(), llave);
+        }
+        return llave;
+    }
+
+    private String descifrar(Bloque b, SecretKey llave) throws Exception {
+        return new String(cifrador.descifrarEntrada(b.getDatosEncriptados().get(0), llave), StandardCharsets.UTF_8);
+    }
+
+    private interface Etapa<T> {
+        T ejecutar() throws Exception;
+    }
+
+    private static <T> T medir(LongAdder acumulado, Etapa<T> etapa) {
+        long t0 = System.nanoTime();
+        try {
+            return etapa.ejecutar();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        } finally {
+            acumulado.add(System.nanoTime() - t0);
+        }
+    }
+
+    public void cerrar() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,85 @@
+package modelo;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estado observable de una ejecución de minado: intentos, hashrate, ETA y
+ * bandera de cancelación. Los hilos del minador lo actualizan por lote;
+ * cualquier hilo (p.ej. la UI) puede leerlo o cancelar.
+ */
+public class ProgresoMinado {
+
+    private final int dificultadBits;
+    private final AtomicLong intentos = new AtomicLong();
+    private volatile long inicioNanos;
+    private volatile long finNanos;
+    private volatile boolean cancelado;
+
+    public ProgresoMinado(int dificultadBits) {
+        this.dificultadBits = dificultadBits;
+        this.inicioNanos = System.nanoTime();
+    }
+
+    void iniciar() {
+        inicioNanos = System.nanoTime();
+        finNanos = 0;
+    }
+
+    void sumarIntentos(long n) {
+        intentos.addAndGet(n);
+    }
+
+    void terminar() {
+        finNanos = System.nanoTime();
+    }
+
+    public void cancelar() {
+        cancelado = true;
+    }
+
+    public boolean isCancelado() { return cancelado; }
+
+    public int getDificultadBits() { return dificultadBits; }
+
+    public long getIntentos() { return intentos.get(); }
+
+    public double getSegundosTranscurridos() {
+        long fin = finNanos != 0 ? finNanos : System.nanoTime();
+        return (fin - inicioNanos) / 1_000_000_000.0;
+    }
+
+    /** Hashes por segundo desde el inicio. */
+    public double getHashrate() {
+        double s = getSegundosTranscurridos();
+        return s > 0 ? intentos.get() / s : 0;
+    }
+
+    /** Intentos esperados para encontrar un hash con "dificultadBits" bits a cero (2^bits). */
+    public double getIntentosEsperados() {
+        return Math.pow(2, dificultadBits);
+    }
+
+    /**
+     * Tiempo esperado restante en segundos. La búsqueda no tiene memoria:
+     * lo esperado desde ahora es siempre intentosEsperados / hashrate.
+     */
+    public double getEtaSegundos() {
+        double hr = getHashrate();
+        return hr > 0 ? getIntentosEsperados() / hr : Double.POSITIVE_INFINITY;
+    }
+
+    /** Resumen legible para la barra de estado. */
+    public String resumen() {
+        double eta = getEtaSegundos();
+        return String.format("%s | intentos: %,d | ETA ~%s",
+                formatearHashrate(getHashrate()),
+                getIntentos(),
+                Double.isInfinite(eta) ? "?" : String.format("%.1f s", eta));
+    }
+
+    public static String formatearHashrate(double hps) {
+        if (hps >= 1_000_000) return String.format("%.2f MH/s", hps / 1_000_000);
+        if (hps >= 1_000) return String.format("%.1f kH/s", hps / 1_000);
+        return String.format("%.0f H/s", hps);
+    }
+}
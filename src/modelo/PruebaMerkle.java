@@ -0,0 +1,84 @@
+package modelo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prueba de inclusión de una hoja en un ArbolMerkle.
+ *
+ * Lleva la posición de la hoja, el total de hojas y los hashes hermanos de
+ * abajo hacia arriba. El lado de cada hermano no viaja en la prueba: se deduce
+ * de la posición y del total, así la prueba solo sirve para esa posición.
+ *
+ * Formato de texto (protocolo GET_PROOF): indice,total,hex1,hex2,...
+ */
+public final class PruebaMerkle {
+
+    private final int indice;
+    private final int totalHojas;
+    private final List<byte[]> hermanos;
+
+    public PruebaMerkle(int indice, int totalHojas, List<byte[]> hermanos) {
+        this.indice = indice;
+        this.totalHojas = totalHojas;
+        this.hermanos = Collections.unmodifiableList(new ArrayList<>(hermanos));
+    }
+
+    public int getIndice() { return indice; }
+    public int getTotalHojas() { return totalHojas; }
+    public List<byte[]> getHermanos() { return hermanos; }
+
+    /** Raíz que resulta de subir desde los datos de la hoja con esta prueba, o null si la prueba no encaja. */
+    public byte[] calcularRaiz(byte[] datosHoja) {
+        if (indice < 0 || indice >= totalHojas) return null;
+        byte[] actual = ArbolMerkle.hashHoja(datosHoja);
+        int i = indice;
+        int n = totalHojas;
+        int usados = 0;
+        while (n > 1) {
+            if ((i & 1) == 1) {
+                if (usados == hermanos.size()) return null;
+                actual = ArbolMerkle.hashNodo(hermanos.get(usados++), actual);
+            } else if (i + 1 < n) {
+                if (usados == hermanos.size()) return null;
+                actual = ArbolMerkle.hashNodo(actual, hermanos.get(usados++));
+            } // último de un nivel impar: sube sin hermano
+            i >>>= 1;
+            n = (n + 1) / 2;
+        }
+        return usados == hermanos.size() ? actual : null;
+    }
+
+    /** true si la hoja con estos datos está bajo "raiz" en la posición de la prueba. */
+    public boolean verificar(byte[] datosHoja, byte[] raiz) {
+        byte[] calculada = calcularRaiz(datosHoja);
+        return calculada != null && Arrays.equals(calculada, raiz);
+    }
+
+    public String codificar() {
+        StringBuilder sb = new StringBuilder().append(indice).append(',').append(totalHojas);
+        for (byte[] h : hermanos) {
+            sb.append(',').append(CriptoUtil.aHex(h));
+        }
+        return sb.toString();
+    }
+
+    public static PruebaMerkle decodificar(String texto) {
+        String[] partes = texto.trim().split(",");
+        if (partes.length < 2) {
+            throw new IllegalArgumentException("Prueba Merkle malformada: " + texto);
+        }
+        List<byte[]> hermanos = new ArrayList<>(partes.length - 2);
+        for (int i = 2; i < partes.length; i++) {
+            hermanos.add(CriptoUtil.desdeHex(partes[i]));
+        }
+        return new PruebaMerkle(Integer.parseInt(partes[0]), Integer.parseInt(partes[1]), hermanos);
+    }
+
+    @Override
+    public String toString() {
+        return "PruebaMerkle{hoja " + indice + "/" + totalHojas + ", " + hermanos.size() + " hermanos}";
+    }
+}
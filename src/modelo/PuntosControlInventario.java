@@ -0,0 +1,362 @@
+package modelo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * Inventario histórico: "qué stock tenía la farmacia X en la altura H (o en
+ * la fecha F)".
+ *
+ * Cada "cada" bloques guarda un punto de control con el inventario completo
+ * de esa altura (en el directorio dado, junto al almacén de bloques, o en
+ * memoria si no hay directorio). Una consulta carga el punto de control más
+ * cercano por debajo y aplica solo los bloques que faltan, así que nunca
+ * aplica más de "cada" - 1 bloques, sea cual sea el largo de la cadena.
+ *
+ * Se registra en Blockchain como EstadoDerivado. Cada punto guarda el hash de
+ * su bloque: si una reorganización lo deja fuera de la cadena se descarta, y
+ * al arrancar solo se reescriben los que no coinciden con la cadena cargada.
+ * El inventario de la punta se exporta con la instantánea del almacén.
+ *
+ * Formato de inventario_NNNNNNNN.dat:
+ *   mágico "INV1" | altura | hash | nFarmacias
+ *   { farmacia | n { codigo | nombre | tipo | cantidad } } | crc32
+ * (textos como int largo + UTF-8)
+ */
+public class PuntosControlInventario implements EstadoDerivado<List<IndiceInventario.Cambio>> {
+
+    private static final int MAGICO = 0x494E5631; // "INV1"
+    private static final String PREFIJO = "inventario_";
+    private static final String EXTENSION = ".dat";
+
+    public static final int CADA_DEFECTO = Integer.getInteger("inventario.puntoControlCada", 100);
+
+    /** Punto de control: en disco (archivo) o en memoria (inventario). */
+    private static final class Punto {
+        final int altura;
+        final String hash;
+        final Path archivo;
+        final Map<String, Map<String, Existencia>> inventario;
+
+        Punto(int altura, String hash, Path archivo, Map<String, Map<String, Existencia>> inventario) {
+            this.altura = altura;
+            this.hash = hash;
+            this.archivo = archivo;
+            this.inventario = inventario;
+        }
+    }
+
+    private final Blockchain cadena;
+    private final Path directorio;
+    private final int cada;
+    private final ConcurrentSkipListMap<Integer, Punto> puntos = new ConcurrentSkipListMap<>();
+
+    // Inventario en la punta; solo lo toca el hilo escritor de Blockchain
+    private final HashMap<String, HashMap<String, Existencia>> actual = new HashMap<>();
+
+    // Último punto leído de disco, para consultas seguidas sobre la misma zona
+    private volatile Punto puntoCacheado;
+    private volatile Map<String, Map<String, Existencia>> inventarioCacheado;
+
+    /** Puntos de control solo en memoria. */
+    public PuntosControlInventario(Blockchain cadena, int cada) {
+        if (cada < 1) throw new IllegalArgumentException("cada debe ser >= 1");
+        this.cadena = cadena;
+        this.directorio = null;
+        this.cada = cada;
+    }
+
+    /** Puntos de control en "directorio"; se reaprovechan los que ya estén ahí. */
+    public PuntosControlInventario(Blockchain cadena, Path directorio, int cada) throws IOException {
+        if (cada < 1) throw new IllegalArgumentException("cada debe ser >= 1");
+        this.cadena = cadena;
+        this.directorio = directorio;
+        this.cada = cada;
+        Files.createDirectories(directorio);
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio, PREFIJO + "*" + EXTENSION)) {
+            for (Path archivo : archivos) {
+                try {
+                    Punto p = leerCabecera(archivo);
+                    puntos.put(p.altura, p);
+                } catch (IOException e) {
+                    System.err.println("⚠️ Punto de control ilegible, se descarta: " + archivo.getFileName());
+                    Files.deleteIfExists(archivo);
+                }
+            }
+        }
+        System.out.println("📌 Puntos de control de inventario en " + directorio + ": " + puntos.size());
+    }
+
+    // ----- EstadoDerivado -----
+
+    @Override
+    public List<IndiceInventario.Cambio> aplicar(Bloque bloque) {
+        ArrayList<IndiceInventario.Cambio> cambios = new ArrayList<>(bloque.getTransacciones().size());
+        for (TransaccionInventario t : bloque.getTransacciones()) {
+            HashMap<String, Existencia> existencias = actual.computeIfAbsent(t.getFarmaciaId(), k -> new HashMap<>());
+            cambios.add(new IndiceInventario.Cambio(t.getFarmaciaId(), t.getProducto().getCodigo(),
+                    existencias.get(t.getProducto().getCodigo())));
+            aplicarTransaccion(existencias, t);
+        }
+        int altura = bloque.getIndex();
+        Punto existente = puntos.get(altura);
+        if (altura % cada == 0 && (existente == null || !existente.hash.equals(bloque.getHash()))) {
+            try {
+                puntos.put(altura, guardar(altura, bloque.getHash()));
+            } catch (IOException e) {
+                System.err.println("⚠️ No se pudo guardar el punto de control #" + altura + ": " + e.getMessage());
+            }
+        }
+        return cambios;
+    }
+
+    @Override
+    public void revertir(Bloque bloque, List<IndiceInventario.Cambio> cambios) {
+        for (int i = cambios.size() - 1; i >= 0; i--) {
+            IndiceInventario.Cambio c = cambios.get(i);
+            if (c.anterior == null) {
+                actual.get(c.farmaciaId).remove(c.codigo);
+            } else {
+                actual.get(c.farmaciaId).put(c.codigo, c.anterior);
+            }
+        }
+        // El punto de esta altura (nuevo o reaprovechado) ya no es de la cadena principal
+        Punto p = puntos.get(bloque.getIndex());
+        if (p != null && p.hash.equals(bloque.getHash())) descartar(p);
+    }
+
+    @Override
+    public void reiniciar() {
+        actual.clear();
+    }
+
+    @Override
+    public byte[] exportar() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        IndiceInventario.escribirExistencias(new DataOutputStream(bytes), actual);
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public boolean importar(byte[] datos) throws IOException {
+        for (Existencia e : IndiceInventario.leerExistencias(new DataInputStream(new ByteArrayInputStream(datos)))) {
+            actual.computeIfAbsent(e.getFarmaciaId(), k -> new HashMap<>()).put(e.getCodigo(), e);
+        }
+        return true;
+    }
+
+    // ----- Consultas -----
+
+    /** Existencias de la farmacia tras aplicar el bloque de esa altura. */
+    public Collection<Existencia> inventarioEnAltura(String farmaciaId, int altura) {
+        List<Bloque> bloques = cadena.getCadena();
+        if (altura < 0 || altura >= bloques.size()) {
+            throw new IndexOutOfBoundsException("Altura " + altura + " fuera de la cadena (" + bloques.size() + " bloques)");
+        }
+
+        // Punto más cercano por debajo que siga en esta cadena
+        HashMap<String, Existencia> existencias = new HashMap<>();
+        int desde = 0;
+        for (Punto p : puntos.headMap(altura, true).descendingMap().values()) {
+            if (!p.hash.equals(bloques.get(p.altura).getHash())) continue;
+            Map<String, Map<String, Existencia>> inventario = leerInventario(p);
+            if (inventario == null) continue;
+            Map<String, Existencia> base = inventario.get(farmaciaId);
+            if (base != null) existencias.putAll(base);
+            desde = p.altura + 1;
+            break;
+        }
+
+        for (int h = desde; h <= altura; h++) {
+            for (TransaccionInventario t : bloques.get(h).getTransacciones()) {
+                if (t.getFarmaciaId().equals(farmaciaId)) aplicarTransaccion(existencias, t);
+            }
+        }
+        return Collections.unmodifiableCollection(existencias.values());
+    }
+
+    /** Existencias de la farmacia en el instante dado (último bloque con timestamp <= instante). */
+    public Collection<Existencia> inventarioEnFecha(String farmaciaId, long instanteMs) {
+        int altura = alturaEnFecha(instanteMs);
+        return altura < 0 ? Collections.emptyList() : inventarioEnAltura(farmaciaId, altura);
+    }
+
+    /**
+     * Último bloque con timestamp <= instante, o -1 si es anterior al génesis.
+     * Búsqueda binaria: los timestamps de la cadena son crecientes.
+     */
+    public int alturaEnFecha(long instanteMs) {
+        List<Bloque> bloques = cadena.getCadena();
+        int bajo = 0;
+        int alto = bloques.size() - 1;
+        int resultado = -1;
+        while (bajo <= alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (bloques.get(medio).getTimestamp() <= instanteMs) {
+                resultado = medio;
+                bajo = medio + 1;
+            } else {
+                alto = medio - 1;
+            }
+        }
+        return resultado;
+    }
+
+    public int getCada() {
+        return cada;
+    }
+
+    public int getTotalPuntos() {
+        return puntos.size();
+    }
+
+    /**
+     * Descarta los puntos desde esa altura aunque su hash siga en la cadena,
+     * p.ej. si se guardaron cuando esos bloques aún no tenían las transacciones
+     * descifradas. Se vuelven a crear al reconstruir.
+     */
+    public void descartarDesde(int altura) {
+        for (Punto p : new ArrayList<>(puntos.tailMap(altura).values())) descartar(p);
+    }
+
+    // ----- Internos -----
+
+    private static void aplicarTransaccion(Map<String, Existencia> existencias, TransaccionInventario t) {
+        String codigo = t.getProducto().getCodigo();
+        Existencia anterior = existencias.get(codigo);
+        existencias.put(codigo, anterior == null
+                ? new Existencia(t.getFarmaciaId(), t.getProducto().getNombre(), codigo, IndiceInventario.delta(t), t.getProducto().getTipo())
+                : anterior.conCantidad(anterior.getCantidad() + IndiceInventario.delta(t)));
+    }
+
+    private Punto guardar(int altura, String hash) throws IOException {
+        if (directorio == null) {
+            HashMap<String, Map<String, Existencia>> copia = new HashMap<>();
+            actual.forEach((farmacia, existencias) -> copia.put(farmacia, new HashMap<>(existencias)));
+            return new Punto(altura, hash, null, copia);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGICO);
+        out.writeInt(altura);
+        poner(out, hash);
+        out.writeInt(actual.size());
+        for (Map.Entry<String, HashMap<String, Existencia>> f : actual.entrySet()) {
+            poner(out, f.getKey());
+            out.writeInt(f.getValue().size());
+            for (Existencia e : f.getValue().values()) {
+                poner(out, e.getCodigo());
+                poner(out, e.getNombre());
+                poner(out, e.getTipo());
+                out.writeInt(e.getCantidad());
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+
+        Path archivo = directorio.resolve(String.format("%s%08d%s", PREFIJO, altura, EXTENSION));
+        Path temporal = directorio.resolve(archivo.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) canal.write(buf);
+            // Contenido en disco antes del rename: tras un corte no queda un archivo renombrado pero vacío
+            canal.force(true);
+        }
+        Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new Punto(altura, hash, archivo, null);
+    }
+
+    private void descartar(Punto p) {
+        puntos.remove(p.altura, p);
+        if (p.archivo != null) {
+            try {
+                Files.deleteIfExists(p.archivo);
+            } catch (IOException e) {
+                System.err.println("⚠️ No se pudo borrar " + p.archivo.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private Map<String, Map<String, Existencia>> leerInventario(Punto p) {
+        if (p.inventario != null) return p.inventario;
+        if (puntoCacheado == p) return inventarioCacheado;
+        try {
+            Map<String, Map<String, Existencia>> inventario = leer(p.archivo, true).inventario;
+            inventarioCacheado = inventario;
+            puntoCacheado = p;
+            return inventario;
+        } catch (IOException e) {
+            // Borrado por una reorganización concurrente o dañado: se consulta un punto anterior
+            return null;
+        }
+    }
+
+    private static Punto leerCabecera(Path archivo) throws IOException {
+        return leer(archivo, false);
+    }
+
+    private static Punto leer(Path archivo, boolean conInventario) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(archivo));
+        try {
+            if (buf.remaining() < 16 || buf.getInt() != MAGICO) throw new IOException("Mágico inválido");
+            CRC32 crc = new CRC32();
+            crc.update(buf.array(), 0, buf.limit() - 4);
+            if ((int) crc.getValue() != buf.getInt(buf.limit() - 4)) throw new IOException("CRC inválido");
+            int altura = buf.getInt();
+            String hash = texto(buf);
+            if (!conInventario) return new Punto(altura, hash, archivo, null);
+
+            HashMap<String, Map<String, Existencia>> inventario = new HashMap<>();
+            int farmacias = buf.getInt();
+            for (int f = 0; f < farmacias; f++) {
+                String farmacia = texto(buf);
+                int n = buf.getInt();
+                HashMap<String, Existencia> existencias = new HashMap<>(n * 2);
+                for (int k = 0; k < n; k++) {
+                    String codigo = texto(buf);
+                    String nombre = texto(buf);
+                    String tipo = texto(buf);
+                    existencias.put(codigo, new Existencia(farmacia, nombre, codigo, buf.getInt(), tipo));
+                }
+                inventario.put(farmacia, existencias);
+            }
+            return new Punto(altura, hash, archivo, inventario);
+        } catch (RuntimeException e) {
+            throw new IOException("Punto de control malformado: " + archivo.getFileName(), e);
+        }
+    }
+
+    private static void poner(DataOutputStream out, String texto) throws IOException {
+        byte[] b = texto.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String texto(ByteBuffer buf) {
+        byte[] b = new byte[buf.getInt()];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
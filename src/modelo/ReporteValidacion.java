@@ -0,0 +1,66 @@
+package modelo;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado de una verificación completa de cadena: todas las fallas
+ * encontradas (con su índice) y el tiempo que tomó.
+ */
+public class ReporteValidacion {
+
+    public enum TipoFalla { VERSION_INVALIDA, HASH_INVALIDO, DIFICULTAD_INSUFICIENTE, ENLACE_ROTO }
+
+    private final int bloquesRevisados;
+    private final List<Falla> fallas;
+    private final long nanos;
+    private final int hilos;
+
+    public ReporteValidacion(int bloquesRevisados, List<Falla> fallas, long nanos, int hilos) {
+        this.bloquesRevisados = bloquesRevisados;
+        this.fallas = Collections.unmodifiableList(fallas);
+        this.nanos = nanos;
+        this.hilos = hilos;
+    }
+
+    public boolean esValida() { return fallas.isEmpty(); }
+    public List<Falla> getFallas() { return fallas; }
+    public int getBloquesRevisados() { return bloquesRevisados; }
+    public long getNanos() { return nanos; }
+    public double getMilisegundos() { return nanos / 1_000_000.0; }
+    public int getHilos() { return hilos; }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(esValida() ? "✅ Cadena válida" : "❌ Cadena inválida (" + fallas.size() + " fallas)")
+          .append(" | bloques: ").append(bloquesRevisados)
+          .append(" | hilos: ").append(hilos)
+          .append(String.format(" | %.2f ms", getMilisegundos()));
+        for (Falla f : fallas) {
+            sb.append("\n   ").append(f);
+        }
+        return sb.toString();
+    }
+
+    public static class Falla {
+        private final int indice;
+        private final TipoFalla tipo;
+        private final String detalle;
+
+        public Falla(int indice, TipoFalla tipo, String detalle) {
+            this.indice = indice;
+            this.tipo = tipo;
+            this.detalle = detalle;
+        }
+
+        public int getIndice() { return indice; }
+        public TipoFalla getTipo() { return tipo; }
+        public String getDetalle() { return detalle; }
+
+        @Override
+        public String toString() {
+            return "Bloque #" + indice + ": " + tipo + " - " + detalle;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package modelo;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Servicio de minado en segundo plano.
+ *
+ * Cifra el contenido del bloque (JSON -> AES, llave AES -> RSA) y ejecuta la
+ * prueba de trabajo en un hilo dedicado, de modo que el llamador (p.ej. el hilo
+ * de eventos de Swing) no se bloquea. Se mina un bloque a la vez; cada envío
+ * devuelve una TareaMinado con el progreso en vivo y la opción de cancelar.
+ */
+public class ServicioMinado {
+
+    private final String rutaLlavePublica; // null si se dio la llave ya cargada
+    private final PublicKey llavePublica;
+    private final MinadorParalelo minador;
+    private final ExecutorService ejecutor;
+
+    public ServicioMinado(String rutaLlavePublica) {
+        this(rutaLlavePublica, MinadorParalelo.porDefecto());
+    }
+
+    public ServicioMinado(String rutaLlavePublica, MinadorParalelo minador) {
+        this(rutaLlavePublica, null, minador);
+    }
+
+    /** Con la llave ya cargada (p.ej. la del servidor), sin releer el PEM en cada bloque. */
+    public ServicioMinado(PublicKey llavePublica, MinadorParalelo minador) {
+        this(null, llavePublica, minador);
+        if (llavePublica == null) throw new IllegalArgumentException("Se requiere la llave pública");
+    }
+
+    private ServicioMinado(String rutaLlavePublica, PublicKey llavePublica, MinadorParalelo minador) {
+        this.rutaLlavePublica = rutaLlavePublica;
+        this.llavePublica = llavePublica;
+        this.minador = minador;
+        this.ejecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "Servicio-Minado");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Cifra y mina el bloque en segundo plano con la dificultad (en bits) de su
+     * altura. El bloque debe traer ya su hashAnterior e index definitivos.
+     */
+    public TareaMinado minar(Bloque bloque, int dificultadBits) {
+        TareaMinado tarea = new TareaMinado(bloque, new ProgresoMinado(dificultadBits));
+        ejecutor.submit(() -> {
+            try {
+                if (tarea.progreso.isCancelado()) {
+                    throw new CancellationException("Cancelado antes de iniciar");
+                }
+                cifrarContenido(bloque, llavePublica != null
+                        ? llavePublica : Encriptador.cargarLlavePublica(rutaLlavePublica));
+                bloque.minarBloqueBits(dificultadBits, minador, tarea.progreso);
+                tarea.resultado.complete(bloque);
+            } catch (Throwable t) {
+                tarea.resultado.completeExceptionally(t);
+            }
+        });
+        return tarea;
+    }
+
+    /**
+     * Serializa las transacciones a JSON, las cifra con AES-GCM por trozos
+     * (CifradorFlujo) usando una llave AES nueva y envuelve esa llave con RSA.
+     */
+    public static void cifrarContenido(Bloque bloque, PublicKey llavePublica) throws Exception {
+        SecretKey llaveAes = Encriptador.generarLlaveAes();
+
+        String datosCifrados = CifradorFlujo.porDefecto().cifrarEntrada(
+                CodecTransacciones.aJson(bloque.getTransacciones()).getBytes(StandardCharsets.UTF_8),
+                llaveAes
+        );
+        byte[] llaveAesCifrada = Encriptador.cifrarLlaveRsa(llaveAes, llavePublica);
+
+        ArrayList<String> listaDatos = new ArrayList<>();
+        listaDatos.add(datosCifrados);
+        bloque.setDatosEncriptados(listaDatos);
+        bloque.setLlaveAesEncriptada(Base64.getEncoder().encodeToString(llaveAesCifrada));
+    }
+
+    public void cerrar() {
+        ejecutor.shutdownNow();
+    }
+
+    /** Minado en curso: resultado futuro + progreso consultable + cancelación. */
+    public static class TareaMinado {
+        private final Bloque bloque;
+        private final ProgresoMinado progreso;
+        private final CompletableFuture<Bloque> resultado = new CompletableFuture<>();
+
+        TareaMinado(Bloque bloque, ProgresoMinado progreso) {
+            this.bloque = bloque;
+            this.progreso = progreso;
+        }
+
+        public Bloque getBloque() { return bloque; }
+        public ProgresoMinado getProgreso() { return progreso; }
+
+        /** Se completa con el bloque minado, o con CancellationException/otro error. */
+        public CompletableFuture<Bloque> getResultado() { return resultado; }
+
+        public void cancelar() {
+            progreso.cancelar();
+        }
+    }
+}
@@ -9,22 +9,33 @@ import java.net.BindException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 
+import protocolo.ProtocoloBlockchain;
+
 /**
- * ServidorBlockchain adaptado a la API real de Bloque (constructor Bloque(String hashAnterior))
+ * ServidorBlockchain adaptado a la API real de Bloque
  *
- * - Crea Bloque usando new Bloque(hashAnterior)
- * - Usa setDatosEncriptados(ArrayList<String>), setLlaveAesEncriptada(String), setIndex(int)
- * - Responde a PING, GET_CHAIN, LIST_PEERS, REPLICATE_BLOCK
+ * - Reconstruye los bloques replicados con el constructor completo de Bloque
+ *   (index, timestamp, nonce, hash, hashAnterior, datos, llave, versión)
+ * - Responde a PING, GET_CHAIN, LIST_PEERS, REPLICATE_BLOCK, HAS_BLOCK, GET_HASH_AT, GET_PROOF
+ * - Para clientes ligeros: GET_HEADERS (solo cabeceras) y GET_BLOCK (un bloque)
+ * - Admisión de transacciones al mempool: TX_NEW y TX_BATCH. Cada lote que sella
+ *   el mempool se mina aquí y el bloque se replica a los peers; un nodo sin
+ *   llave pública no mina y responde ERR|NO_MINER
+ * - Las conexiones son persistentes: varios comandos por conexión, pudiendo
+ *   encadenarlos sin esperar cada respuesta
  *
- * Nota: si tu Blockchain.agregarBloque necesita el nonce/timestamp exacto, entonces
- *       habrá que añadir setters en Bloque o un constructor completo. Más abajo explico las opciones.
+ * Nota: REPLICATE_BLOCK lleva la versión de cabecera tras los datos cifrados; si
+ *       falta (emisores antiguos) se responde ERR|MissingVersion, porque un bloque
+ *       legado no se admite por encima del génesis.
  */
 public class ServidorBlockchain implements Runnable {
 
@@ -40,6 +51,14 @@ public class ServidorBlockchain implements Runnable {
     private HttpServer httpServerMonitor;
 
     private final ServicioReplicacion servicioReplicacion;
+    private final IndiceTransacciones indiceTransacciones;
+    private final IndiceInventario indiceInventario;
+    private final PipelineDescifrado descifrado; // null si el nodo no tiene llave privada
+    private final ServicioMinado servicioMinado; // null si el nodo no tiene llave pública
+
+    private static final int MAX_CABECERAS_POR_LOTE = 2000;
+    private static final int MAX_TRANSACCIONES_POR_LOTE = 10_000;
+    private static final int TIEMPO_INACTIVO_MS = Integer.getInteger("servidor.inactividadMs", 120_000);
 
     public ServidorBlockchain(String nombre, int puertoReplicacion, int puertoMonitorWeb,
                               Blockchain blockchain, PublicKey pubKey, PrivateKey privKey) {
@@ -50,10 +69,35 @@ public class ServidorBlockchain implements Runnable {
         this.publicKey = pubKey;
         this.privateKey = privKey;
         this.servicioReplicacion = new ServicioReplicacion();
+        // Índice de transacciones confirmadas: TX_NEW rechaza reenvíos sin recorrer la cadena
+        this.indiceTransacciones = new IndiceTransacciones();
+        blockchain.registrarEstadoDerivado(indiceTransacciones);
+        blockchain.getMempool().setConfirmada(indiceTransacciones::estaConfirmada);
+        // Stock confirmado: las salidas se admiten solo si hay existencias (contando lo pendiente)
+        this.indiceInventario = new IndiceInventario();
+        blockchain.registrarEstadoDerivado(indiceInventario);
+        blockchain.getMempool().setExistencias(indiceInventario::getCantidad);
+        // Los bloques recargados del almacén solo traen datosEncriptados. Los índices
+        // vienen de la instantánea: solo se descifra lo que aplicaron cifrado (la cola)
+        this.descifrado = privKey != null ? new PipelineDescifrado(privKey) : null;
+        int incompleta = blockchain.getAlturaMinimaIncompleta();
+        while (descifrado != null && incompleta >= 0) {
+            List<Bloque> cadena = blockchain.getCadena();
+            PipelineDescifrado.Resultado r = descifrado.procesar(cadena.subList(incompleta, cadena.size()));
+            if (r.getAlturaMinima() >= 0) blockchain.reaplicarEstadosDerivados(r.getAlturaMinima());
+            // Si re-aplicar tuvo que reconstruir desde el génesis, aparecen alturas más bajas sin descifrar
+            int siguiente = blockchain.getAlturaMinimaIncompleta();
+            incompleta = siguiente >= 0 && siguiente < incompleta ? siguiente : -1;
+        }
+        // Sin llave pública no se puede cifrar un bloque: no se mina ni se admiten transacciones
+        this.servicioMinado = pubKey != null ? new ServicioMinado(pubKey, MinadorParalelo.porDefecto()) : null;
     }
 
     @Override
     public void run() {
+        // Aquí y no en el constructor: el sellador captura this
+        if (servicioMinado != null) blockchain.getMempool().setSellador(this::minarLote);
+
         try {
             iniciarReplicacion();
         } catch (Exception e) {
@@ -101,99 +145,209 @@ public class ServidorBlockchain implements Runnable {
         acceptThread.start();
     }
 
+    /**
+     * Conexión persistente: se atienden comandos línea a línea hasta que el
+     * cliente cierra (o pasa TIEMPO_INACTIVO_MS sin enviar nada). Las respuestas
+     * se acumulan y se envían cuando no queda entrada pendiente, así un cliente
+     * que encadena muchos TX_NEW recibe los acuses en pocos paquetes.
+     */
     private void procesarConexionReplicacion(Socket cliente) {
         String remote = cliente.getRemoteSocketAddress().toString();
         try (BufferedReader in = new BufferedReader(new InputStreamReader(cliente.getInputStream(), StandardCharsets.UTF_8));
-             PrintWriter out = new PrintWriter(new OutputStreamWriter(cliente.getOutputStream(), StandardCharsets.UTF_8), true)) {
+             PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(cliente.getOutputStream(), StandardCharsets.UTF_8)), false)) {
+
+            cliente.setSoTimeout(TIEMPO_INACTIVO_MS);
+            String linea;
+            while (running && (linea = in.readLine()) != null) {
+                linea = linea.trim();
+                if (linea.isEmpty()) continue; // emisores que terminaban el mensaje con "\n" y println
+                atenderComando(linea, in, out, remote);
+                if (!in.ready()) out.flush();
+            }
+            out.flush();
 
-            String linea = in.readLine();
-            if (linea == null) {
-                out.println("ERR|Empty");
-                return;
+        } catch (SocketTimeoutException e) {
+            System.out.println("[" + nombre + "] Conexión inactiva cerrada: " + remote);
+        } catch (Exception e) {
+            System.err.println("[" + nombre + "] Error procesando conexión replicacion desde " + remote + ": " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            try { cliente.close(); } catch (Exception ignored) {}
+        }
+    }
+
+    // Un comando ya leído; puede leer más líneas de "in" (TX_BATCH, que trae su cuerpo)
+    private void atenderComando(String linea, BufferedReader in, PrintWriter out, String remote) throws IOException {
+
+        if ("PING".equalsIgnoreCase(linea)) {
+            out.println("PONG");
+            System.out.println("[" + nombre + "] PING -> PONG desde " + remote);
+            return;
+        }
+
+        if ("GET_CHAIN".equalsIgnoreCase(linea)) {
+            int total = blockchain != null && blockchain.getCadena() != null ? blockchain.getCadena().size() : 0;
+            out.println("OK|" + total);
+            System.out.println("[" + nombre + "] GET_CHAIN -> " + total);
+            return;
+        }
+
+        // ¿Tienes el bloque con este hash? (índice hash -> altura, sin recorrer la cadena)
+        if (linea.startsWith(ProtocoloBlockchain.TIENE_BLOQUE + "|")) {
+            String hash = linea.substring(ProtocoloBlockchain.TIENE_BLOQUE.length() + 1).trim();
+            int altura = blockchain.obtenerAlturaPorHash(hash);
+            out.println(altura >= 0 ? "OK|" + altura : "ERR|" + ProtocoloBlockchain.NO_ENCONTRADO);
+            System.out.println("[" + nombre + "] HAS_BLOCK " + shortHash(hash) + " -> " + altura);
+            return;
+        }
+
+        if (linea.startsWith(ProtocoloBlockchain.HASH_EN_ALTURA + "|")) {
+            try {
+                int altura = Integer.parseInt(linea.substring(ProtocoloBlockchain.HASH_EN_ALTURA.length() + 1).trim());
+                Bloque b = blockchain.obtenerBloquePorAltura(altura);
+                out.println(b != null ? "OK|" + b.getHash() : "ERR|" + ProtocoloBlockchain.NO_ENCONTRADO);
+            } catch (NumberFormatException nfe) {
+                out.println("ERR|BAD_HEIGHT");
+            }
+            return;
+        }
+
+        // Cabeceras por lotes: el cliente ligero verifica enlace y PoW sin el contenido
+        if (linea.startsWith(ProtocoloBlockchain.OBTENER_CABECERAS + "|")) {
+            String[] partes = linea.split("\\|");
+            try {
+                int desde = Math.max(0, Integer.parseInt(partes[1].trim()));
+                int max = partes.length > 2 ? Integer.parseInt(partes[2].trim()) : MAX_CABECERAS_POR_LOTE;
+                List<Bloque> cadena = blockchain.getCadena(); // instantánea
+                int hasta = Math.min(cadena.size(), desde + Math.min(Math.max(max, 0), MAX_CABECERAS_POR_LOTE));
+                StringBuilder sb = new StringBuilder("OK|").append(Math.max(0, hasta - desde)).append('\n');
+                for (int i = desde; i < hasta; i++) {
+                    sb.append(CabeceraBloque.de(cadena.get(i)).codificar()).append('\n');
+                }
+                out.print(sb);
+                out.flush();
+                System.out.println("[" + nombre + "] GET_HEADERS " + desde + " -> " + Math.max(0, hasta - desde));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                out.println("ERR|BAD_RANGE");
             }
-            linea = linea.trim();
+            return;
+        }
 
-            if ("PING".equalsIgnoreCase(linea)) {
-                out.println("PONG");
-                System.out.println("[" + nombre + "] PING -> PONG desde " + remote);
-                return;
+        if (linea.startsWith(ProtocoloBlockchain.OBTENER_BLOQUE + "|")) {
+            try {
+                int altura = Integer.parseInt(linea.substring(ProtocoloBlockchain.OBTENER_BLOQUE.length() + 1).trim());
+                Bloque b = blockchain.obtenerBloquePorAltura(altura);
+                if (b == null) {
+                    out.println("ERR|" + ProtocoloBlockchain.NO_ENCONTRADO);
+                } else {
+                    out.println("OK|" + b.getIndex() + "|" + b.getHash() + "|" + b.getHashAnterior() + "|"
+                            + b.getNonce() + "|" + b.getTimestamp() + "|" + b.getLlaveAesEncriptada() + "|"
+                            + String.join(":", b.getDatosEncriptados()) + "|" + b.getVersion() + "|"
+                            + String.join(":", b.getHashesTransacciones()));
+                }
+            } catch (NumberFormatException nfe) {
+                out.println("ERR|BAD_HEIGHT");
             }
+            return;
+        }
 
-            if ("GET_CHAIN".equalsIgnoreCase(linea)) {
-                int total = blockchain != null && blockchain.getCadena() != null ? blockchain.getCadena().size() : 0;
-                out.println("OK|" + total);
-                System.out.println("[" + nombre + "] GET_CHAIN -> " + total);
-                return;
+        // Prueba de inclusión de una transacción: el auditor no necesita el bloque completo
+        if (linea.startsWith(ProtocoloBlockchain.OBTENER_PRUEBA + "|")) {
+            String[] partes = linea.split("\\|");
+            Bloque b = partes.length >= 3 ? blockchain.obtenerBloquePorHash(partes[1].trim()) : null;
+            PruebaMerkle prueba = b != null && b.getVersion() >= FormatoCabecera.VERSION_MERKLE
+                    ? b.generarPruebaTransaccion(partes[2].trim()) : null;
+            if (prueba == null) {
+                out.println("ERR|" + ProtocoloBlockchain.NO_ENCONTRADO);
+            } else {
+                out.println("OK|" + b.getIndex() + "|" + b.construirArbolMerkle().getRaizHex() + "|" + prueba.codificar());
             }
+            System.out.println("[" + nombre + "] GET_PROOF -> " + (prueba != null ? prueba : "no encontrada"));
+            return;
+        }
+
+        if ("LIST_PEERS".equalsIgnoreCase(linea)) {
+            List<String> peers = servicioReplicacion.listarPeers();
+            StringBuilder sb = new StringBuilder("OK");
+            for (String p : peers) sb.append("|").append(p);
+            out.println(sb.toString());
+            System.out.println("[" + nombre + "] LIST_PEERS -> " + peers.size());
+            return;
+        }
 
-            if ("LIST_PEERS".equalsIgnoreCase(linea)) {
-                List<String> peers = servicioReplicacion.listarPeers();
-                StringBuilder sb = new StringBuilder("OK");
-                for (String p : peers) sb.append("|").append(p);
-                out.println(sb.toString());
-                System.out.println("[" + nombre + "] LIST_PEERS -> " + peers.size());
+        if (linea.startsWith("REPLICATE_BLOCK|")) {
+            // Parseamos y construimos Bloque usando la API disponible
+            // REPLICATE_BLOCK|index|hash|hashAnterior|nonce|timestamp|llaveAes|datosEnc[|version[|hashesTx]]
+            String[] partes = linea.split("\\|", 10); // límite para capturar el resto
+            if (partes.length < 8) {
+                out.println("ERR|Malformed");
+                System.err.println("[" + nombre + "] REPLICATE_BLOCK malformado desde " + remote + " -> " + linea);
                 return;
             }
 
-            if (linea.startsWith("REPLICATE_BLOCK|")) {
-                // Parseamos y construimos Bloque usando la API disponible
-                String[] partes = linea.split("\\|", 9); // límite para capturar el resto
-                if (partes.length < 8) {
-                    out.println("ERR|Malformed");
-                    System.err.println("[" + nombre + "] REPLICATE_BLOCK malformado desde " + remote + " -> " + linea);
+            try {
+                int index = Integer.parseInt(partes[1]);
+                String hash = partes[2];
+                String hashAnterior = partes[3];
+                long nonce = parseLongSafe(partes[4]);
+                long timestamp = parseLongSafe(partes[5]);
+                String llaveAes = partes[6];
+                String datosEncConcatenados = partes.length > 7 ? partes[7] : "";
+                // Sin versión sería un bloque legado, que el consenso ya no admite sobre el génesis
+                if (partes.length < 9 || partes[8].isEmpty()) {
+                    out.println("ERR|MissingVersion");
+                    System.err.println("[" + nombre + "] REPLICATE_BLOCK sin versión desde " + remote);
                     return;
                 }
+                int version = Integer.parseInt(partes[8].trim());
+                // Hashes de transacción (hojas Merkle de la cabecera v2), separados por ":"
+                ArrayList<String> hashesTx = new ArrayList<>();
+                if (partes.length > 9 && !partes[9].isEmpty()) {
+                    Collections.addAll(hashesTx, partes[9].trim().split(":"));
+                }
 
-                try {
-                    int index = Integer.parseInt(partes[1]);
-                    String hash = partes[2];
-                    String hashAnterior = partes[3];
-                    long nonce = parseLongSafe(partes[4]);
-                    long timestamp = parseLongSafe(partes[5]);
-                    String llaveAes = partes[6];
-                    String datosEncConcatenados = partes.length > 7 ? partes[7] : "";
-
-                    // Convertir datosEnc concatenados (si se usó ":" como separador)
-                    ArrayList<String> listaDatos = new ArrayList<>();
-                    if (!datosEncConcatenados.isEmpty()) {
-                        // si usas ":" para separar múltiples datos en mensaje, dividir
-                        if (datosEncConcatenados.contains(":")) {
-                            String[] arr = datosEncConcatenados.split(":");
-                            Collections.addAll(listaDatos, arr);
-                        } else {
-                            listaDatos.add(datosEncConcatenados);
-                        }
+                // Convertir datosEnc concatenados (si se usó ":" como separador)
+                ArrayList<String> listaDatos = new ArrayList<>();
+                if (!datosEncConcatenados.isEmpty()) {
+                    // si usas ":" para separar múltiples datos en mensaje, dividir
+                    if (datosEncConcatenados.contains(":")) {
+                        String[] arr = datosEncConcatenados.split(":");
+                        Collections.addAll(listaDatos, arr);
+                    } else {
+                        listaDatos.add(datosEncConcatenados);
                     }
+                }
 
-                    // Construir bloque con constructor existente
-                    Bloque b = new Bloque(hashAnterior); // usa constructor Bloque(String)
-                    // setear datos encriptados y llave AES
-                    b.setDatosEncriptados(listaDatos);
-                    b.setLlaveAesEncriptada(llaveAes);
-                    b.setIndex(index);
-                    // NOTA: no existe setter para nonce ni para timestamp ni para hash
-                    // Por eso no intentamos fijarlos aquí (si los necesitas, añade setters en Bloque).
-
-                    // Insertar en la blockchain local (asume que agregarBloque acepta este Bloque)
-                    try {
-                        blockchain.agregarBloque(b);
-                        System.out.println("[" + nombre + "] Bloque replicado agregado index=" + index + " (hash recibido: " + shortHash(hash) + ")");
-                        out.println("OK|ADDED");
-                    } catch (Exception exAdd) {
-                        System.err.println("[" + nombre + "] Error agregando bloque replicado: " + exAdd.getMessage());
-                        exAdd.printStackTrace();
-                        out.println("ERR|ADD_FAILED");
-                    }
+                // Constructor completo: conserva nonce, timestamp, hash y versión tal como llegaron
+                Bloque b = new Bloque(index, timestamp, (int) nonce, hash, hashAnterior,
+                        listaDatos, llaveAes, version, hashesTx);
 
-                } catch (Exception ex) {
-                    System.err.println("[" + nombre + "] Error parseando REPLICATE_BLOCK: " + ex.getMessage());
-                    ex.printStackTrace();
-                    out.println("ERR|" + ex.getMessage());
+                // Se cuelga del padre que declara; la regla de mayor trabajo decide la punta
+                try {
+                    // Primero se valida y conecta (barato); solo se descifra lo que entró a la cadena principal
+                    List<Bloque> antes = blockchain.getCadena();
+                    Blockchain.ResultadoRecepcion r = blockchain.recibirBloque(b);
+                    int sinDescifrar = 0;
+                    if (r == Blockchain.ResultadoRecepcion.AGREGADO || r == Blockchain.ResultadoRecepcion.REORGANIZADO) {
+                        sinDescifrar = descifrarEntrantes(antes);
+                    }
+                    System.out.println("[" + nombre + "] Bloque replicado index=" + index + " -> " + r + " (hash recibido: " + shortHash(hash) + ")");
+                    out.println(respuestaRecepcion(r) + (sinDescifrar > 0 ? "|UNDECRYPTED" : ""));
+                } catch (Exception exAdd) {
+                    System.err.println("[" + nombre + "] Error agregando bloque replicado: " + exAdd.getMessage());
+                    exAdd.printStackTrace();
+                    out.println("ERR|ADD_FAILED");
                 }
-                return;
+
+            } catch (Exception ex) {
+                System.err.println("[" + nombre + "] Error parseando REPLICATE_BLOCK: " + ex.getMessage());
+                ex.printStackTrace();
+                out.println("ERR|" + ex.getMessage());
             }
-            
-            // Manejar registro remoto de peers (ej: ConfigurarReplicacion envía esto)
+            return;
+        }
+        
+        // Manejar registro remoto de peers (ej: ConfigurarReplicacion envía esto)
 if (linea.startsWith("REGISTER_PEER|")) {
     try {
         String[] parts = linea.split("\\|");
@@ -217,14 +371,73 @@ if (linea.startsWith("REGISTER_PEER|")) {
 }
 
 
-            out.println("ERR|UNKNOWN_CMD");
-            System.out.println("[" + nombre + "] Comando desconocido desde " + remote + ": " + linea);
+        if (linea.startsWith(ProtocoloBlockchain.OBTENER_SALDO + "|")) {
+            String[] p = ProtocoloBlockchain.parsearMensaje(linea);
+            if (p.length < 3) {
+                out.println("ERR|BAD_ARGS");
+                return;
+            }
+            String farmacia = ProtocoloBlockchain.leerCampo(p[1]);
+            String codigo = ProtocoloBlockchain.leerCampo(p[2]);
+            if (farmacia == null || codigo == null) {
+                out.println("ERR|BAD_ARGS");
+                return;
+            }
+            int confirmado = indiceInventario.getCantidad(farmacia, codigo);
+            int pendiente = blockchain.getMempool().getDeltaPendiente(farmacia, codigo);
+            out.println("OK|" + confirmado + "|" + pendiente + "|" + (confirmado + pendiente));
+            return;
+        }
 
-        } catch (Exception e) {
-            System.err.println("[" + nombre + "] Error procesando conexión replicacion desde " + remote + ": " + e.getMessage());
-            e.printStackTrace();
-        } finally {
-            try { cliente.close(); } catch (Exception ignored) {}
+        if (linea.startsWith(ProtocoloBlockchain.REGISTRAR_TRANSACCION + "|")) {
+            out.println(admitirTransaccion(ProtocoloBlockchain.parsearMensaje(linea), 1));
+            return;
+        }
+
+        // Lote: la cabecera trae n y siguen n líneas de campos; un acuse por transacción
+        if (linea.startsWith(ProtocoloBlockchain.REGISTRAR_LOTE_TRANSACCIONES + "|")) {
+            int n;
+            try {
+                n = Integer.parseInt(linea.substring(ProtocoloBlockchain.REGISTRAR_LOTE_TRANSACCIONES.length() + 1).trim());
+            } catch (NumberFormatException nfe) {
+                out.println("ERR|BAD_COUNT");
+                return;
+            }
+            if (n < 0 || n > MAX_TRANSACCIONES_POR_LOTE) {
+                out.println("ERR|BAD_COUNT");
+                return;
+            }
+            StringBuilder acuses = new StringBuilder("OK|").append(n).append('\n');
+            for (int i = 0; i < n; i++) {
+                String campos = in.readLine();
+                if (campos == null) throw new EOFException("TX_BATCH incompleto: " + i + " de " + n);
+                acuses.append(admitirTransaccion(ProtocoloBlockchain.parsearMensaje(campos), 0)).append('\n');
+            }
+            out.print(acuses);
+            return;
+        }
+
+        out.println("ERR|UNKNOWN_CMD");
+        System.out.println("[" + nombre + "] Comando desconocido desde " + remote + ": " + linea);
+    }
+
+    /** Acuse de una transacción recibida por red (TX_NEW o línea de TX_BATCH). */
+    private String admitirTransaccion(String[] partes, int desde) {
+        TransaccionInventario t;
+        try {
+            t = ProtocoloBlockchain.decodificarTransaccion(partes, desde);
+        } catch (IllegalArgumentException e) {
+            return "ERR|" + ProtocoloBlockchain.TRANSACCION_INVALIDA + "|" + e.getMessage();
+        }
+        // Un acuse OK promete que la transacción se minará: sin sellador nadie lo haría
+        if (servicioMinado == null) {
+            return "ERR|" + ProtocoloBlockchain.SIN_MINERO;
+        }
+        switch (blockchain.admitirTransaccion(t)) {
+            case ACEPTADA: return "OK|" + t.getHashTransaccion();
+            case DUPLICADA: return "ERR|" + ProtocoloBlockchain.DUPLICADA + "|" + t.getHashTransaccion();
+            case SIN_EXISTENCIAS: return "ERR|" + ProtocoloBlockchain.SIN_EXISTENCIAS + "|" + t.getHashTransaccion();
+            default: return "ERR|" + ProtocoloBlockchain.MEMPOOL_LLENO + "|" + t.getHashTransaccion();
         }
     }
 
@@ -232,6 +445,93 @@ if (linea.startsWith("REGISTER_PEER|")) {
         try { return Long.parseLong(s); } catch (Exception e) { return 0L; }
     }
 
+    // -----------------------
+    // Minado de lotes del mempool
+    // -----------------------
+
+    // Sellador del mempool: se llama fuera de su lock, con un lote en vuelo
+    private void minarLote(List<TransaccionInventario> lote) {
+        List<Bloque> cadena = blockchain.getCadena();
+        Bloque bloque = new Bloque(cadena.get(cadena.size() - 1).getHash());
+        bloque.setIndex(cadena.size());
+        // Con el reloj atrasado respecto a la cadena el bloque no superaría la mediana
+        bloque.setTiempoCreacion(Math.max(bloque.getTimestamp(), blockchain.getTimestampMinimoSiguiente()));
+        for (TransaccionInventario t : lote) bloque.agregarTransaccion(t);
+        System.out.println("[" + nombre + "] ⛏️ Minando bloque #" + bloque.getIndex() + " con " + lote.size() + " transacciones");
+        servicioMinado.minar(bloque, blockchain.getDificultadBits(bloque.getIndex()))
+                .getResultado().whenComplete(this::alTerminarMinado);
+    }
+
+    // En el hilo de ServicioMinado: el lote se confirma solo si el bloque quedó en la cadena principal
+    private void alTerminarMinado(Bloque bloque, Throwable error) {
+        Mempool mempool = blockchain.getMempool();
+        if (error != null) {
+            mempool.devolverLote();
+            if (running) System.err.println("[" + nombre + "] Error al minar, lote devuelto: " + error.getMessage());
+            return;
+        }
+        Blockchain.ResultadoRecepcion r;
+        try {
+            r = blockchain.recibirBloque(bloque);
+        } catch (RuntimeException e) {
+            mempool.devolverLote();
+            System.err.println("[" + nombre + "] No se pudo agregar el bloque minado, lote devuelto: " + e.getMessage());
+            return;
+        }
+        if (r != Blockchain.ResultadoRecepcion.AGREGADO && r != Blockchain.ResultadoRecepcion.REORGANIZADO) {
+            // La punta cambió mientras se minaba: se vuelve a sellar sobre la nueva
+            mempool.devolverLote();
+            System.out.println("[" + nombre + "] Bloque minado #" + bloque.getIndex() + " fuera de la cadena (" + r + "), lote devuelto");
+            return;
+        }
+        mempool.confirmarLote();
+        servicioReplicacion.replicarBloque(bloque);
+    }
+
+    /**
+     * Repone las transacciones de los bloques que entraron a la cadena principal
+     * desde la instantánea "antes" (el replicado, los huérfanos que conectó y,
+     * tras una reorganización, la rama entrante) y re-aplica los estados
+     * derivados desde el primero repuesto. Si una reorganización más profunda
+     * que los registros de deshacer los reconstruyó, también los bloques
+     * anteriores que aún no se habían descifrado (cargados con la instantánea).
+     * Devuelve cuántos no se pudieron descifrar: esos quedan en la cadena sin
+     * transacciones en el inventario.
+     */
+    private int descifrarEntrantes(List<Bloque> antes) {
+        if (descifrado == null) return 0;
+        List<Bloque> cadena = blockchain.getCadena();
+        int base = Math.min(antes.size(), cadena.size());
+        while (base > 0 && !antes.get(base - 1).getHash().equals(cadena.get(base - 1).getHash())) base--;
+        if (base < antes.size()) {
+            int incompleta = blockchain.getAlturaMinimaIncompleta();
+            if (incompleta >= 0) base = Math.min(base, incompleta);
+        }
+        ArrayList<Bloque> pendientes = new ArrayList<>();
+        for (int h = base; h < cadena.size(); h++) {
+            if (PipelineDescifrado.necesitaDescifrado(cadena.get(h))) pendientes.add(cadena.get(h));
+        }
+        if (pendientes.isEmpty()) return 0;
+        PipelineDescifrado.Resultado r = descifrado.procesar(pendientes);
+        if (r.getAlturaMinima() >= 0) blockchain.reaplicarEstadosDerivados(r.getAlturaMinima());
+        if (r.getFallidos() > 0) {
+            System.err.println("[" + nombre + "] ⚠️ " + r.getFallidos() + " bloques aceptados sin descifrar desde #" + base
+                    + ": el inventario no incluye sus transacciones");
+        }
+        return r.getFallidos();
+    }
+
+    private static String respuestaRecepcion(Blockchain.ResultadoRecepcion r) {
+        switch (r) {
+            case AGREGADO: return "OK|ADDED";
+            case RAMA_LATERAL: return "OK|SIDE_BRANCH";
+            case REORGANIZADO: return "OK|REORG";
+            case HUERFANO: return "OK|ORPHAN";
+            case DUPLICADO: return "OK|DUPLICATE";
+            default: return "ERR|REJECTED";
+        }
+    }
+
     private String shortHash(String s) {
         if (s == null) return "";
         return s.length() > 12 ? s.substring(0, 12) + "..." : s;
@@ -304,7 +604,8 @@ if (linea.startsWith("REGISTER_PEER|")) {
     // ServicioReplicacion
     // -----------------------
     public class ServicioReplicacion {
-        private final Map<String, Integer> peers = new HashMap<>();
+        // Concurrente: replicarBloque la recorre desde el hilo de minado mientras las conexiones registran o quitan peers
+        private final Map<String, Integer> peers = new ConcurrentHashMap<>();
 
         public void registrarPeer(String host, int puerto) {
             String key = host + ":" + puerto;
@@ -334,7 +635,9 @@ if (linea.startsWith("REGISTER_PEER|")) {
                     + bloque.getNonce() + "|"
                     + bloque.getTimestamp() + "|"
                     + (bloque.getLlaveAesEncriptada() != null ? bloque.getLlaveAesEncriptada() : "") + "|"
-                    + datosEnc;
+                    + datosEnc + "|"
+                    + bloque.getVersion() + "|"
+                    + String.join(":", bloque.getHashesTransacciones());
 
             for (String key : peers.keySet()) {
                 String[] parts = key.split(":");
@@ -367,6 +670,11 @@ if (linea.startsWith("REGISTER_PEER|")) {
 
     public void stop() {
         running = false;
+        if (servicioMinado != null) {
+            blockchain.getMempool().setSellador(null);
+            servicioMinado.cerrar();
+        }
+        if (descifrado != null) descifrado.cerrar();
         try { if (serverSocketReplicacion != null && !serverSocketReplicacion.isClosed()) serverSocketReplicacion.close(); } catch (Exception ignored) {}
         try { if (httpServerMonitor != null) httpServerMonitor.stop(0); } catch (Exception ignored) {}
         System.out.println("[" + nombre + "] Servidor detenido.");
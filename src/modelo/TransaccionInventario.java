@@ -32,8 +32,24 @@ public class TransaccionInventario implements Serializable {
         this.hashTransaccion = calcularHash();
     }
 
-    // Calcula el hash de la transaccion
-    public String calcularHash() {
+    /**
+     * Reconstruye una transacción creada en otro lado (red, bloque descifrado)
+     * con su tiempo de creación original, así el hash coincide con el del emisor.
+     */
+    public TransaccionInventario(String farmaciaId, Producto producto, String tipoMovimiento, String responsable,
+                                 String lote, String fechaCaducidad, long tiempoCreacion) {
+        this.farmaciaId = farmaciaId;
+        this.producto = producto;
+        this.tipoMovimiento = tipoMovimiento;
+        this.responsable = responsable;
+        this.lote = lote;
+        this.fechaCaducidad = fechaCaducidad;
+        this.tiempoCreacion = tiempoCreacion;
+        this.hashTransaccion = calcularHash();
+    }
+
+    // Calcula el hash de la transaccion (final: lo llaman los constructores)
+    public final String calcularHash() {
         
         String datosTransaccion = farmaciaId + producto.getNombre() + producto.getCodigo() + Integer.toString(producto.getCantidad()) + tipoMovimiento + responsable + lote + fechaCaducidad + Long.toString(tiempoCreacion);
         return CriptoUtil.aplicarSha256(datosTransaccion);
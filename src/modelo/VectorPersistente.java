@@ -0,0 +1,98 @@
+package modelo;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Lista inmutable por segmentos con copia-en-escritura.
+ *
+ * Los elementos viven en segmentos de TAMANO_SEGMENTO posiciones. Agregar un
+ * elemento crea una versión nueva que comparte todos los segmentos llenos con
+ * la anterior y solo copia el último segmento (y el arreglo de referencias a
+ * segmentos). Así cada versión publicada es una instantánea consistente que
+ * los lectores pueden recorrer sin bloqueos mientras el escritor sigue agregando.
+ */
+public final class VectorPersistente<T> extends AbstractList<T> implements RandomAccess {
+
+    private static final int BITS_SEGMENTO = 8;
+    static final int TAMANO_SEGMENTO = 1 << BITS_SEGMENTO;
+    private static final int MASCARA = TAMANO_SEGMENTO - 1;
+
+    private static final VectorPersistente<?> VACIO = new VectorPersistente<>(new Object[0][], 0);
+
+    private final Object[][] segmentos;
+    private final int tamano;
+
+    private VectorPersistente(Object[][] segmentos, int tamano) {
+        this.segmentos = segmentos;
+        this.tamano = tamano;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> VectorPersistente<T> vacio() {
+        return (VectorPersistente<T>) VACIO;
+    }
+
+    public static <T> VectorPersistente<T> de(List<? extends T> elementos) {
+        int n = elementos.size();
+        Object[][] segs = new Object[(n + MASCARA) >>> BITS_SEGMENTO][];
+        for (int s = 0; s < segs.length; s++) {
+            int desde = s << BITS_SEGMENTO;
+            int hasta = Math.min(n, desde + TAMANO_SEGMENTO);
+            Object[] seg = new Object[hasta - desde];
+            for (int i = desde; i < hasta; i++) {
+                seg[i - desde] = elementos.get(i);
+            }
+            segs[s] = seg;
+        }
+        return new VectorPersistente<>(segs, n);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int indice) {
+        if (indice < 0 || indice >= tamano) {
+            throw new IndexOutOfBoundsException("Índice " + indice + " fuera de [0, " + tamano + ")");
+        }
+        return (T) segmentos[indice >>> BITS_SEGMENTO][indice & MASCARA];
+    }
+
+    @Override
+    public int size() {
+        return tamano;
+    }
+
+    /** Nueva versión con el elemento al final; esta instancia no cambia. */
+    public VectorPersistente<T> agregar(T elemento) {
+        int pos = tamano & MASCARA;
+        Object[][] segs;
+        if (pos == 0) {
+            // Segmento nuevo: se copian solo las referencias a segmentos
+            segs = Arrays.copyOf(segmentos, segmentos.length + 1);
+            segs[segs.length - 1] = new Object[] { elemento };
+        } else {
+            segs = segmentos.clone();
+            Object[] ultimo = Arrays.copyOf(segmentos[segs.length - 1], pos + 1);
+            ultimo[pos] = elemento;
+            segs[segs.length - 1] = ultimo;
+        }
+        return new VectorPersistente<>(segs, tamano + 1);
+    }
+
+    /** Nueva versión con solo los primeros "nuevoTamano" elementos. */
+    public VectorPersistente<T> truncar(int nuevoTamano) {
+        if (nuevoTamano < 0 || nuevoTamano > tamano) {
+            throw new IndexOutOfBoundsException("Tamaño " + nuevoTamano + " fuera de [0, " + tamano + "]");
+        }
+        if (nuevoTamano == tamano) return this;
+        int numSegs = (nuevoTamano + MASCARA) >>> BITS_SEGMENTO;
+        Object[][] segs = Arrays.copyOf(segmentos, numSegs);
+        int resto = nuevoTamano & MASCARA;
+        if (resto != 0) {
+            segs[numSegs - 1] = Arrays.copyOf(segs[numSegs - 1], resto);
+        }
+        return new VectorPersistente<>(segs, nuevoTamano);
+    }
+}
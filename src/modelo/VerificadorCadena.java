@@ -0,0 +1,105 @@
+package modelo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Verificación completa de una cadena (auditorías, adopción de cadenas remotas).
+ *
+ * A diferencia de Blockchain.esCadenaValida, no se detiene en el primer fallo:
+ * reporta cada versión no admitida, hash inválido, dificultad insuficiente y
+ * enlace roto con su índice.
+ * Cada comprobación depende solo del bloque y su anterior, así que la versión
+ * paralela divide la cadena en rangos con fork-join. Ambas versiones devuelven
+ * el tiempo empleado para poder compararlas.
+ */
+public class VerificadorCadena {
+
+    // Bloques por tarea hoja: por debajo de esto no compensa dividir
+    private static final int UMBRAL = 64;
+
+    private VerificadorCadena() {}
+
+    public static ReporteValidacion verificarSecuencial(List<Bloque> cadena, IntUnaryOperator bitsEnAltura) {
+        long inicio = System.nanoTime();
+        List<ReporteValidacion.Falla> fallas = verificarRango(cadena, bitsEnAltura, 1, cadena.size());
+        return new ReporteValidacion(cadena.size(), fallas, System.nanoTime() - inicio, 1);
+    }
+
+    public static ReporteValidacion verificarParalelo(List<Bloque> cadena, IntUnaryOperator bitsEnAltura) {
+        return verificarParalelo(cadena, bitsEnAltura, ForkJoinPool.commonPool());
+    }
+
+    public static ReporteValidacion verificarParalelo(List<Bloque> cadena, IntUnaryOperator bitsEnAltura,
+                                                      ForkJoinPool pool) {
+        long inicio = System.nanoTime();
+        List<ReporteValidacion.Falla> fallas = pool.invoke(new TareaRango(cadena, bitsEnAltura, 1, cadena.size()));
+        fallas.sort(Comparator.comparingInt(ReporteValidacion.Falla::getIndice));
+        return new ReporteValidacion(cadena.size(), fallas, System.nanoTime() - inicio, pool.getParallelism());
+    }
+
+    // Verifica los bloques [desde, hasta) contra su anterior
+    private static List<ReporteValidacion.Falla> verificarRango(List<Bloque> cadena, IntUnaryOperator bitsEnAltura,
+                                                                int desde, int hasta) {
+        List<ReporteValidacion.Falla> fallas = new ArrayList<>();
+        for (int i = desde; i < hasta; i++) {
+            Bloque actual = cadena.get(i);
+            Bloque anterior = cadena.get(i - 1);
+
+            if (!FormatoCabecera.esVersionValidaSobre(actual.getVersion(), anterior.getVersion())) {
+                fallas.add(new ReporteValidacion.Falla(i, ReporteValidacion.TipoFalla.VERSION_INVALIDA,
+                        "versión " + actual.getVersion() + " sobre un bloque v" + anterior.getVersion()));
+            } else if (!actual.getHash().equals(actual.calcularHash())) {
+                fallas.add(new ReporteValidacion.Falla(i, ReporteValidacion.TipoFalla.HASH_INVALIDO,
+                        "hash almacenado no coincide con el recalculado"));
+            } else {
+                int bits = bitsEnAltura.applyAsInt(i);
+                if (!actual.cumpleDificultadBits(bits)) {
+                    fallas.add(new ReporteValidacion.Falla(i, ReporteValidacion.TipoFalla.DIFICULTAD_INSUFICIENTE,
+                            "se exigen " + bits + " bits"));
+                }
+            }
+
+            if (!actual.getHashAnterior().equals(anterior.getHash())) {
+                fallas.add(new ReporteValidacion.Falla(i, ReporteValidacion.TipoFalla.ENLACE_ROTO,
+                        "hashAnterior no apunta al bloque #" + (i - 1)));
+            }
+        }
+        return fallas;
+    }
+
+    private static class TareaRango extends RecursiveTask<List<ReporteValidacion.Falla>> {
+        // RecursiveTask es Serializable, pero estas tareas nunca se serializan
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<Bloque> cadena;
+        private final transient IntUnaryOperator bitsEnAltura;
+        private final transient int desde;
+        private final transient int hasta;
+
+        TareaRango(List<Bloque> cadena, IntUnaryOperator bitsEnAltura, int desde, int hasta) {
+            this.cadena = cadena;
+            this.bitsEnAltura = bitsEnAltura;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        @Override
+        protected List<ReporteValidacion.Falla> compute() {
+            if (hasta - desde <= UMBRAL) {
+                return verificarRango(cadena, bitsEnAltura, desde, hasta);
+            }
+            int medio = (desde + hasta) >>> 1;
+            TareaRango izquierda = new TareaRango(cadena, bitsEnAltura, desde, medio);
+            TareaRango derecha = new TareaRango(cadena, bitsEnAltura, medio, hasta);
+            izquierda.fork();
+            List<ReporteValidacion.Falla> resultado = derecha.compute();
+            resultado.addAll(izquierda.join());
+            return resultado;
+        }
+    }
+}
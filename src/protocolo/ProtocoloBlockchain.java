@@ -1,5 +1,12 @@
 package protocolo;
 
+import modelo.Medicamento;
+import modelo.TransaccionInventario;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
 public class ProtocoloBlockchain {
     
     // COMANDOS DEL PROTOCOLO (existentes)
@@ -18,6 +25,28 @@ public class ProtocoloBlockchain {
     public static final String REGISTRAR_PEER = "REGISTER_PEER";
     public static final String LISTAR_PEERS = "LIST_PEERS";
     
+    // CONSULTAS POR ÍNDICE (sin transferir la cadena)
+    public static final String TIENE_BLOQUE = "HAS_BLOCK";          // HAS_BLOCK|hash -> OK|altura
+    public static final String HASH_EN_ALTURA = "GET_HASH_AT";      // GET_HASH_AT|altura -> OK|hash
+    public static final String OBTENER_CABECERAS = "GET_HEADERS";   // GET_HEADERS|desde|max -> OK|n + n líneas de cabecera
+    public static final String OBTENER_BLOQUE = "GET_BLOCK";        // GET_BLOCK|altura -> OK|<campos de REPLICATE_BLOCK>
+    public static final String OBTENER_PRUEBA = "GET_PROOF";        // GET_PROOF|hashBloque|hashTx -> OK|altura|raiz|prueba
+    public static final String NO_ENCONTRADO = "NOT_FOUND";
+
+    // ADMISIÓN DE TRANSACCIONES (conexión persistente; se pueden encadenar sin esperar respuesta)
+    // TX_NEW|<campos> -> OK|hash  o  ERR|DUPLICATE|hash, ERR|FULL|hash, ERR|BAD_TX|motivo, ERR|NO_MINER
+    // (BAD_TX también si farmacia, tipo, nombre o código llegan como "~")
+    // TX_BATCH|n + n líneas <campos> -> OK|n + n líneas de acuse (mismo formato que TX_NEW)
+    // <campos> = farmacia|tipo|nombre|codigo|cantidad|responsable|lote|fechaCaducidad|tiempoCreacion
+    public static final String REGISTRAR_LOTE_TRANSACCIONES = "TX_BATCH";
+    public static final int CAMPOS_TRANSACCION = 9;
+    public static final String DUPLICADA = "DUPLICATE";
+    public static final String MEMPOOL_LLENO = "FULL";
+    public static final String TRANSACCION_INVALIDA = "BAD_TX";
+    public static final String SIN_EXISTENCIAS = "INSUFFICIENT_STOCK"; // ERR|INSUFFICIENT_STOCK|hash
+    public static final String SIN_MINERO = "NO_MINER"; // el nodo no mina: nada incluiría la transacción
+    // GET_BALANCE|farmacia|codigo -> OK|confirmado|pendiente|disponible (campos escapados como en TX_NEW)
+    
     // RESPUESTAS DEL PROTOCOLO
     public static final String OK = "OK";
     public static final String ERROR = "ERROR";
@@ -39,6 +68,53 @@ public class ProtocoloBlockchain {
         return mensaje.toString();
     }
     
+    /** Campos de la transacción escapados para viajar en una línea (ver TX_NEW). */
+    public static String codificarTransaccion(TransaccionInventario t) {
+        return campo(t.getFarmaciaId()) + SEPARADOR + campo(t.getTipoMovimiento()) + SEPARADOR
+                + campo(t.getProducto().getNombre()) + SEPARADOR + campo(t.getProducto().getCodigo()) + SEPARADOR
+                + t.getProducto().getCantidad() + SEPARADOR + campo(t.getResponsable()) + SEPARADOR
+                + campo(t.getLote()) + SEPARADOR + campo(t.getFechaCaducidad()) + SEPARADOR + t.getTiempoCreacion();
+    }
+
+    /**
+     * Reconstruye la transacción desde partes[desde..desde+8]; conserva el
+     * tiempo de creación, así que el hash coincide con el del emisor.
+     * @throws IllegalArgumentException si faltan campos o no son válidos
+     */
+    public static TransaccionInventario decodificarTransaccion(String[] partes, int desde) {
+        if (partes.length - desde < CAMPOS_TRANSACCION) {
+            throw new IllegalArgumentException("Se esperaban " + CAMPOS_TRANSACCION + " campos");
+        }
+        String tipo = leerCampo(partes[desde + 1]); // null ("~") tampoco es un tipo conocido
+        if (!TransaccionInventario.ENTRADA.equals(tipo) && !TransaccionInventario.SALIDA.equals(tipo)
+                && !TransaccionInventario.AJUSTE.equals(tipo)) {
+            throw new IllegalArgumentException("Tipo de movimiento desconocido: " + tipo);
+        }
+        int cantidad = Integer.parseInt(partes[desde + 4].trim());
+        if (cantidad < 0) throw new IllegalArgumentException("Cantidad negativa");
+        String farmacia = leerCampo(partes[desde]);
+        String nombre = leerCampo(partes[desde + 2]);
+        String codigo = leerCampo(partes[desde + 3]);
+        // Los índices y los puntos de control guardan farmacia, nombre y código: null no se admite
+        if (farmacia == null || nombre == null || codigo == null) {
+            throw new IllegalArgumentException("Falta farmacia, nombre o código");
+        }
+        return new TransaccionInventario(farmacia,
+                new Medicamento(nombre, codigo, cantidad, ""),
+                tipo, leerCampo(partes[desde + 5]), leerCampo(partes[desde + 6]), leerCampo(partes[desde + 7]),
+                Long.parseLong(partes[desde + 8].trim()));
+    }
+
+    // URL-encoding: el texto nunca contiene "|", ":" ni saltos de línea. "~" (que el
+    // codificador siempre escapa) representa null, para que el hash no cambie
+    public static String campo(String texto) {
+        return texto == null ? "~" : URLEncoder.encode(texto, StandardCharsets.UTF_8);
+    }
+
+    public static String leerCampo(String campo) {
+        return "~".equals(campo) ? null : URLDecoder.decode(campo, StandardCharsets.UTF_8);
+    }
+
     public static String[] parsearMensaje(String mensaje) {
         if (mensaje == null || mensaje.trim().isEmpty()) {
             return new String[0];
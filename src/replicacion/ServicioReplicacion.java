@@ -3,6 +3,7 @@ package replicacion;
 
 import modelo.Bloque;
 import modelo.Blockchain;
+import modelo.ReporteValidacion;
 import protocolo.ProtocoloBlockchain;
 
 import java.io.*;
@@ -95,10 +96,14 @@ public class ServicioReplicacion {
                 String.valueOf(bloque.getNonce()),
                 String.valueOf(bloque.getTimestamp()),
                 bloque.getLlaveAesEncriptada(),
-                serializarDatosEncriptados(bloque.getDatosEncriptados())
+                serializarDatosEncriptados(bloque.getDatosEncriptados()),
+                String.valueOf(bloque.getVersion()),
+                serializarDatosEncriptados(bloque.getHashesTransacciones())
             );
             
-            out.println(mensaje);
+            // crearMensaje ya termina en "\n": println enviaba además una línea vacía
+            out.print(mensaje);
+            out.flush();
             String respuesta = in.readLine();
             
             if (respuesta != null && respuesta.startsWith(ProtocoloBlockchain.OK)) {
@@ -134,9 +139,13 @@ public class ServicioReplicacion {
                 Blockchain cadenaRemota = obtenerCadenaRemota(host, puerto);
                 
                 if (cadenaRemota != null && cadenaRemota.getCadena().size() > cadenaMasLarga.getCadena().size()) {
-                    if (cadenaRemota.esCadenaValida()) {
+                    // Auditoría paralela: se reportan todas las fallas de la cadena remota
+                    ReporteValidacion reporte = cadenaRemota.auditarCadena();
+                    if (reporte.esValida()) {
                         cadenaMasLarga = cadenaRemota;
                         System.out.println("✅ Cadena más larga encontrada en " + peer);
+                    } else {
+                        System.err.println("❌ Cadena de " + peer + " rechazada: " + reporte);
                     }
                 }
                 
@@ -145,10 +154,17 @@ public class ServicioReplicacion {
             }
         }
         
-        // Si encontramos una cadena más larga y válida, la adoptamos
-        if (cadenaMasLarga.getCadena().size() > blockchain.getCadena().size()) {
-            blockchain.setCadena(new ArrayList<>(cadenaMasLarga.getCadena()));
-            System.out.println("🔄 Cadena actualizada. Nuevos bloques: " + blockchain.getCadena().size());
+        // Si encontramos una cadena más larga y válida, se entregan solo los bloques
+        // que no conocemos: el árbol de bloques decide si hay que reorganizar
+        if (cadenaMasLarga != blockchain) {
+            int recibidos = 0;
+            for (Bloque b : cadenaMasLarga.getCadena()) {
+                if (!blockchain.contieneBloque(b.getHash())) {
+                    blockchain.recibirBloque(b);
+                    recibidos++;
+                }
+            }
+            System.out.println("🔄 Cadena actualizada (" + recibidos + " bloques recibidos). Total: " + blockchain.getCadena().size());
         } else {
             System.out.println("✅ Cadena local está actualizada");
         }
@@ -181,6 +197,28 @@ public class ServicioReplicacion {
         }
     }
     
+    /**
+     * Pregunta a un peer si tiene el bloque con ese hash.
+     * @return altura del bloque en el peer, o -1 si no lo tiene o no responde
+     */
+    public int consultarBloqueEnPeer(String host, int puerto, String hash) {
+        try (Socket socket = new Socket(host, puerto);
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            
+            out.print(ProtocoloBlockchain.crearMensaje(ProtocoloBlockchain.TIENE_BLOQUE, hash));
+            out.flush();
+            String[] partes = ProtocoloBlockchain.parsearMensaje(in.readLine());
+            if (partes.length > 1 && ProtocoloBlockchain.OK.equals(partes[0])) {
+                return Integer.parseInt(partes[1]);
+            }
+            return -1;
+            
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+    
     /**
      * Serializa los datos encriptados para envío
      */
@@ -3,13 +3,27 @@ package vista;
 // ──────────────────────────────────────────────────────────
 // Imports del proyecto
 // ──────────────────────────────────────────────────────────
+import modelo.AjusteDificultad;
+import modelo.AlmacenBloques;
 import modelo.Bloque;
+import modelo.CacheLlaves;
+import modelo.CifradorFlujo;
 import modelo.Blockchain;
 import modelo.Encriptador;
+import modelo.IndiceInventario;
+import modelo.IndiceLotes;
+import modelo.IndiceTransacciones;
+import modelo.LoteInventario;
+import modelo.Existencia;
+import modelo.PuntosControlInventario;
 import modelo.Medicamento;
+import modelo.PipelineDescifrado;
+import modelo.Mempool;
 import modelo.Producto;
 import modelo.TransaccionInventario;
 import modelo.ConexionPostgres;
+import modelo.ProgresoMinado;
+import modelo.ServicioMinado;
 import java.net.Socket;
 // ──────────────────────────────────────────────────────────
 // Imports de Java
@@ -19,19 +33,21 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.security.PrivateKey;
-import java.security.PublicKey;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Base64;
-import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 // ──────────────────────────────────────────────────────────
 // Imports externos
@@ -47,12 +63,22 @@ public class FarmaciaApp extends JFrame {
     // Atributos principales
     // ──────────────────────────────────────────────────────────
     private Blockchain blockchain;
-    private Bloque bloquePendiente;
+    // Stock por farmacia y producto, mantenido por la cadena bloque a bloque
+    private final IndiceInventario indiceInventario = new IndiceInventario();
+    private final IndiceLotes indiceLotes = new IndiceLotes();
+    private final IndiceTransacciones indiceTransacciones = new IndiceTransacciones();
+    private PuntosControlInventario puntosControl;
+    // Llaves AES desenvueltas y contenidos descifrados de bloques vistos hace poco
+    private final CacheLlaves cacheLlaves = new CacheLlaves();
+    private Mempool mempool;
+    private boolean minadoManual;
     private ArrayList<String> listaFarmacias;
 
     // Rutas de llaves
     private static final String RUTA_LLAVE_PUBLICA = "public_key_descifrada.pem";
        private static final String RUTA_LLAVE_PRIVADA = "private_key_descifrada.pem";
+    // Registro de bloques en disco (reemplaza los bloque_N.json)
+    private static final String DIR_ALMACEN = System.getProperty("almacen.dir", "datos_bloques");
 
     // Componentes UI
     private JComboBox<String> comboFarmacias;
@@ -62,11 +88,23 @@ public class FarmaciaApp extends JFrame {
     private DefaultListModel<TransaccionInventario> listModelTransaccionesPendientes;
     private JList<TransaccionInventario> listaTransaccionesPendientes;
 
-    private DefaultListModel<Producto> listModelInventario;
-    private JList<Producto> listaInventario;
+    private DefaultListModel<Existencia> listModelInventario;
+    private JList<Existencia> listaInventario;
 
     private JTextArea areaContenidoBloque;
     private JLabel labelEstado;
+    private JButton btnMinarBloque;
+    private JButton btnCancelarMinado;
+
+    // Minado en segundo plano: la UI sigue aceptando transacciones para el siguiente bloque
+    private final ServicioMinado servicioMinado = new ServicioMinado(RUTA_LLAVE_PUBLICA);
+    private final ExecutorService ejecutorPostMinado = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Post-Minado");
+        t.setDaemon(true);
+        return t;
+    });
+    private ServicioMinado.TareaMinado tareaMinado;
+    private Timer timerProgreso;
 
     // ──────────────────────────────────────────────────────────
     // Constructor
@@ -74,8 +112,35 @@ public class FarmaciaApp extends JFrame {
     public FarmaciaApp() {
 
         // Inicialización
-        blockchain = new Blockchain(4);
-        bloquePendiente = new Bloque(blockchain.obtenerUltimoBloque().getHash());
+        try {
+            blockchain = new Blockchain(AjusteDificultad.porDefecto(4),
+                    new AlmacenBloques(Paths.get(DIR_ALMACEN)));
+            // Al salir: instantánea (índice + marca de agua) para arrancar rápido la próxima vez
+            Blockchain cadena = blockchain;
+            Runtime.getRuntime().addShutdownHook(new Thread(cadena::cerrar, "Cierre-Almacen"));
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("⚠️ No se pudo abrir el almacén de bloques: " + ex.getMessage());
+            JOptionPane.showMessageDialog(null,
+                    "No se pudo abrir el almacén de bloques; la cadena será solo en memoria.\n" + ex.getMessage());
+            blockchain = new Blockchain(4);
+        }
+        blockchain.registrarEstadoDerivado(indiceInventario);
+        blockchain.registrarEstadoDerivado(indiceLotes);
+        blockchain.registrarEstadoDerivado(indiceTransacciones);
+        // Puntos de control del inventario junto al almacén (o en memoria si no hay almacén)
+        try {
+            puntosControl = blockchain.getAlmacen() != null
+                    ? new PuntosControlInventario(blockchain, blockchain.getAlmacen().getDirectorio().resolve("inventario"),
+                            PuntosControlInventario.CADA_DEFECTO)
+                    : new PuntosControlInventario(blockchain, PuntosControlInventario.CADA_DEFECTO);
+        } catch (IOException ex) {
+            System.err.println("⚠️ Puntos de control en memoria: " + ex.getMessage());
+            puntosControl = new PuntosControlInventario(blockchain, PuntosControlInventario.CADA_DEFECTO);
+        }
+        blockchain.registrarEstadoDerivado(puntosControl);
+        mempool = blockchain.getMempool();
+        mempool.setConfirmada(indiceTransacciones::estaConfirmada);
+        mempool.setExistencias(indiceInventario::getCantidad);
 
         listaFarmacias = new ArrayList<>();
         listaFarmacias.add("Farmacia A");
@@ -83,6 +148,10 @@ public class FarmaciaApp extends JFrame {
 
         configurarVentana();
         configurarPaneles();
+
+        // El mempool sella solo por tamaño o antigüedad; el lote se mina en el hilo de eventos
+        mempool.setAlCambiar(() -> SwingUtilities.invokeLater(this::refrescarPendientes));
+        mempool.setSellador(lote -> SwingUtilities.invokeLater(() -> minarLote(lote, false)));
     }
 
     // ──────────────────────────────────────────────────────────
@@ -121,7 +190,7 @@ public class FarmaciaApp extends JFrame {
         listModelBloques = new DefaultListModel<>();
         listaBloques = new JList<>(listModelBloques);
         listaBloques.setBorder(BorderFactory.createTitledBorder("Bloques de la Cadena"));
-        listModelBloques.addElement(blockchain.getCadena().get(0)); // Génesis
+        for (Bloque b : blockchain.getCadena()) listModelBloques.addElement(b); // Génesis + los cargados de disco
 
         // ─────────────────────────────
         // Transacciones pendientes
@@ -167,21 +236,37 @@ public class FarmaciaApp extends JFrame {
 
         JButton btnRegistrarEntrada = new JButton("Registrar Entrada");
         JButton btnRegistrarSalida = new JButton("Registrar Salida");
-        JButton btnMinarBloque = new JButton("Minar Nuevo Bloque");
+        btnMinarBloque = new JButton("Minar Nuevo Bloque");
+        btnCancelarMinado = new JButton("Cancelar Minado");
+        btnCancelarMinado.setEnabled(false);
         JButton btnValidarCadena = new JButton("Validar Cadena");
         JButton btnVerContenido = new JButton("Ver Contenido del Bloque");
+        JButton btnLotesPorCaducar = new JButton("Lotes por Caducar");
+        JButton btnRastrearLote = new JButton("Rastrear Lote");
+        JButton btnInventarioHistorico = new JButton("Inventario Histórico");
+        JButton btnDescifrarCadena = new JButton("Descifrar Cadena");
 
         btnRegistrarEntrada.addActionListener(e -> registrarMovimiento(TransaccionInventario.ENTRADA));
         btnRegistrarSalida.addActionListener(e -> registrarMovimiento(TransaccionInventario.SALIDA));
         btnMinarBloque.addActionListener(this::minarNuevoBloque);
+        btnCancelarMinado.addActionListener(this::cancelarMinado);
         btnValidarCadena.addActionListener(this::validarCadena);
         btnVerContenido.addActionListener(this::verContenidoBloque);
+        btnLotesPorCaducar.addActionListener(e -> mostrarLotesPorCaducar());
+        btnRastrearLote.addActionListener(e -> rastrearLote());
+        btnInventarioHistorico.addActionListener(e -> mostrarInventarioHistorico());
+        btnDescifrarCadena.addActionListener(e -> descifrarCadena());
 
         panelBotones.add(btnRegistrarEntrada);
         panelBotones.add(btnRegistrarSalida);
         panelBotones.add(btnMinarBloque);
+        panelBotones.add(btnCancelarMinado);
         panelBotones.add(btnValidarCadena);
         panelBotones.add(btnVerContenido);
+        panelBotones.add(btnLotesPorCaducar);
+        panelBotones.add(btnRastrearLote);
+        panelBotones.add(btnInventarioHistorico);
+        panelBotones.add(btnDescifrarCadena);
 
         // ─────────────────────────────
         // Estado
@@ -225,108 +310,163 @@ public class FarmaciaApp extends JFrame {
                 farmaciaSeleccionada, producto, tipo, responsable, lote, fechaCaducidad
         );
 
-        bloquePendiente.agregarTransaccion(transaccion);
-        listModelTransaccionesPendientes.addElement(transaccion);
-
+        Mempool.ResultadoAdmision resultado = blockchain.admitirTransaccion(transaccion);
+        // Reenvío de una transacción ya confirmada o ya pendiente
+        if (resultado == Mempool.ResultadoAdmision.DUPLICADA) {
+            JOptionPane.showMessageDialog(this, "La transacción ya fue registrada.");
+            return;
+        }
+        if (resultado == Mempool.ResultadoAdmision.SIN_EXISTENCIAS) {
+            int disponible = indiceInventario.getCantidad(farmaciaSeleccionada, codigoProducto)
+                    + mempool.getDeltaPendiente(farmaciaSeleccionada, codigoProducto);
+            JOptionPane.showMessageDialog(this, "Stock insuficiente: disponibles " + disponible
+                    + " unidades de " + codigoProducto + " (incluye movimientos pendientes).");
+            return;
+        }
+        if (resultado == Mempool.ResultadoAdmision.LLENO) {
+            JOptionPane.showMessageDialog(this, "Hay demasiadas transacciones pendientes; mine un bloque e intente de nuevo.");
+            return;
+        }
         labelEstado.setText("Estado: Transacción agregada.");
     }
 
     // ──────────────────────────────────────────────────────────
-    // MINAR NUEVO BLOQUE
+    // MINAR NUEVO BLOQUE (en segundo plano)
     // ──────────────────────────────────────────────────────────
     private void minarNuevoBloque(ActionEvent e) {
-        if (listModelTransaccionesPendientes.isEmpty()) {
+        if (tareaMinado != null) {
+            JOptionPane.showMessageDialog(this, "Ya hay un bloque minándose.");
+            return;
+        }
+        List<TransaccionInventario> lote = mempool.sellarAhora();
+        if (lote == null) {
             JOptionPane.showMessageDialog(this, "No hay transacciones para minar.");
             return;
         }
+        minarLote(lote, true);
+    }
 
-        try {
-            // Generar AES
-            SecretKey llaveAes = Encriptador.generarLlaveAes();
-
-            // Convertir transacciones a JSON manual
-            StringBuilder json = new StringBuilder("[");
-            for (int i = 0; i < bloquePendiente.getTransacciones().size(); i++) {
-                TransaccionInventario t = bloquePendiente.getTransacciones().get(i);
-                json.append("{")
-                        .append("\"farmaciaId\":\"").append(t.getFarmaciaId()).append("\",")
-                        .append("\"productoNombre\":\"").append(t.getProducto().getNombre()).append("\",")
-                        .append("\"productoCodigo\":\"").append(t.getProducto().getCodigo()).append("\",")
-                        .append("\"cantidad\":").append(t.getProducto().getCantidad()).append(",")
-                        .append("\"tipoMovimiento\":\"").append(t.getTipoMovimiento()).append("\",")
-                        .append("\"responsable\":\"").append(t.getResponsable()).append("\",")
-                        .append("\"lote\":\"").append(t.getLote()).append("\",")
-                        .append("\"fechaCaducidad\":\"").append(t.getFechaCaducidad()).append("\"")
-                        .append("}");
-                if (i < bloquePendiente.getTransacciones().size() - 1) json.append(",");
-            }
-            json.append("]");
-
-            // Cifrar datos con AES
-            byte[] datosCifrados = Encriptador.cifrarAes(
-                    json.toString().getBytes(StandardCharsets.UTF_8),
-                    llaveAes
-            );
-            String datosBase64 = Base64.getEncoder().encodeToString(datosCifrados);
-
-            // Cifrar llave AES con RSA
-            PublicKey llavePublica = Encriptador.cargarLlavePublica(RUTA_LLAVE_PUBLICA);
-            byte[] llaveAesCifrada = Encriptador.cifrarLlaveRsa(llaveAes, llavePublica);
-            String llaveAesBase64 = Base64.getEncoder().encodeToString(llaveAesCifrada);
-
-            // Guardar en el bloque
-            ArrayList<String> listaDatos = new ArrayList<>();
-            listaDatos.add(datosBase64);
-
-            bloquePendiente.setDatosEncriptados(listaDatos);
-            bloquePendiente.setLlaveAesEncriptada(llaveAesBase64);
-            bloquePendiente.setIndex(blockchain.getCadena().size());
-
-            // Minar
-            labelEstado.setText("Estado: Minando bloque...");
-            bloquePendiente.minarBloque(blockchain.getDificultad());
+    // Lote sellado por el mempool (botón o sellado automático); se ejecuta en el hilo de eventos
+    private void minarLote(List<TransaccionInventario> lote, boolean manual) {
+        if (tareaMinado != null) {
+            mempool.devolverLote(); // no debería pasar: el mempool no sella con un lote en vuelo
+            return;
+        }
+        minadoManual = manual;
+        Bloque bloqueAMinar = new Bloque(blockchain.obtenerUltimoBloque().getHash());
+        bloqueAMinar.setIndex(blockchain.getCadena().size());
+        // Con el reloj atrasado respecto a la cadena el bloque no superaría la mediana
+        bloqueAMinar.setTiempoCreacion(Math.max(bloqueAMinar.getTimestamp(), blockchain.getTimestampMinimoSiguiente()));
+        for (TransaccionInventario t : lote) bloqueAMinar.agregarTransaccion(t);
+
+        tareaMinado = servicioMinado.minar(bloqueAMinar, blockchain.getDificultadBits(bloqueAMinar.getIndex()));
+        ServicioMinado.TareaMinado tarea = tareaMinado;
+        tarea.getResultado().whenComplete((bloque, error) ->
+                SwingUtilities.invokeLater(() -> alTerminarMinado(tarea, error)));
+
+        btnMinarBloque.setEnabled(false);
+        btnCancelarMinado.setEnabled(true);
+        labelEstado.setText("Estado: Minando bloque #" + bloqueAMinar.getIndex() + "...");
+        timerProgreso = new Timer(500, ev -> {
+            ProgresoMinado p = tarea.getProgreso();
+            labelEstado.setText("Estado: Minando bloque #" + bloqueAMinar.getIndex() + " | " + p.resumen());
+        });
+        timerProgreso.start();
+    }
 
-            // Agregar a la cadena
-            blockchain.agregarBloque(bloquePendiente);
-            listModelBloques.addElement(bloquePendiente);
+    private void cancelarMinado(ActionEvent e) {
+        if (tareaMinado != null) {
+            tareaMinado.cancelar();
+            labelEstado.setText("Estado: Cancelando minado...");
+        }
+    }
 
-            // Replicar
-            try {
-                replicarBloqueAServidor(bloquePendiente, "localhost", 8080);
-            } catch (Exception ex) {
-                System.err.println("⚠ No se pudo replicar: " + ex.getMessage());
+    // Se ejecuta en el hilo de eventos de Swing
+    private void alTerminarMinado(ServicioMinado.TareaMinado tarea, Throwable error) {
+        timerProgreso.stop();
+        tareaMinado = null;
+        btnMinarBloque.setEnabled(true);
+        btnCancelarMinado.setEnabled(false);
+
+        Bloque bloque = tarea.getBloque();
+        if (error != null) {
+            Throwable causa = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            mempool.devolverLote();
+            if (causa instanceof CancellationException) {
+                labelEstado.setText("Estado: Minado cancelado. Transacciones devueltas a pendientes.");
+            } else {
+                labelEstado.setText("Estado: Error al minar.");
+                JOptionPane.showMessageDialog(this, "Error al minar: " + causa.getMessage());
+                causa.printStackTrace();
             }
+            return;
+        }
 
-            // Guardar nonce en BD
-            try {
-                ConexionPostgres db = new ConexionPostgres();
-                db.guardarNonce(
-                        bloquePendiente.getIndex(),
-                        bloquePendiente.getHash(),
-                        (long) bloquePendiente.getNonce()
-                );
-
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(
-                        this,
-                        "Error al guardar nonce en BD: " + ex.getMessage()
-                );
-            }
+        // Agregar a la cadena (y al almacén en disco)
+        Blockchain.ResultadoRecepcion resultado;
+        try {
+            resultado = blockchain.recibirBloque(bloque);
+        } catch (UncheckedIOException ex) {
+            mempool.devolverLote();
+            labelEstado.setText("Estado: Error al guardar el bloque.");
+            JOptionPane.showMessageDialog(this, "Error al guardar el bloque: " + ex.getMessage());
+            return;
+        }
+        if (resultado != Blockchain.ResultadoRecepcion.AGREGADO
+                && resultado != Blockchain.ResultadoRecepcion.REORGANIZADO) {
+            // La punta cambió mientras se minaba: el bloque quedó fuera de la cadena principal
+            mempool.devolverLote();
+            labelEstado.setText("Estado: El bloque no entró en la cadena (" + resultado + "). Transacciones devueltas.");
+            return;
+        }
+        if (resultado == Blockchain.ResultadoRecepcion.REORGANIZADO) {
+            listModelBloques.clear();
+            for (Bloque b : blockchain.getCadena()) listModelBloques.addElement(b);
+        } else {
+            listModelBloques.addElement(bloque);
+        }
+        mempool.confirmarLote();
+        actualizarInventario();
+        labelEstado.setText("Estado: Bloque minado correctamente (" +
+                ProgresoMinado.formatearHashrate(tarea.getProgreso().getHashrate()) + ").");
 
-            // Guardar archivo JSON
-            guardarBloqueComoJSON(bloquePendiente, blockchain.getCadena().size() - 1);
+        // Replicación y BD fuera del hilo de eventos
+        ejecutorPostMinado.submit(() -> persistirYReplicar(bloque));
 
-            // Reset
-            listModelTransaccionesPendientes.clear();
-            bloquePendiente = new Bloque(blockchain.obtenerUltimoBloque().getHash());
+        if (minadoManual) JOptionPane.showMessageDialog(this, "Bloque minado con éxito.");
+    }
 
-            actualizarInventario();
-            labelEstado.setText("Estado: Bloque minado correctamente.");
-            JOptionPane.showMessageDialog(this, "Bloque minado con éxito.");
+    /** Vuelve a llenar la lista de pendientes desde el mempool (hilo de eventos). */
+    private void refrescarPendientes() {
+        listModelTransaccionesPendientes.clear();
+        for (TransaccionInventario t : mempool.getPendientes()) {
+            listModelTransaccionesPendientes.addElement(t);
+        }
+    }
 
+    // Se ejecuta en ejecutorPostMinado
+    private void persistirYReplicar(Bloque bloque) {
+        // Replicar
+        try {
+            replicarBloqueAServidor(bloque, "localhost", 8080);
         } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Error al minar: " + ex.getMessage());
-            ex.printStackTrace();
+            System.err.println("⚠ No se pudo replicar: " + ex.getMessage());
+        }
+
+        // Guardar nonce en BD
+        try {
+            ConexionPostgres db = new ConexionPostgres();
+            db.guardarNonce(
+                    bloque.getIndex(),
+                    bloque.getHash(),
+                    (long) bloque.getNonce()
+            );
+
+        } catch (SQLException ex) {
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(
+                    this,
+                    "Error al guardar nonce en BD: " + ex.getMessage()
+            ));
         }
     }
 
@@ -383,24 +523,35 @@ public class FarmaciaApp extends JFrame {
         }
 
         try {
+            // Bloques vistos hace poco: sin contraseña, sin PEM y sin RSA
+            String contenido = cacheLlaves.getContenido(bloque.getHash());
+            if (contenido != null) {
+                areaContenidoBloque.setText(contenido);
+                labelEstado.setText("Estado: Contenido del bloque #" + bloque.getIndex() + " (desde caché).");
+                return;
+            }
+
             String datosBase64 = bloque.getDatosEncriptados().get(0);
-            String llaveAesBase64 = bloque.getLlaveAesEncriptada();
+            SecretKey llaveAes = cacheLlaves.getLlave(bloque.getHash());
+            if (llaveAes == null) {
+                String llaveAesBase64 = bloque.getLlaveAesEncriptada();
 
-            char[] contrasenia = Encriptador.pedirContrasenia("Ingrese la contraseña:");
+                char[] contrasenia = Encriptador.pedirContrasenia("Ingrese la contraseña:");
 
-            PrivateKey llavePrivada = Encriptador.cargarLlavePrivada(RUTA_LLAVE_PRIVADA, contrasenia);
+                PrivateKey llavePrivada = Encriptador.cargarLlavePrivada(RUTA_LLAVE_PRIVADA, contrasenia);
 
-            SecretKey llaveAes = Encriptador.descifrarLlaveRsa(
-                    Base64.getDecoder().decode(llaveAesBase64),
-                    llavePrivada
-            );
+                llaveAes = Encriptador.descifrarLlaveRsa(
+                        Base64.getDecoder().decode(llaveAesBase64),
+                        llavePrivada
+                );
+            }
 
-            byte[] datosDes = Encriptador.descifrarAes(
-                    Base64.getDecoder().decode(datosBase64),
-                    llaveAes
-            );
+            // "gcm$..." (AES-GCM por trozos) o Base64 de AES/ECB en bloques anteriores
+            byte[] datosDes = CifradorFlujo.porDefecto().descifrarEntrada(datosBase64, llaveAes);
 
-            areaContenidoBloque.setText(new String(datosDes));
+            contenido = new String(datosDes, StandardCharsets.UTF_8);
+            cacheLlaves.guardar(bloque.getHash(), llaveAes, contenido);
+            areaContenidoBloque.setText(contenido);
 
         } catch (Exception ex) {
             areaContenidoBloque.setText("Error al desencriptar.");
@@ -408,6 +559,55 @@ public class FarmaciaApp extends JFrame {
         }
     }
 
+    // ──────────────────────────────────────────────────────────
+    // DESCIFRAR CADENA (bloques recargados de disco vienen sin transacciones)
+    // ──────────────────────────────────────────────────────────
+    private void descifrarCadena() {
+        PrivateKey llavePrivada;
+        try {
+            char[] contrasenia = Encriptador.pedirContrasenia("Ingrese la contraseña:");
+            if (contrasenia == null) return;
+            llavePrivada = Encriptador.cargarLlavePrivada(RUTA_LLAVE_PRIVADA, contrasenia);
+        } catch (Exception ex) {
+            JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage());
+            return;
+        }
+        labelEstado.setText("Estado: Descifrando la cadena...");
+
+        // Fuera del hilo de eventos: RSA -> AES -> JSON en paralelo y luego se rearman los índices
+        Thread hilo = new Thread(() -> {
+            PipelineDescifrado pipeline = new PipelineDescifrado(llavePrivada,
+                    Runtime.getRuntime().availableProcessors(), cacheLlaves);
+            try {
+                // Toda la cadena (las consultas históricas leen bloques), pero los estados
+                // derivados solo se re-aplican desde lo que aplicaron cifrado
+                PipelineDescifrado.Resultado r = pipeline.procesar(blockchain.getCadena());
+                if (r.getAlturaMinima() >= 0) {
+                    // Con el lock de la cadena: ningún bloque entra entre descartar y re-aplicar
+                    synchronized (blockchain) {
+                        int desde = blockchain.getAlturaMinimaIncompleta();
+                        if (desde >= 0) {
+                            puntosControl.descartarDesde(desde);
+                            blockchain.reaplicarEstadosDerivados(desde);
+                        }
+                    }
+                }
+                SwingUtilities.invokeLater(() -> {
+                    actualizarInventario();
+                    labelEstado.setText(String.format("Estado: %d bloques descifrados (%.0f bloques/s).",
+                            r.getDescifrados(), r.getBloquesPorSegundo()));
+                    if (r.getFallidos() > 0) {
+                        JOptionPane.showMessageDialog(this, r.getFallidos() + " bloques no se pudieron descifrar.");
+                    }
+                });
+            } finally {
+                pipeline.cerrar();
+            }
+        }, "Descifrado-Cadena");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
     // ──────────────────────────────────────────────────────────
     // ACTUALIZAR INVENTARIO
     // ──────────────────────────────────────────────────────────
@@ -417,52 +617,80 @@ public class FarmaciaApp extends JFrame {
         if (farmacia == null) return;
 
         listModelInventario.clear();
-        HashMap<String, Producto> inventario = new HashMap<>();
-
-        for (Bloque bloque : blockchain.getCadena()) {
-
-            for (TransaccionInventario t : bloque.getTransacciones()) {
-
-                if (!t.getFarmaciaId().equals(farmacia)) continue;
-
-                String codigo = t.getProducto().getCodigo();
-
-                inventario.putIfAbsent(
-                        codigo,
-                        new Producto(t.getProducto().getNombre(), codigo, 0) {
-                            @Override public String getTipo() { return "Desconocido"; }
-                        }
-                );
-
-                Producto p = inventario.get(codigo);
-                int cantidad = p.getCantidad();
-
-                cantidad += t.getTipoMovimiento().equals(TransaccionInventario.ENTRADA)
-                        ? t.getProducto().getCantidad()
-                        : -t.getProducto().getCantidad();
+        // O(productos de la farmacia): el índice ya está al día con la cadena
+        indiceInventario.getExistencias(farmacia).forEach(listModelInventario::addElement);
+    }
 
-                p.setCantidad(cantidad);
-            }
+    // ──────────────────────────────────────────────────────────
+    // LOTES Y CADUCIDADES (desde IndiceLotes, sin recorrer la cadena)
+    // ──────────────────────────────────────────────────────────
+    private void mostrarLotesPorCaducar() {
+        String farmacia = (String) comboFarmacias.getSelectedItem();
+        if (farmacia == null) return;
+        String texto = JOptionPane.showInputDialog(this, "Días hacia adelante:", "30");
+        if (texto == null) return;
+        int dias;
+        try {
+            dias = Integer.parseInt(texto.trim());
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(this, "Número de días inválido.");
+            return;
         }
+        mostrarLotes("Lotes de " + farmacia + " que caducan en " + dias + " días",
+                indiceLotes.lotesPorCaducar(farmacia, dias));
+    }
 
-        inventario.values().forEach(listModelInventario::addElement);
+    private void rastrearLote() {
+        String lote = JOptionPane.showInputDialog(this, "Lote:");
+        if (lote == null || lote.isBlank()) return;
+        mostrarLotes("Lote " + lote.trim() + " en todas las farmacias", indiceLotes.rastrearLote(lote.trim()));
+    }
+
+    private void mostrarLotes(String titulo, List<LoteInventario> lotes) {
+        StringBuilder sb = new StringBuilder();
+        for (LoteInventario l : lotes) sb.append(l).append('\n');
+        areaContenidoBloque.setText(titulo + ":\n\n" + (lotes.isEmpty() ? "(ninguno)" : sb));
     }
 
     // ──────────────────────────────────────────────────────────
-    // GUARDAR BLOQUE COMO ARCHIVO JSON
+    // INVENTARIO HISTÓRICO (punto de control más cercano + bloques restantes)
     // ──────────────────────────────────────────────────────────
-   private void guardarBloqueComoJSON(Bloque bloque, int numero) {
-    try (BufferedWriter writer = new BufferedWriter(
-            new OutputStreamWriter(
-                    new FileOutputStream("bloque_" + numero + ".json"),
-                    StandardCharsets.UTF_8
-            )
-    )) {
-        writer.write(bloque.toString()); // ⭐ Cambiar toJSON() por toString()
-    } catch (IOException e) {
-        JOptionPane.showMessageDialog(this, "Error guardando JSON: " + e.getMessage());
+    private void mostrarInventarioHistorico() {
+        String farmacia = (String) comboFarmacias.getSelectedItem();
+        if (farmacia == null) return;
+        String texto = JOptionPane.showInputDialog(this, "Altura del bloque o fecha (DD/MM/AAAA):");
+        if (texto == null || texto.isBlank()) return;
+        texto = texto.trim();
+
+        int altura;
+        if (texto.contains("/")) {
+            int dia = IndiceLotes.diaEpoca(texto);
+            if (dia == LoteInventario.SIN_CADUCIDAD) {
+                JOptionPane.showMessageDialog(this, "Fecha inválida.");
+                return;
+            }
+            // Fin del día indicado, en la zona horaria local
+            long finDelDia = java.time.LocalDate.ofEpochDay(dia + 1L)
+                    .atStartOfDay(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli() - 1;
+            altura = puntosControl.alturaEnFecha(finDelDia);
+        } else {
+            try {
+                altura = Integer.parseInt(texto);
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(this, "Altura inválida.");
+                return;
+            }
+        }
+        if (altura < 0 || altura >= blockchain.getCadena().size()) {
+            JOptionPane.showMessageDialog(this, "No hay bloques para esa altura o fecha.");
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Existencia e : puntosControl.inventarioEnAltura(farmacia, altura)) sb.append(e).append('\n');
+        areaContenidoBloque.setText("Inventario de " + farmacia + " en el bloque #" + altura + ":\n\n"
+                + (sb.length() == 0 ? "(vacío)" : sb));
     }
-}
 
     // ──────────────────────────────────────────────────────────
     // REPLICACIÓN ENTRE SERVIDORES (llamada externa)
@@ -488,7 +716,9 @@ public class FarmaciaApp extends JFrame {
                         bloque.getNonce() + "|" +
                         bloque.getTimestamp() + "|" +
                         bloque.getLlaveAesEncriptada() + "|" +
-                        datosEnc.toString();
+                        datosEnc.toString() + "|" +
+                        bloque.getVersion() + "|" +
+                        String.join(":", bloque.getHashesTransacciones());
         
         out.println(mensaje);
         String respuesta = in.readLine();